@@ -0,0 +1,71 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.mapper.AddressRule;
+import in.anuragbanerjee.mapper.Ipv4Prefix;
+import in.anuragbanerjee.mapper.PortRange;
+import in.anuragbanerjee.mapper.TagLookupTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// matchAddressRules against tables of source and destination CIDR rules with /12 to /32 prefixes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressRuleBenchmark {
+    private static final int FLOWS = 4096;
+
+    @Param({"100", "10000", "100000"})
+    private int prefixes;
+
+    private TagLookupTable lookupTable;
+    private long[] sourceAddresses;
+    private long[] destinationAddresses;
+    private int[] matches;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(13);
+        List<AddressRule> rules = new ArrayList<>();
+        for (int i = 0; i < prefixes; i++) {
+            Ipv4Prefix prefix = new Ipv4Prefix(random.nextInt(), 12 + random.nextInt(21));
+            boolean source = random.nextInt(4) != 0;
+            PortRange ports = random.nextInt(3) == 0 ? new PortRange(443, 443) : PortRange.ALL;
+            rules.add(new AddressRule(ports, null, "tag" + random.nextInt(100), source ? prefix : null, source ? null : prefix));
+        }
+        lookupTable = TagLookupTable.compile(Collections.emptyMap(), rules, 1);
+        matches = new int[lookupTable.getMaxAddressMatches()];
+
+        sourceAddresses = new long[FLOWS];
+        destinationAddresses = new long[FLOWS];
+        for (int i = 0; i < FLOWS; i++) {
+            sourceAddresses[i] = random.nextInt() & 0xFFFFFFFFL;
+            destinationAddresses[i] = random.nextInt() & 0xFFFFFFFFL;
+        }
+    }
+
+    @Benchmark
+    public int matchAddressRules() {
+        int i = next;
+        next = (next + 1) & (FLOWS - 1);
+        return lookupTable.matchAddressRules(sourceAddresses[i], destinationAddresses[i], 6, 443, matches);
+    }
+}
@@ -0,0 +1,50 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.analyzer.FlowLogAggregator;
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.model.LogEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int ENTRIES = 4096;
+
+    @Param({"10", "10000"})
+    private int lookupRows;
+
+    private FlowLogAggregator aggregator;
+    private LogEntry[] entries;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        TagMapper tagMapper = new TagMapper();
+        tagMapper.loadTagMappings(BenchmarkData.lookupTable(lookupRows, 7).toString());
+        aggregator = new FlowLogAggregator(tagMapper);
+        entries = BenchmarkData.logEntries(ENTRIES, 17);
+    }
+
+    @Benchmark
+    public void accept() {
+        aggregator.accept(entries[next]);
+        next = (next + 1) & (ENTRIES - 1);
+    }
+}
@@ -0,0 +1,35 @@
+package in.anuragbanerjee.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Minimal "--name value" command line parsing for the benchmark tools
+class Arguments {
+    private final Map<String, String> values = new HashMap<>();
+
+    Arguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            values.put(args[i], hasValue ? args[++i] : "true");
+        }
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    String require(String name) {
+        String value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing required argument " + name);
+        }
+        return value;
+    }
+
+    boolean has(String name) {
+        return values.containsKey(name);
+    }
+}
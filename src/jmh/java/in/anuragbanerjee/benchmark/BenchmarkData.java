@@ -0,0 +1,85 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.model.Protocols;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Seeded generators for benchmark inputs, so every fork measures the same data
+final class BenchmarkData {
+    private static final int[] COMMON_PORTS = {22, 23, 25, 53, 80, 110, 143, 443, 993, 3389};
+    private static final int[] COMMON_PROTOCOLS = {6, 6, 6, 17, 17, 1};
+    private static final String[] MALFORMATIONS = {
+            "3 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 443 49153 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 443 49153 6 25 20000 1620140761",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 443 65536 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1 198.51.100.2 443 49153 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 invalid_line",
+    };
+
+    private BenchmarkData() {}
+
+    static String[] flowLogLines(int count, int malformedPercent, long seed) {
+        Random random = new Random(seed);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(100) < malformedPercent) {
+                lines[i] = MALFORMATIONS[random.nextInt(MALFORMATIONS.length)];
+            } else {
+                lines[i] = flowLogLine(random);
+            }
+        }
+        return lines;
+    }
+
+    static String flowLogLine(Random random) {
+        int destinationPort = random.nextInt(4) == 0 ? random.nextInt(65536) : COMMON_PORTS[random.nextInt(COMMON_PORTS.length)];
+        int protocol = COMMON_PROTOCOLS[random.nextInt(COMMON_PROTOCOLS.length)];
+        long start = 1620140000L + random.nextInt(3600);
+        return "2 " + (100000000000L + random.nextInt(1_000_000)) + " eni-" + Integer.toHexString(random.nextInt(1 << 20))
+                + " " + ipAddress(random) + " " + ipAddress(random)
+                + " " + random.nextInt(65536) + " " + destinationPort + " " + protocol
+                + " " + (1 + random.nextInt(100)) + " " + (40 + random.nextInt(100_000))
+                + " " + start + " " + (start + random.nextInt(60))
+                + " " + (random.nextBoolean() ? "ACCEPT" : "REJECT") + " OK";
+    }
+
+    static LogEntry[] logEntries(int count, long seed) {
+        Random random = new Random(seed);
+        LogEntry[] entries = new LogEntry[count];
+        for (int i = 0; i < count; i++) {
+            int destinationPort = random.nextInt(2) == 0 ? random.nextInt(65536) : COMMON_PORTS[random.nextInt(COMMON_PORTS.length)];
+            entries[i] = new LogEntry.Builder()
+                    .version(2)
+                    .destinationPort(destinationPort)
+                    .protocol(COMMON_PROTOCOLS[random.nextInt(COMMON_PROTOCOLS.length)])
+                    .sourceIp(ipAddress(random))
+                    .destinationIp(ipAddress(random))
+                    .build();
+        }
+        return entries;
+    }
+
+    // Writes a dstport,protocol,tag lookup table; rows cover the common ports first, then random ones
+    static Path lookupTable(int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        Path file = Files.createTempFile("benchmark-lookup", ".csv");
+        file.toFile().deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < rows; i++) {
+                int port = i < COMMON_PORTS.length ? COMMON_PORTS[i] : random.nextInt(65536);
+                String protocol = Protocols.toName(COMMON_PROTOCOLS[random.nextInt(COMMON_PROTOCOLS.length)]);
+                writer.write(port + "," + protocol + ",sv_P" + random.nextInt(Math.max(1, rows / 10)) + "\n");
+            }
+        }
+        return file;
+    }
+
+    private static String ipAddress(Random random) {
+        return random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+    }
+}
@@ -0,0 +1,77 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.model.MutableLogEntry;
+import in.anuragbanerjee.parser.strategy.CustomFormatFlowLogStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Narrow (V2, 14 fields) vs wide (V5, 29 fields) custom-format lines, decoding only the fields a plain
+// tag count needs or every field
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomFormatBenchmark {
+    private static final int LINES = 4096;
+    private static final String V5_EXTRA_FIELDS = "vpc-0a1b2c3d subnet-1a2b3c4d i-0123456789abcdef0 19 IPv4 "
+            + "10.0.1.5 10.0.2.7 us-east-1 use1-az1 - - AMAZON - ingress 1";
+
+    @Param({"v2", "v5"})
+    private String width;
+
+    @Param({"counts", "all"})
+    private String projection;
+
+    private CustomFormatFlowLogStrategy strategy;
+    private MutableLogEntry logEntry;
+    private byte[][] lines;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] v2Lines = BenchmarkData.flowLogLines(LINES, 0, 42);
+        boolean wide = width.equals("v5");
+        strategy = new CustomFormatFlowLogStrategy();
+        if (wide) {
+            strategy.acceptHeader("version account-id interface-id srcaddr dstaddr srcport dstport protocol packets "
+                    + "bytes start end action log-status vpc-id subnet-id instance-id tcp-flags type pkt-srcaddr "
+                    + "pkt-dstaddr region az-id sublocation-type sublocation-id pkt-src-aws-service "
+                    + "pkt-dst-aws-service flow-direction traffic-path");
+        }
+        Set<FlowField> fields = projection.equals("all")
+                ? EnumSet.allOf(FlowField.class) : EnumSet.of(FlowField.DESTINATION_PORT, FlowField.PROTOCOL);
+        strategy.project(fields);
+        logEntry = new MutableLogEntry();
+        lines = new byte[LINES][];
+        for (int i = 0; i < LINES; i++) {
+            String line = wide ? v2Lines[i].replaceFirst("^2 ", "5 ") + " " + V5_EXTRA_FIELDS : v2Lines[i];
+            lines[i] = line.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        byte[] line = lines[next];
+        next = (next + 1) & (LINES - 1);
+        strategy.parse(line, 0, line.length, logEntry);
+        blackhole.consume(logEntry.getDestinationPort());
+    }
+}
@@ -0,0 +1,61 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.model.PortProtocolKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+    private static final int ENTRIES = 4096;
+
+    private LogEntry[] entries;
+    private PortProtocolKey[] keys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        entries = BenchmarkData.logEntries(ENTRIES, 13);
+        keys = new PortProtocolKey[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            keys[i] = new PortProtocolKey(entries[i].getDestinationPort(), entries[i].getProtocolAsString());
+        }
+    }
+
+    @Benchmark
+    public String getProtocolAsString() {
+        return entries[nextIndex()].getProtocolAsString();
+    }
+
+    @Benchmark
+    public int portProtocolKeyHashCode() {
+        return keys[nextIndex()].hashCode();
+    }
+
+    @Benchmark
+    public PortProtocolKey newPortProtocolKey() {
+        LogEntry entry = entries[nextIndex()];
+        return new PortProtocolKey(entry.getDestinationPort(), entry.getProtocolAsString());
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) & (ENTRIES - 1);
+        return index;
+    }
+}
@@ -0,0 +1,66 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.model.PortProtocolKey;
+import in.anuragbanerjee.model.Protocols;
+import in.anuragbanerjee.output.OutputGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputGeneratorBenchmark {
+    @Param({"100", "10000", "100000"})
+    private int rows;
+
+    private final OutputGenerator outputGenerator = new OutputGenerator();
+    private Map<String, Long> tagCounts;
+    private Map<PortProtocolKey, Long> portProtocolCounts;
+    private Path outputFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(19);
+        tagCounts = new HashMap<>();
+        for (int i = 0; i < Math.max(1, rows / 100); i++) {
+            tagCounts.put("sv_P" + i, (long) random.nextInt(1_000_000));
+        }
+        portProtocolCounts = new HashMap<>();
+        while (portProtocolCounts.size() < rows) {
+            PortProtocolKey key = new PortProtocolKey(random.nextInt(65536), Protocols.toName(random.nextInt(3) == 0 ? 17 : 6));
+            portProtocolCounts.put(key, (long) random.nextInt(1_000_000));
+        }
+        outputFile = Files.createTempFile("benchmark-output", ".txt");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public void writeOutput() {
+        outputGenerator.writeOutput(tagCounts, portProtocolCounts, outputFile.toString());
+    }
+}
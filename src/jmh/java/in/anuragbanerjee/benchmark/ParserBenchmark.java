@@ -0,0 +1,74 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.model.MutableLogEntry;
+import in.anuragbanerjee.parser.LogParsingStrategyFactory;
+import in.anuragbanerjee.parser.strategy.LogParsingStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    private static final int LINES = 4096;
+
+    @Param({"default", "fast-v2"})
+    private String logFormat;
+
+    @Param({"0", "10", "50"})
+    private int malformedPercent;
+
+    private LogParsingStrategy strategy;
+    private MutableLogEntry logEntry;
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        strategy = LogParsingStrategyFactory.createStrategy(logFormat);
+        logEntry = new MutableLogEntry();
+        lines = BenchmarkData.flowLogLines(LINES, malformedPercent, 42);
+    }
+
+    // Original API: one LogEntry per line
+    @Benchmark
+    public void parseToLogEntry(Blackhole blackhole) {
+        try {
+            blackhole.consume(strategy.parse(nextLine()));
+        } catch (IllegalArgumentException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    // Flyweight API used by the analyzer
+    @Benchmark
+    public void parseIntoReusableEntry(Blackhole blackhole) {
+        try {
+            strategy.parse(nextLine(), logEntry);
+            blackhole.consume(logEntry.getDestinationPort());
+        } catch (IllegalArgumentException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    private String nextLine() {
+        String line = lines[next];
+        next = (next + 1) & (LINES - 1);
+        return line;
+    }
+}
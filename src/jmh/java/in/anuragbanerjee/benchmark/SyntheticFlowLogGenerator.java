@@ -0,0 +1,203 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.model.Protocols;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Writes a deterministic V2 flow log and a matching lookup table. Destination port/protocol pairs are
+// drawn from a Zipf distribution over distinctKeys pairs; the lookup table covers the pairs whose
+// combined probability reaches the requested tagged fraction, padded with never-seen pairs up to
+// lookupRows. The same options and seed always produce byte-identical files.
+//
+// Usage: SyntheticFlowLogGenerator --flowlogs <file> --lookup <file> [--size 1g] [--seed 42]
+//        [--distinct-keys 5000] [--zipf 1.1] [--malformed 0.01] [--tagged 0.6] [--lookup-rows 10000]
+public class SyntheticFlowLogGenerator {
+    private static final int[] PROTOCOLS = {6, 6, 6, 6, 17, 17, 1, 47, 50};
+    private static final String[] MALFORMATIONS = {
+            "3 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 443 49153 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 443 49153 6 25 20000 1620140761",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 443 65536 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 invalid_line",
+    };
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final long targetBytes;
+    private final long seed;
+    private final int distinctKeys;
+    private final double zipfExponent;
+    private final double malformedFraction;
+    private final double taggedFraction;
+    private final int lookupRows;
+
+    private long linesWritten;
+
+    public SyntheticFlowLogGenerator(long targetBytes, long seed, int distinctKeys, double zipfExponent,
+                                     double malformedFraction, double taggedFraction, int lookupRows) {
+        this.targetBytes = targetBytes;
+        this.seed = seed;
+        this.distinctKeys = distinctKeys;
+        this.zipfExponent = zipfExponent;
+        this.malformedFraction = malformedFraction;
+        this.taggedFraction = taggedFraction;
+        this.lookupRows = lookupRows;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+        SyntheticFlowLogGenerator generator = fromArguments(arguments);
+        Path flowLogs = Path.of(arguments.require("--flowlogs"));
+        Path lookup = Path.of(arguments.require("--lookup"));
+        generator.generate(flowLogs, lookup);
+        System.out.println("Wrote " + generator.getLinesWritten() + " lines (" + Files.size(flowLogs) + " bytes) to "
+                + flowLogs + " and lookup table " + lookup);
+    }
+
+    static SyntheticFlowLogGenerator fromArguments(Arguments arguments) {
+        return new SyntheticFlowLogGenerator(
+                parseSize(arguments.get("--size", "100m")),
+                Long.parseLong(arguments.get("--seed", "42")),
+                Integer.parseInt(arguments.get("--distinct-keys", "5000")),
+                Double.parseDouble(arguments.get("--zipf", "1.1")),
+                Double.parseDouble(arguments.get("--malformed", "0.01")),
+                Double.parseDouble(arguments.get("--tagged", "0.6")),
+                Integer.parseInt(arguments.get("--lookup-rows", "10000")));
+    }
+
+    public long getLinesWritten() {
+        return linesWritten;
+    }
+
+    public void generate(Path flowLogFile, Path lookupFile) throws IOException {
+        Random random = new Random(seed);
+        long[] keys = distinctPortProtocolKeys(random);
+        double[] cumulative = zipfCumulativeProbabilities();
+        writeLookupTable(lookupFile, keys, cumulative, random);
+        writeFlowLogs(flowLogFile, keys, cumulative, random);
+    }
+
+    private long[] distinctPortProtocolKeys(Random random) {
+        // Rank 0 is the most frequent pair; well-known ports get the top ranks
+        int[] wellKnownPorts = {443, 80, 53, 22, 25, 3389, 110, 143, 993, 23};
+        long[] keys = new long[distinctKeys];
+        Set<Long> seen = new HashSet<>();
+        for (int rank = 0; rank < distinctKeys; rank++) {
+            long key;
+            do {
+                int port = rank < wellKnownPorts.length ? wellKnownPorts[rank] : random.nextInt(65536);
+                int protocol = PROTOCOLS[random.nextInt(PROTOCOLS.length)];
+                key = ((long) protocol << 16) | port;
+            } while (!seen.add(key));
+            keys[rank] = key;
+        }
+        return keys;
+    }
+
+    private double[] zipfCumulativeProbabilities() {
+        double[] cumulative = new double[distinctKeys];
+        double sum = 0;
+        for (int rank = 0; rank < distinctKeys; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, zipfExponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < distinctKeys; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    private int sampleRank(double[] cumulative, Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, distinctKeys - 1);
+    }
+
+    private void writeLookupTable(Path lookupFile, long[] keys, double[] cumulative, Random random) throws IOException {
+        List<Integer> ranks = new ArrayList<>();
+        for (int rank = 0; rank < distinctKeys; rank++) {
+            ranks.add(rank);
+        }
+        Collections.shuffle(ranks, random);
+
+        int tagCount = Math.max(1, lookupRows / 20);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(lookupFile), StandardCharsets.US_ASCII), WRITE_BUFFER_SIZE)) {
+            double covered = 0;
+            int rows = 0;
+            for (int rank : ranks) {
+                if (covered >= taggedFraction || rows >= lookupRows) {
+                    break;
+                }
+                covered += cumulative[rank] - (rank == 0 ? 0 : cumulative[rank - 1]);
+                writeLookupRow(writer, keys[rank], "sv_P" + random.nextInt(tagCount));
+                rows++;
+            }
+            // Pad with pairs that never occur in the flow log
+            while (rows < lookupRows) {
+                writeLookupRow(writer, ((long) 132 << 16) | random.nextInt(65536), "sv_P" + random.nextInt(tagCount));
+                rows++;
+            }
+        }
+    }
+
+    private void writeLookupRow(Writer writer, long key, String tag) throws IOException {
+        writer.write((key & 0xFFFF) + "," + Protocols.toName((int) (key >>> 16)) + "," + tag + "\n");
+    }
+
+    private void writeFlowLogs(Path flowLogFile, long[] keys, double[] cumulative, Random random) throws IOException {
+        StringBuilder line = new StringBuilder(160);
+        long written = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(flowLogFile), StandardCharsets.US_ASCII), WRITE_BUFFER_SIZE)) {
+            while (written < targetBytes) {
+                line.setLength(0);
+                if (random.nextDouble() < malformedFraction) {
+                    line.append(MALFORMATIONS[random.nextInt(MALFORMATIONS.length)]);
+                } else {
+                    long key = keys[sampleRank(cumulative, random)];
+                    long start = 1620140000L + random.nextInt(86_400);
+                    line.append("2 ").append(100000000000L + random.nextInt(1000))
+                            .append(" eni-").append(Integer.toHexString(random.nextInt(1 << 16)))
+                            .append(' ').append(10).append('.').append(random.nextInt(256)).append('.')
+                            .append(random.nextInt(256)).append('.').append(random.nextInt(256))
+                            .append(' ').append(random.nextInt(224)).append('.').append(random.nextInt(256)).append('.')
+                            .append(random.nextInt(256)).append('.').append(random.nextInt(256))
+                            .append(' ').append(1024 + random.nextInt(64512))
+                            .append(' ').append(key & 0xFFFF)
+                            .append(' ').append(key >>> 16)
+                            .append(' ').append(1 + random.nextInt(200))
+                            .append(' ').append(40 + random.nextInt(1_000_000))
+                            .append(' ').append(start)
+                            .append(' ').append(start + random.nextInt(60))
+                            .append(random.nextInt(10) == 0 ? " REJECT OK" : " ACCEPT OK");
+                }
+                line.append('\n');
+                writer.append(line);
+                written += line.length();
+                linesWritten++;
+            }
+        }
+    }
+
+    static long parseSize(String size) {
+        String value = size.trim().toLowerCase();
+        long multiplier = 1;
+        char unit = value.charAt(value.length() - 1);
+        if (unit == 'k' || unit == 'm' || unit == 'g') {
+            multiplier = unit == 'k' ? 1L << 10 : unit == 'm' ? 1L << 20 : 1L << 30;
+            value = value.substring(0, value.length() - 1);
+        }
+        return (long) (Double.parseDouble(value) * multiplier);
+    }
+}
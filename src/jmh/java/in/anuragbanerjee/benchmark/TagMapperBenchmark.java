@@ -0,0 +1,61 @@
+package in.anuragbanerjee.benchmark;
+
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.model.LogEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagMapperBenchmark {
+    private static final int ENTRIES = 4096;
+
+    @Param({"10", "100", "1000", "10000"})
+    private int lookupRows;
+
+    private Path lookupTable;
+    private TagMapper tagMapper;
+    private LogEntry[] entries;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        lookupTable = BenchmarkData.lookupTable(lookupRows, 7);
+        tagMapper = new TagMapper();
+        tagMapper.loadTagMappings(lookupTable.toString());
+        entries = BenchmarkData.logEntries(ENTRIES, 11);
+    }
+
+    @Benchmark
+    public Set<String> getAssociatedTags() {
+        LogEntry entry = entries[next];
+        next = (next + 1) & (ENTRIES - 1);
+        return tagMapper.getAssociatedTags(entry);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TagMapper loadTagMappings() {
+        TagMapper mapper = new TagMapper();
+        mapper.loadTagMappings(lookupTable.toString());
+        return mapper;
+    }
+}
@@ -0,0 +1,224 @@
+package in.anuragbanerjee.benchmark;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import in.anuragbanerjee.analyzer.AnalyzerConfig;
+import in.anuragbanerjee.analyzer.FlowLogAnalyzer;
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.output.OutputGenerator;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// End-to-end throughput of FlowLogAnalyzer.analyze, from reading the lookup table to writing the
+// report. Either analyzes existing files or first generates a synthetic data set with
+// SyntheticFlowLogGenerator (same options). Each measured iteration reports MB/s, lines/s, peak heap,
+// peak RSS and GC pauses; per-line parse errors are discarded unless --show-errors is given.
+//
+// Usage: ThroughputHarness [--flowlogs <file> --lookup <file> | --size 1g --seed 42 ...]
+//        [--format fast-v2] [--threads 4] [--warmup 1] [--iterations 3] [--work-dir /tmp] [--keep]
+// Generated files and the report go to a temporary directory under --work-dir, deleted at the end unless
+// --keep is given.
+public class ThroughputHarness {
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final AtomicLong maxGcPauseMillis = new AtomicLong();
+
+    public static void main(String[] args) throws IOException {
+        new ThroughputHarness().run(new Arguments(args));
+    }
+
+    private void run(Arguments arguments) throws IOException {
+        Path baseDir = Path.of(arguments.get("--work-dir", System.getProperty("java.io.tmpdir")));
+        // Generated data sets run to gigabytes, so they are deleted afterwards unless --keep is given
+        Path workDir = null;
+        Path output = null;
+        try {
+            Path flowLogs;
+            Path lookup;
+            if (arguments.has("--flowlogs")) {
+                flowLogs = Path.of(arguments.require("--flowlogs"));
+                lookup = Path.of(arguments.require("--lookup"));
+                output = Files.createTempFile(baseDir, "flowlog-throughput", ".txt");
+            } else {
+                workDir = Files.createTempDirectory(baseDir, "flowlog-throughput");
+                flowLogs = workDir.resolve("flowlogs.txt");
+                lookup = workDir.resolve("lookup.txt");
+                output = workDir.resolve("output.txt");
+                SyntheticFlowLogGenerator generator = SyntheticFlowLogGenerator.fromArguments(arguments);
+                generator.generate(flowLogs, lookup);
+                System.out.println("Generated " + generator.getLinesWritten() + " lines into " + workDir);
+            }
+            measure(arguments, flowLogs, lookup, output);
+        } finally {
+            if (arguments.has("--keep")) {
+                System.out.println("Kept " + (workDir != null ? workDir : output));
+            } else {
+                deleteQuietly(output);
+                if (workDir != null) {
+                    deleteQuietly(workDir.resolve("flowlogs.txt"));
+                    deleteQuietly(workDir.resolve("lookup.txt"));
+                    deleteQuietly(workDir);
+                }
+            }
+        }
+    }
+
+    private void measure(Arguments arguments, Path flowLogs, Path lookup, Path output) throws IOException {
+        String format = arguments.get("--format", "default");
+        int threads = Integer.parseInt(arguments.get("--threads", "1"));
+        int warmup = Integer.parseInt(arguments.get("--warmup", "1"));
+        int iterations = Integer.parseInt(arguments.get("--iterations", "3"));
+
+        long bytes = Files.size(flowLogs);
+        long lines = countLines(flowLogs);
+        System.out.printf("Input: %s (%.1f MB, %d lines), format=%s, threads=%d%n",
+                flowLogs, bytes / MB, lines, format, threads);
+
+        installGcListeners();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+
+        AnalyzerConfig config = new AnalyzerConfig.Builder().parallelism(threads).build();
+        PrintStream stderr = System.err;
+        if (!arguments.has("--show-errors")) {
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        double[] megabytesPerSecond = new double[iterations];
+        try {
+            for (int i = -warmup; i < iterations; i++) {
+                System.gc();
+                heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+                maxGcPauseMillis.set(0);
+                long gcCountBefore = totalGcCount();
+                long gcTimeBefore = totalGcTimeMillis();
+
+                long start = System.nanoTime();
+                new FlowLogAnalyzer(format, new TagMapper(), new OutputGenerator(), config)
+                        .analyze(flowLogs.toString(), lookup.toString(), output.toString());
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                String label = i < 0 ? "warmup " + (i + warmup + 1) : "iteration " + (i + 1);
+                System.out.printf("%-12s %8.2f s %9.1f MB/s %12.0f lines/s  peak heap %7.1f MB  peak RSS %s"
+                                + "  GC %d collections, %d ms total, %d ms max pause%n",
+                        label, seconds, bytes / MB / seconds, lines / seconds, peakHeapBytes() / MB, peakRss(),
+                        totalGcCount() - gcCountBefore, totalGcTimeMillis() - gcTimeBefore, maxGcPauseMillis.get());
+                if (i >= 0) {
+                    megabytesPerSecond[i] = bytes / MB / seconds;
+                }
+            }
+        } finally {
+            System.setErr(stderr);
+        }
+
+        if (iterations > 0) {
+            Arrays.sort(megabytesPerSecond);
+            System.out.printf("Median %.1f MB/s, best %.1f MB/s over %d iterations%n",
+                    megabytesPerSecond[iterations / 2], megabytesPerSecond[iterations - 1], iterations);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Error deleting " + path + ": " + e);
+        }
+    }
+
+    private void installGcListeners() {
+        NotificationListener listener = (notification, handback) -> {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                maxGcPauseMillis.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+            }
+        };
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    private long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    // VmHWM is the process high-water mark and cannot be reset, so it only grows across iterations
+    private static String peakRss() {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return "n/a";
+        }
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmHWM:")) {
+                    long kilobytes = Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                    return String.format("%.1f MB", kilobytes / 1024.0);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return "n/a";
+        }
+        return "n/a";
+    }
+
+    private static long totalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long totalGcTimeMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static long countLines(Path file) throws IOException {
+        long lines = 0;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -1,6 +1,7 @@
 package in.anuragbanerjee;
 
 import in.anuragbanerjee.analyzer.FlowLogAnalyzer;
+import in.anuragbanerjee.cli.CommandLine;
 import in.anuragbanerjee.mapper.TagMapper;
 import in.anuragbanerjee.output.OutputGenerator;
 
@@ -8,6 +9,11 @@ import java.util.Scanner;
 
 public class Application {
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // Headless mode for scripts and cron jobs, see CommandLine
+            System.exit(CommandLine.run(args));
+        }
+
         // Initialize components
         TagMapper tagMapper = new TagMapper();
         OutputGenerator outputGenerator = new OutputGenerator();
@@ -32,7 +38,7 @@ public class Application {
         switch (choice) {
             case "1":
                 System.out.println("\nEnter custom file paths:");
-                System.out.print("Enter flow logs file path: ");
+                System.out.print("Enter flow logs path (file, directory or glob; .gz supported): ");
                 flowLogsPath = scanner.nextLine().trim();
 
                 System.out.print("Enter lookup file path: ");
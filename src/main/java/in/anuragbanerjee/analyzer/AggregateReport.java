@@ -0,0 +1,240 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.groupby.GroupByTable;
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.model.PortProtocolKey;
+import in.anuragbanerjee.model.Protocols;
+import in.anuragbanerjee.output.OutputGenerator;
+import in.anuragbanerjee.output.OutputOrder;
+import in.anuragbanerjee.output.OutputSection;
+import in.anuragbanerjee.output.ReportWriter;
+import in.anuragbanerjee.sketch.HeavyHitters;
+import in.anuragbanerjee.sketch.SpaceSaving;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Writes an aggregator's counts, followed by the optional volume, distinct source and heavy hitter
+// sections, in the OutputGenerator's format and order. Volume and distinct source rows follow the order
+// of the count sections above them. A group-by goes to a file of its own, since it can have far more rows
+// than the rest of the report.
+final class AggregateReport {
+    private AggregateReport() {}
+
+    static void write(OutputGenerator outputGenerator, FlowLogAggregator aggregator, AnalyzerConfig config, String outputFilePath) {
+        Map<String, Long> tagCounts = outputGenerator.arrange(aggregator.getTagCounts());
+        Map<PortProtocolKey, Long> portProtocolCounts = outputGenerator.arrange(aggregator.getPortProtocolCounts());
+        outputGenerator.writeOutput(tagCounts, portProtocolCounts, sections(aggregator, config, tagCounts, portProtocolCounts),
+                outputFilePath);
+        GroupByTable groupBy = aggregator.getGroupBy();
+        if (groupBy != null) {
+            writeGroupBy(outputGenerator, groupBy, config.getGroupByOutputPath() != null
+                    ? config.getGroupByOutputPath() : outputFilePath + ".groupby");
+        }
+    }
+
+    // The same report without the group-by, which stays in its file
+    static void write(OutputGenerator outputGenerator, FlowLogAggregator aggregator, AnalyzerConfig config, OutputStream out)
+            throws IOException {
+        Map<String, Long> tagCounts = outputGenerator.arrange(aggregator.getTagCounts());
+        Map<PortProtocolKey, Long> portProtocolCounts = outputGenerator.arrange(aggregator.getPortProtocolCounts());
+        outputGenerator.writeOutput(tagCounts, portProtocolCounts, sections(aggregator, config, tagCounts, portProtocolCounts),
+                out);
+    }
+
+    private static List<OutputSection> sections(FlowLogAggregator aggregator, AnalyzerConfig config, Map<String, Long> tagCounts,
+                                                Map<PortProtocolKey, Long> portProtocolCounts) {
+        List<OutputSection> sections = new ArrayList<>();
+        if (aggregator.isTrackingVolumes()) {
+            sections.add(tagVolumes(aggregator, tagCounts));
+            sections.add(portProtocolVolumes(aggregator, portProtocolCounts));
+        }
+        if (aggregator.isTrackingDistinctSources()) {
+            sections.add(tagDistinctSources(aggregator, tagCounts));
+            sections.add(portProtocolDistinctSources(aggregator, portProtocolCounts));
+        }
+        HeavyHitters heavyHitters = aggregator.getHeavyHitters();
+        if (heavyHitters != null) {
+            for (HeavyHitters.Key key : HeavyHitters.Key.values()) {
+                sections.add(heavyHitters(heavyHitters, key, config.getHeavyHitters()));
+            }
+        }
+        return sections;
+    }
+
+    // One row per distinct key, streamed in key or count order (see GroupByTable) so that the rows never
+    // have to fit in memory; a limit keeps only that many. Written next to the target and renamed, so a
+    // failed write leaves no truncated file behind.
+    private static void writeGroupBy(OutputGenerator outputGenerator, GroupByTable groupBy, String path) {
+        List<String> columns = new ArrayList<>();
+        for (FlowField field : groupBy.getFields()) {
+            columns.add(field.getFieldName());
+        }
+        columns.addAll(List.of("Count", "Bytes", "Packets"));
+        Path target = Path.of(path);
+        Path temporary = target.toAbsolutePath().resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (ReportWriter writer = outputGenerator.open(temporary.toString())) {
+                writer.beginSection(null, columns);
+                GroupByTable.RowConsumer rows = (key, count, bytes, packets) -> {
+                    try {
+                        writeGroupByRow(writer, key, count, bytes, packets);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                if (outputGenerator.getLimit() > 0) {
+                    for (GroupByRow row : arrangeGroupBy(outputGenerator, groupBy)) {
+                        rows.accept(row.key, row.count, row.bytes, row.packets);
+                    }
+                } else if (outputGenerator.getOrder() == OutputOrder.COUNT) {
+                    groupBy.forEachRowByCount(rows);
+                } else {
+                    groupBy.forEachRow(rows);
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Error writing group-by output file: " + path, e);
+        } finally {
+            try {
+                // Left behind only when the move did not happen
+                Files.deleteIfExists(temporary);
+            } catch (IOException e) {
+                System.err.println("Error deleting temporary group-by file " + temporary + ": " + e);
+            }
+        }
+    }
+
+    private static void writeGroupByRow(ReportWriter writer, String[] key, long count, long bytes, long packets) throws IOException {
+        for (String value : key) {
+            writer.text(value);
+        }
+        writer.number(count);
+        writer.number(bytes);
+        writer.number(packets);
+        writer.endRow();
+    }
+
+    // The limit's highest counts, in the generator's order. Rows come in key order, so their sequence number
+    // stands in for the key when sorting.
+    private static GroupByRow[] arrangeGroupBy(OutputGenerator outputGenerator, GroupByTable groupBy) {
+        Comparator<GroupByRow> byKey = Comparator.comparingLong(row -> row.sequence);
+        Comparator<GroupByRow> byCount = Comparator.<GroupByRow>comparingLong(row -> row.count).reversed().thenComparing(byKey);
+        int limit = outputGenerator.getLimit();
+        // The heap's head is the first row to go
+        PriorityQueue<GroupByRow> kept = new PriorityQueue<>(byCount.reversed());
+        long[] sequence = {0};
+        groupBy.forEachRow((key, count, bytes, packets) -> {
+            GroupByRow row = new GroupByRow(key.clone(), count, bytes, packets, sequence[0]++);
+            if (kept.size() < limit) {
+                kept.add(row);
+            } else if (byCount.compare(row, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(row);
+            }
+        });
+        GroupByRow[] rows = kept.toArray(new GroupByRow[0]);
+        Arrays.sort(rows, outputGenerator.getOrder() == OutputOrder.KEY ? byKey : byCount);
+        return rows;
+    }
+
+    private static final class GroupByRow {
+        private final String[] key;
+        private final long count;
+        private final long bytes;
+        private final long packets;
+        private final long sequence;
+
+        GroupByRow(String[] key, long count, long bytes, long packets, long sequence) {
+            this.key = key;
+            this.count = count;
+            this.bytes = bytes;
+            this.packets = packets;
+            this.sequence = sequence;
+        }
+    }
+
+    private static OutputSection tagVolumes(FlowLogAggregator aggregator, Map<String, Long> tagCounts) {
+        Map<String, long[]> volumes = new HashMap<>();
+        aggregator.forEachTagVolume((tag, bytes, packets) -> volumes.put(tag, new long[]{bytes, packets}));
+        List<Object[]> rows = new ArrayList<>();
+        for (String tag : tagCounts.keySet()) {
+            long[] volume = volumes.get(tag);
+            rows.add(new Object[]{tag, volume[0], volume[1]});
+        }
+        return new OutputSection("Tag Volumes", List.of("Tag", "Bytes", "Packets"), rows);
+    }
+
+    private static OutputSection portProtocolVolumes(FlowLogAggregator aggregator, Map<PortProtocolKey, Long> portProtocolCounts) {
+        Map<PortProtocolKey, long[]> volumes = new HashMap<>();
+        aggregator.forEachPortProtocolVolume((protocol, port, bytes, packets) ->
+                volumes.put(new PortProtocolKey(port, Protocols.toName(protocol)), new long[]{bytes, packets}));
+        List<Object[]> rows = new ArrayList<>();
+        for (PortProtocolKey key : portProtocolCounts.keySet()) {
+            long[] volume = volumes.get(key);
+            rows.add(new Object[]{key.getPort(), key.getProtocol(), volume[0], volume[1]});
+        }
+        return new OutputSection("Port/Protocol Combination Volumes", List.of("Port", "Protocol", "Bytes", "Packets"), rows);
+    }
+
+    // Estimates, about 1.04 / sqrt(2^precision) relative standard error
+    private static OutputSection tagDistinctSources(FlowLogAggregator aggregator, Map<String, Long> tagCounts) {
+        Map<String, Long> estimates = new HashMap<>();
+        aggregator.forEachTagDistinctSources((tag, sources) -> estimates.put(tag, sources.estimate()));
+        List<Object[]> rows = new ArrayList<>();
+        for (String tag : tagCounts.keySet()) {
+            rows.add(new Object[]{tag, estimates.get(tag)});
+        }
+        return new OutputSection("Tag Distinct Source IPs", List.of("Tag", "Distinct Source IPs"), rows);
+    }
+
+    private static OutputSection portProtocolDistinctSources(FlowLogAggregator aggregator,
+                                                             Map<PortProtocolKey, Long> portProtocolCounts) {
+        Map<PortProtocolKey, Long> estimates = new HashMap<>();
+        aggregator.forEachPortProtocolDistinctSources((protocol, port, sources) ->
+                estimates.put(new PortProtocolKey(port, Protocols.toName(protocol)), sources.estimate()));
+        List<Object[]> rows = new ArrayList<>();
+        for (PortProtocolKey key : portProtocolCounts.keySet()) {
+            rows.add(new Object[]{key.getPort(), key.getProtocol(), estimates.get(key)});
+        }
+        return new OutputSection("Port/Protocol Combination Distinct Source IPs",
+                List.of("Port", "Protocol", "Distinct Source IPs"), rows);
+    }
+
+    private static OutputSection heavyHitters(HeavyHitters heavyHitters, HeavyHitters.Key key, int count) {
+        String metric = heavyHitters.getMetric() == HeavyHitters.Metric.FLOWS ? "Flows" : "Bytes";
+        String title = switch (key) {
+            case SOURCE_IP -> "Top Source IPs by " + metric;
+            case DESTINATION_IP -> "Top Destination IPs by " + metric;
+            case CONVERSATION -> "Top Conversations by " + metric;
+        };
+        List<String> columns = new ArrayList<>(switch (key) {
+            case SOURCE_IP -> List.of("Source IP");
+            case DESTINATION_IP -> List.of("Destination IP");
+            case CONVERSATION -> List.of("Source IP", "Destination IP", "Destination Port");
+        });
+        // Max Overcount bounds how far each count may be above the true total
+        columns.addAll(List.of(metric, "Max Overcount"));
+        List<Object[]> rows = new ArrayList<>();
+        for (SpaceSaving.Entry entry : heavyHitters.getSummary(key).top(count)) {
+            Object[] keyColumns = HeavyHitters.keyColumns(key, entry);
+            Object[] row = Arrays.copyOf(keyColumns, keyColumns.length + 2);
+            row[keyColumns.length] = entry.getCount();
+            row[keyColumns.length + 1] = entry.getError();
+            rows.add(row);
+        }
+        return new OutputSection(title, columns, rows);
+    }
+}
@@ -0,0 +1,368 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.groupby.GroupByTable;
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.parser.LineFilter;
+import in.anuragbanerjee.sketch.HeavyHitters;
+import in.anuragbanerjee.sketch.HyperLogLog;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+public class AnalyzerConfig {
+    public static final int MAX_ERROR_LOG_RATE = 1_000_000;
+    public static final long MIN_GROUP_BY_MEMORY_BYTES = 1024 * 1024;
+
+    private final int parallelism;
+    private final int chunkSizeBytes;
+    private final int streamBatchSizeBytes;
+    private final String checkpointPath;
+    private final String snapshotPath;
+    private final long followPollIntervalMillis;
+    private final long reportIntervalMillis;
+    private final long lookupReloadIntervalMillis;
+    private final boolean jmxEnabled;
+    private final boolean metricsSummary;
+    private final boolean volumes;
+    private final int heavyHitters;
+    private final HeavyHitters.Metric heavyHitterMetric;
+    private final int heavyHitterCapacity;
+    private final int distinctSourcePrecision;
+    private final long[] windowSeconds;
+    private final long windowAllowedLatenessSeconds;
+    private final String windowOutputPath;
+    private final int errorLogRatePerSecond;
+    private final String quarantinePath;
+    private final List<FlowField> groupBy;
+    private final long groupByMemoryBytes;
+    private final String groupByOutputPath;
+    private final String spillDirectory;
+    private final LineFilter filter;
+    private final String queryAddress;
+
+    private AnalyzerConfig(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.chunkSizeBytes = builder.chunkSizeBytes;
+        this.streamBatchSizeBytes = builder.streamBatchSizeBytes;
+        this.checkpointPath = builder.checkpointPath;
+        this.snapshotPath = builder.snapshotPath;
+        this.followPollIntervalMillis = builder.followPollIntervalMillis;
+        this.reportIntervalMillis = builder.reportIntervalMillis;
+        this.lookupReloadIntervalMillis = builder.lookupReloadIntervalMillis;
+        this.jmxEnabled = builder.jmxEnabled;
+        this.metricsSummary = builder.metricsSummary;
+        this.volumes = builder.volumes;
+        this.heavyHitters = builder.heavyHitters;
+        this.heavyHitterMetric = builder.heavyHitterMetric;
+        this.heavyHitterCapacity = builder.heavyHitterCapacity;
+        this.distinctSourcePrecision = builder.distinctSourcePrecision;
+        this.windowSeconds = builder.windowSeconds.clone();
+        this.windowAllowedLatenessSeconds = builder.windowAllowedLatenessSeconds;
+        this.windowOutputPath = builder.windowOutputPath;
+        this.errorLogRatePerSecond = builder.errorLogRatePerSecond;
+        this.quarantinePath = builder.quarantinePath;
+        this.groupBy = builder.groupBy;
+        this.groupByMemoryBytes = builder.groupByMemoryBytes;
+        this.groupByOutputPath = builder.groupByOutputPath;
+        this.spillDirectory = builder.spillDirectory;
+        this.filter = builder.filter;
+        this.queryAddress = builder.queryAddress;
+    }
+
+    public static AnalyzerConfig defaults() {
+        return new Builder().build();
+    }
+
+    public int getParallelism() { return parallelism; }
+    public int getChunkSizeBytes() { return chunkSizeBytes; }
+    public int getStreamBatchSizeBytes() { return streamBatchSizeBytes; }
+    public String getCheckpointPath() { return checkpointPath; }
+    public String getSnapshotPath() { return snapshotPath; }
+    public long getFollowPollIntervalMillis() { return followPollIntervalMillis; }
+    public long getReportIntervalMillis() { return reportIntervalMillis; }
+    public long getLookupReloadIntervalMillis() { return lookupReloadIntervalMillis; }
+    public boolean isJmxEnabled() { return jmxEnabled; }
+    public boolean isMetricsSummary() { return metricsSummary; }
+    public boolean isVolumes() { return volumes; }
+    public int getHeavyHitters() { return heavyHitters; }
+    public HeavyHitters.Metric getHeavyHitterMetric() { return heavyHitterMetric; }
+    public int getHeavyHitterCapacity() { return heavyHitterCapacity; }
+    public int getDistinctSourcePrecision() { return distinctSourcePrecision; }
+
+    public long[] getWindowSeconds() { return windowSeconds.clone(); }
+    public long getWindowAllowedLatenessSeconds() { return windowAllowedLatenessSeconds; }
+    public String getWindowOutputPath() { return windowOutputPath; }
+    public int getErrorLogRatePerSecond() { return errorLogRatePerSecond; }
+    public String getQuarantinePath() { return quarantinePath; }
+    public List<FlowField> getGroupBy() { return groupBy; }
+    public long getGroupByMemoryBytes() { return groupByMemoryBytes; }
+    public String getGroupByOutputPath() { return groupByOutputPath; }
+    public String getSpillDirectory() { return spillDirectory; }
+    public LineFilter getFilter() { return filter; }
+    public String getQueryAddress() { return queryAddress; }
+
+    public boolean isDistinctSources() {
+        return distinctSourcePrecision > 0;
+    }
+
+    public boolean isWindowed() {
+        return windowSeconds.length > 0;
+    }
+
+    public boolean isGroupBy() {
+        return !groupBy.isEmpty();
+    }
+
+    public boolean isParallel() {
+        return parallelism > 1;
+    }
+
+    public static class Builder {
+        private int parallelism = 1;
+        private int chunkSizeBytes = 64 * 1024 * 1024;
+        private int streamBatchSizeBytes = 1024 * 1024;
+        private String checkpointPath;  // Defaults to <output>.checkpoint
+        private String snapshotPath;  // No snapshot is written unless set
+        private long followPollIntervalMillis = 1000;
+        private long reportIntervalMillis = 60_000;
+        private long lookupReloadIntervalMillis;  // 0 disables reloading while following
+        private boolean jmxEnabled;
+        private boolean metricsSummary;
+        private boolean volumes;
+        private int heavyHitters;  // 0 disables the heavy hitter sections
+        private HeavyHitters.Metric heavyHitterMetric = HeavyHitters.Metric.FLOWS;
+        private int heavyHitterCapacity = 4096;
+        private int distinctSourcePrecision;  // 0 disables the distinct source sections
+        private long[] windowSeconds = new long[0];  // No windowed counts unless set
+        private long windowAllowedLatenessSeconds;
+        private String windowOutputPath;  // Defaults to <output>.windows
+        private int errorLogRatePerSecond = 100;
+        private String quarantinePath;  // Rejected lines are only counted and logged unless set
+        private List<FlowField> groupBy = List.of();  // No group-by output unless set
+        private long groupByMemoryBytes = 64 * 1024 * 1024;
+        private String groupByOutputPath;  // Defaults to <output>.groupby
+        private String spillDirectory = System.getProperty("java.io.tmpdir");
+        private LineFilter filter;  // Every line is analyzed unless set
+        private String queryAddress;  // A server answers no queries unless set
+
+        public Builder() {}
+
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1 but got " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder chunkSizeBytes(int chunkSizeBytes) {
+            if (chunkSizeBytes < 1) {
+                throw new IllegalArgumentException("Chunk size must be positive but got " + chunkSizeBytes);
+            }
+            this.chunkSizeBytes = chunkSizeBytes;
+            return this;
+        }
+
+        // Bytes of whole lines handed to a parser at a time when reading a stream such as stdin. About
+        // 2 * parallelism + 1 batches are in memory at once.
+        public Builder streamBatchSizeBytes(int streamBatchSizeBytes) {
+            if (streamBatchSizeBytes < 1) {
+                throw new IllegalArgumentException("Stream batch size must be positive but got " + streamBatchSizeBytes);
+            }
+            this.streamBatchSizeBytes = streamBatchSizeBytes;
+            return this;
+        }
+
+        public Builder checkpointPath(String checkpointPath) {
+            this.checkpointPath = checkpointPath;
+            return this;
+        }
+
+        public Builder snapshotPath(String snapshotPath) {
+            this.snapshotPath = snapshotPath;
+            return this;
+        }
+
+        public Builder followPollIntervalMillis(long followPollIntervalMillis) {
+            if (followPollIntervalMillis < 1) {
+                throw new IllegalArgumentException("Poll interval must be positive but got " + followPollIntervalMillis);
+            }
+            this.followPollIntervalMillis = followPollIntervalMillis;
+            return this;
+        }
+
+        public Builder reportIntervalMillis(long reportIntervalMillis) {
+            if (reportIntervalMillis < 1) {
+                throw new IllegalArgumentException("Report interval must be positive but got " + reportIntervalMillis);
+            }
+            this.reportIntervalMillis = reportIntervalMillis;
+            return this;
+        }
+
+        public Builder lookupReloadIntervalMillis(long lookupReloadIntervalMillis) {
+            if (lookupReloadIntervalMillis < 0) {
+                throw new IllegalArgumentException("Lookup reload interval must not be negative but got " + lookupReloadIntervalMillis);
+            }
+            this.lookupReloadIntervalMillis = lookupReloadIntervalMillis;
+            return this;
+        }
+
+        // Registers the analyzer's metrics as an MBean under in.anuragbanerjee:type=FlowLogAnalyzer
+        public Builder jmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
+        // Prints the run's metrics to stdout after each analysis
+        public Builder metricsSummary(boolean metricsSummary) {
+            this.metricsSummary = metricsSummary;
+            return this;
+        }
+
+        // Adds byte and packet sums per tag and per port/protocol to the output
+        public Builder volumes(boolean volumes) {
+            this.volumes = volumes;
+            return this;
+        }
+
+        // Adds the top N source IPs, destination IPs and conversations to the output
+        public Builder heavyHitters(int heavyHitters) {
+            if (heavyHitters < 0) {
+                throw new IllegalArgumentException("Heavy hitter count must not be negative but got " + heavyHitters);
+            }
+            this.heavyHitters = heavyHitters;
+            return this;
+        }
+
+        public Builder heavyHitterMetric(HeavyHitters.Metric heavyHitterMetric) {
+            this.heavyHitterMetric = heavyHitterMetric;
+            return this;
+        }
+
+        // Keys monitored per heavy hitter summary. Memory is fixed at about 50 bytes per key and summary;
+        // a larger capacity tightens the counts of the reported keys.
+        public Builder heavyHitterCapacity(int heavyHitterCapacity) {
+            if (heavyHitterCapacity < 1) {
+                throw new IllegalArgumentException("Heavy hitter capacity must be positive but got " + heavyHitterCapacity);
+            }
+            this.heavyHitterCapacity = heavyHitterCapacity;
+            return this;
+        }
+
+        // Adds the estimated number of distinct source IPs per tag and per port/protocol to the output
+        public Builder distinctSources(boolean distinctSources) {
+            return distinctSourcePrecision(distinctSources ? 12 : 0);
+        }
+
+        // HyperLogLog precision of the distinct source estimates, from 4 to 16: each step up halves the
+        // variance and doubles the memory of a busy key (2^precision bytes); 0 disables them
+        public Builder distinctSourcePrecision(int distinctSourcePrecision) {
+            if (distinctSourcePrecision != 0 && (distinctSourcePrecision < HyperLogLog.MIN_PRECISION
+                    || distinctSourcePrecision > HyperLogLog.MAX_PRECISION)) {
+                throw new IllegalArgumentException("Distinct source precision must be 0 or between "
+                        + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION + " but got " + distinctSourcePrecision);
+            }
+            this.distinctSourcePrecision = distinctSourcePrecision;
+            return this;
+        }
+
+        // Also counts per tumbling window of each size, e.g. 60, 300 and 3600 for per-minute, per-5-minute
+        // and per-hour counts. Windows are aligned to the epoch and keyed on the flow's start time.
+        public Builder windowSeconds(long... windowSeconds) {
+            for (long size : windowSeconds) {
+                if (size < 1) {
+                    throw new IllegalArgumentException("Window size must be positive but got " + size);
+                }
+            }
+            this.windowSeconds = windowSeconds.clone();
+            return this;
+        }
+
+        // How far behind the latest start time a flow may arrive and still be counted in its window; a
+        // window stays open, and in memory, until this long after its end
+        public Builder windowAllowedLatenessSeconds(long windowAllowedLatenessSeconds) {
+            if (windowAllowedLatenessSeconds < 0) {
+                throw new IllegalArgumentException("Allowed lateness must not be negative but got " + windowAllowedLatenessSeconds);
+            }
+            this.windowAllowedLatenessSeconds = windowAllowedLatenessSeconds;
+            return this;
+        }
+
+        public Builder windowOutputPath(String windowOutputPath) {
+            this.windowOutputPath = windowOutputPath;
+            return this;
+        }
+
+        // Parse errors printed to stderr per second; the rest are only counted. 0 prints none.
+        public Builder errorLogRatePerSecond(int errorLogRatePerSecond) {
+            if (errorLogRatePerSecond < 0 || errorLogRatePerSecond > MAX_ERROR_LOG_RATE) {
+                throw new IllegalArgumentException("Error log rate must be between 0 and " + MAX_ERROR_LOG_RATE
+                        + " but got " + errorLogRatePerSecond);
+            }
+            this.errorLogRatePerSecond = errorLogRatePerSecond;
+            return this;
+        }
+
+        // File the raw rejected lines are written to, one per line, for fixing and replaying them
+        public Builder quarantinePath(String quarantinePath) {
+            this.quarantinePath = quarantinePath;
+            return this;
+        }
+
+        // Also writes exact flow counts, bytes and packets per distinct combination of these fields, e.g.
+        // account-id, interface-id, action. Any field of the version 2 format may be used.
+        public Builder groupBy(List<FlowField> groupBy) {
+            if (!groupBy.isEmpty()) {
+                GroupByTable.checkFields(groupBy);
+            }
+            this.groupBy = List.copyOf(groupBy);
+            return this;
+        }
+
+        // Heap the group-by may take before it spills to disk. A parallel run keeps several tables at once
+        // and gives each an equal share.
+        public Builder groupByMemoryBytes(long groupByMemoryBytes) {
+            if (groupByMemoryBytes < MIN_GROUP_BY_MEMORY_BYTES) {
+                throw new IllegalArgumentException("Group-by memory must be at least " + MIN_GROUP_BY_MEMORY_BYTES
+                        + " bytes but got " + groupByMemoryBytes);
+            }
+            this.groupByMemoryBytes = groupByMemoryBytes;
+            return this;
+        }
+
+        public Builder groupByOutputPath(String groupByOutputPath) {
+            this.groupByOutputPath = groupByOutputPath;
+            return this;
+        }
+
+        // Directory for the temporary files of group-bys that do not fit in memory
+        public Builder spillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        // Only analyzes lines that match the expression, e.g. "action=REJECT and start>=1620140000"; see
+        // LineFilter. Other lines are skipped before they are decoded and counted as filtered.
+        public Builder filter(String filter) {
+            this.filter = filter != null ? LineFilter.parse(filter) : null;
+            return this;
+        }
+
+        // "[host:]port" a server answers HTTP queries for its current counts on, while it keeps ingesting
+        public Builder queryAddress(String queryAddress) {
+            if (queryAddress != null && !(FlowLogServer.socketAddress(queryAddress) instanceof InetSocketAddress)) {
+                throw new IllegalArgumentException("Query address must be a TCP address but got " + queryAddress);
+            }
+            this.queryAddress = queryAddress;
+            return this;
+        }
+
+        public AnalyzerConfig build() {
+            if (heavyHitterCapacity < heavyHitters) {
+                throw new IllegalArgumentException("Heavy hitter capacity " + heavyHitterCapacity
+                        + " is smaller than the number of heavy hitters " + heavyHitters);
+            }
+            return new AnalyzerConfig(this);
+        }
+    }
+}
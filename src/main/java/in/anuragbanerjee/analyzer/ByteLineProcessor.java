@@ -0,0 +1,188 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.model.FlowRecord;
+import in.anuragbanerjee.model.MutableLogEntry;
+import in.anuragbanerjee.parser.LogParseException;
+import in.anuragbanerjee.parser.LogParser;
+import in.anuragbanerjee.parser.ParseResult;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Splits raw bytes into lines the way BufferedReader.readLine does ('\n', '\r' or "\r\n") and feeds
+// them to one aggregator or sink. Splitting on these bytes is safe for every ASCII-compatible charset;
+// decoding is left to the parsing strategy. Lines that were already decoded by a reader can be passed
+// in as strings. A header line naming the fields is read but neither parsed nor counted as a failure.
+// Rejected lines are counted by reason and handed to the run's RejectedLines without an exception being
+// thrown; the message is only built for lines that get logged. Lines the parser's filter skips are only
+// counted. Not thread-safe: use one instance per worker.
+class ByteLineProcessor {
+    // Quarantined lines are handed over once this many bytes are buffered, and on flushCounters()
+    private static final int QUARANTINE_BLOCK_SIZE = 64 * 1024;
+
+    private final LogParser logParser;
+    private final FlowLogAggregator aggregator;
+    private final Consumer<FlowRecord> sink;
+    private final TumblingWindows windows;
+    private final LineCounters counters;
+    private final RejectedLines rejectedLines;
+    private final MutableLogEntry logEntry = new MutableLogEntry();
+    private byte[] lineBytes = new byte[256];
+    private byte[] quarantineBlock;
+    private int quarantineLength;
+
+    ByteLineProcessor(LogParser logParser, FlowLogAggregator aggregator, LineCounters counters, RejectedLines rejectedLines) {
+        this(logParser, aggregator, null, null, counters, rejectedLines);
+    }
+
+    // Also counts every parsed record in its windows; windows may be null
+    ByteLineProcessor(LogParser logParser, FlowLogAggregator aggregator, TumblingWindows windows, LineCounters counters,
+                      RejectedLines rejectedLines) {
+        this(logParser, aggregator, null, windows, counters, rejectedLines);
+    }
+
+    // Passes every parsed record to the sink instead of counting it, e.g. to load a FlowRecordStore.
+    // The record is reused for the next line.
+    ByteLineProcessor(LogParser logParser, Consumer<FlowRecord> sink, LineCounters counters, RejectedLines rejectedLines) {
+        this(logParser, null, sink, null, counters, rejectedLines);
+    }
+
+    private ByteLineProcessor(LogParser logParser, FlowLogAggregator aggregator, Consumer<FlowRecord> sink,
+                              TumblingWindows windows, LineCounters counters, RejectedLines rejectedLines) {
+        this.logParser = logParser;
+        this.aggregator = aggregator;
+        this.sink = sink;
+        this.windows = windows;
+        this.counters = counters;
+        this.rejectedLines = rejectedLines;
+    }
+
+    // Processes every line in buffer[start, end); trailing bytes without a terminator form the last line
+    void processLines(ByteBuffer buffer, int start, int end) {
+        int lineStart = start;
+        int i = start;
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                processLine(buffer, lineStart, i - lineStart);
+                if (b == '\r' && i + 1 < end && buffer.get(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+            i++;
+        }
+        if (lineStart < end) {
+            processLine(buffer, lineStart, end - lineStart);
+        }
+    }
+
+    void processLine(String line) {
+        counters.lineRead(line.length() + 1);
+        if (logParser.acceptHeader(line)) {
+            return;
+        }
+        long start = counters.isSampled() ? System.nanoTime() : 0;
+        ParseResult result = logParser.tryParseLogEntry(line, logEntry);
+        if (result == ParseResult.FILTERED) {
+            counters.lineFiltered();
+            return;
+        }
+        if (result.isFailure()) {
+            byte[] bytes = line.getBytes(Charset.defaultCharset());
+            parseFailed(result.getReason(), bytes, bytes.length);
+            return;
+        }
+        aggregate(start);
+    }
+
+    // Adds the counts that have not been flushed yet to the shared metrics
+    void flushCounters() {
+        counters.flush();
+        flushQuarantine();
+    }
+
+    private void processLine(ByteBuffer buffer, int offset, int length) {
+        if (lineBytes.length < length) {
+            lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+        }
+        buffer.get(offset, lineBytes, 0, length);
+        counters.lineRead(length + 1);
+        if (logParser.acceptHeader(lineBytes, 0, length)) {
+            return;
+        }
+        long start = counters.isSampled() ? System.nanoTime() : 0;
+        ParseResult result = logParser.tryParseLogEntry(lineBytes, 0, length, logEntry);
+        if (result == ParseResult.FILTERED) {
+            counters.lineFiltered();
+            return;
+        }
+        if (result.isFailure()) {
+            parseFailed(result.getReason(), lineBytes, length);
+            return;
+        }
+        aggregate(start);
+    }
+
+    // start is the time parsing began for a sampled line, otherwise 0
+    private void aggregate(long start) {
+        long parsed = start != 0 ? System.nanoTime() : 0;
+        if (aggregator != null) {
+            counters.lineParsed(aggregator.accept(logEntry));
+            if (windows != null) {
+                windows.accept(logEntry);
+            }
+        } else {
+            sink.accept(logEntry);
+            counters.lineParsed();
+        }
+        if (start != 0) {
+            counters.sample(parsed - start, System.nanoTime() - parsed);
+        }
+    }
+
+    private void parseFailed(LogParseException.Reason reason, byte[] line, int length) {
+        counters.parseFailed(reason);
+        if (rejectedLines.tryLog()) {
+            System.err.println(errorMessage(line, length));
+        }
+        if (rejectedLines.isQuarantining()) {
+            quarantine(line, length);
+        }
+    }
+
+    // Parses the line again the throwing way, which words the failure as before
+    private String errorMessage(byte[] line, int length) {
+        try {
+            logParser.parseLogEntry(line, 0, length, logEntry);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        return "Error parsing log line: " + new String(line, 0, length, Charset.defaultCharset());
+    }
+
+    private void quarantine(byte[] line, int length) {
+        if (quarantineBlock == null) {
+            quarantineBlock = new byte[QUARANTINE_BLOCK_SIZE];
+        }
+        if (quarantineBlock.length < quarantineLength + length + 1) {
+            quarantineBlock = Arrays.copyOf(quarantineBlock, Math.max(quarantineLength + length + 1, quarantineBlock.length * 2));
+        }
+        System.arraycopy(line, 0, quarantineBlock, quarantineLength, length);
+        quarantineLength += length;
+        quarantineBlock[quarantineLength++] = '\n';
+        if (quarantineLength >= QUARANTINE_BLOCK_SIZE) {
+            flushQuarantine();
+        }
+    }
+
+    private void flushQuarantine() {
+        if (quarantineLength > 0) {
+            rejectedLines.quarantine(quarantineBlock, quarantineLength);
+            quarantineLength = 0;
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.groupby.GroupByTable;
+import in.anuragbanerjee.mapper.TagLookupTable;
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.model.FlowRecord;
+import in.anuragbanerjee.model.PortProtocolKey;
+import in.anuragbanerjee.model.Protocols;
+import in.anuragbanerjee.model.Ipv4Addresses;
+import in.anuragbanerjee.sketch.HeavyHitters;
+import in.anuragbanerjee.sketch.HyperLogLog;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class FlowLogAggregator {
+    private static final int PORT_COUNT = 65536;
+
+    private final TagLookupTable lookupTable;
+
+    private long[] tagCounts;
+    // Whether a tag id is in tagOrder; kept apart from the counts, which need not be positive to be listed
+    private boolean[] tagSeen;
+    // Tags that are not in the lookup table, e.g. counts loaded from a snapshot of another run
+    private final List<String> extraTagNames = new ArrayList<>();
+    private final Map<String, Integer> extraTagIds = new HashMap<>();
+    // Ids in the order they were first counted, so partial results can be merged back in first-seen order
+    private int[] tagOrder = new int[16];
+    private int tagOrderSize;
+
+    private final long[][] portCountsByProtocol = new long[Protocols.MAX_PROTOCOL_NUMBER + 1][];
+    // One bit per port that is in portProtocolOrder, allocated with the protocol's counts
+    private final long[][] portSeenByProtocol = new long[Protocols.MAX_PROTOCOL_NUMBER + 1][];
+    // Protocol numbers beyond the IP header range are rare; count them per (protocol, port) pair as
+    // {count, bytes, packets}
+    private final Map<Long, long[]> countsForLargeProtocols = new HashMap<>();
+    private long[] portProtocolOrder = new long[64];
+    private int portProtocolOrderSize;
+
+    // Byte and packet sums next to the counts above; all null unless volumes are enabled
+    private long[] tagBytes;
+    private long[] tagPackets;
+    private final long[][] portBytesByProtocol;
+    private final long[][] portPacketsByProtocol;
+    // Volume of the record being counted
+    private long recordBytes;
+    private long recordPackets;
+
+    private final HeavyHitters heavyHitters;
+
+    // Sketches of the distinct source IPs behind the counts, created on first use; all null unless
+    // distinct sources are enabled
+    private final int distinctSourcePrecision;
+    private HyperLogLog[] tagSources;
+    private final HyperLogLog[][] portSourcesByProtocol;
+    private final Map<Long, HyperLogLog> sourcesForLargeProtocols;
+    // Source IP hash of the record being counted
+    private long recordSourceHash;
+
+    // Exact counts per combination of the configured fields; null unless a group-by is configured
+    private final GroupByTable groupBy;
+
+    // Scratch space for address rules: matched tag ids, and the last line each tag id was counted for
+    private final int[] addressMatches;
+    private final int[] tagStamps;
+    private int stamp;
+
+    public FlowLogAggregator(TagMapper tagMapper) {
+        this(tagMapper.getLookupTable());
+    }
+
+    public FlowLogAggregator(TagLookupTable lookupTable) {
+        this(lookupTable, AnalyzerConfig.defaults());
+    }
+
+    // Byte and packet sums, heavy hitters, distinct sources and the group-by are only kept when the config
+    // asks for them
+    public FlowLogAggregator(TagLookupTable lookupTable, AnalyzerConfig config) {
+        this(lookupTable, config, 1);
+    }
+
+    // For runs that keep several aggregators alive at once: each group-by table gets an equal share of
+    // the configured memory, so together they stay within it
+    FlowLogAggregator(TagLookupTable lookupTable, AnalyzerConfig config, int groupByTables) {
+        this.lookupTable = lookupTable;
+        this.tagCounts = new long[lookupTable.getTagCount()];
+        this.tagSeen = new boolean[tagCounts.length];
+        this.addressMatches = new int[lookupTable.getMaxAddressMatches()];
+        this.tagStamps = lookupTable.hasAddressRules() ? new int[lookupTable.getTagCount()] : null;
+        if (config.isVolumes()) {
+            tagBytes = new long[tagCounts.length];
+            tagPackets = new long[tagCounts.length];
+            portBytesByProtocol = new long[Protocols.MAX_PROTOCOL_NUMBER + 1][];
+            portPacketsByProtocol = new long[Protocols.MAX_PROTOCOL_NUMBER + 1][];
+        } else {
+            portBytesByProtocol = null;
+            portPacketsByProtocol = null;
+        }
+        this.heavyHitters = config.getHeavyHitters() > 0
+                ? new HeavyHitters(config.getHeavyHitterMetric(), config.getHeavyHitterCapacity()) : null;
+        this.distinctSourcePrecision = config.getDistinctSourcePrecision();
+        if (config.isDistinctSources()) {
+            tagSources = new HyperLogLog[tagCounts.length];
+            portSourcesByProtocol = new HyperLogLog[Protocols.MAX_PROTOCOL_NUMBER + 1][];
+            sourcesForLargeProtocols = new HashMap<>();
+        } else {
+            portSourcesByProtocol = null;
+            sourcesForLargeProtocols = null;
+        }
+        this.groupBy = config.isGroupBy()
+                ? new GroupByTable(config.getGroupBy(), config.getGroupByMemoryBytes() / groupByTables,
+                        Path.of(config.getSpillDirectory()))
+                : null;
+    }
+
+    public TagLookupTable getLookupTable() {
+        return lookupTable;
+    }
+
+    // The record fields accept() reads with this configuration and table, plus the start time the
+    // windows key on; parsers need not decode the rest
+    public static Set<FlowField> requiredFields(AnalyzerConfig config, TagLookupTable lookupTable) {
+        Set<FlowField> fields = EnumSet.of(FlowField.DESTINATION_PORT, FlowField.PROTOCOL);
+        if (lookupTable.hasAddressRules() || config.getHeavyHitters() > 0) {
+            fields.add(FlowField.SOURCE_ADDRESS);
+            fields.add(FlowField.DESTINATION_ADDRESS);
+        }
+        if (config.isDistinctSources()) {
+            fields.add(FlowField.SOURCE_ADDRESS);
+        }
+        if (config.isVolumes()) {
+            fields.add(FlowField.BYTES);
+            fields.add(FlowField.PACKETS);
+        }
+        if (config.getHeavyHitters() > 0 && config.getHeavyHitterMetric() == HeavyHitters.Metric.BYTES) {
+            fields.add(FlowField.BYTES);
+        }
+        if (config.isWindowed()) {
+            fields.add(FlowField.START);
+        }
+        if (config.isGroupBy()) {
+            fields.addAll(config.getGroupBy());
+            fields.add(FlowField.BYTES);
+            fields.add(FlowField.PACKETS);
+        }
+        return fields;
+    }
+
+    // Returns whether the record matched at least one tag
+    public boolean accept(FlowRecord logEntry) {
+        int protocol = logEntry.getProtocol();
+        int port = logEntry.getDestinationPort();
+
+        if (tagBytes != null) {
+            // "-" is parsed as -1
+            recordBytes = Math.max(logEntry.getBytes(), 0);
+            recordPackets = Math.max(logEntry.getPackets(), 0);
+        }
+        if (heavyHitters != null) {
+            heavyHitters.add(logEntry);
+        }
+        if (groupBy != null) {
+            groupBy.add(logEntry);
+        }
+        if (tagSources != null) {
+            long address = logEntry.getSourceAddress();
+            recordSourceHash = address != Ipv4Addresses.NONE
+                    ? HyperLogLog.hash(address) : HyperLogLog.hash(logEntry.getSourceIp());
+        }
+
+        int tagSetId = lookupTable.lookup(protocol, port);
+        if (lookupTable.hasAddressRules()) {
+            return acceptWithAddressRules(logEntry, protocol, port, tagSetId);
+        }
+        if (tagSetId != TagLookupTable.NO_TAGS) {
+            for (int tagId : lookupTable.getTagIds(tagSetId)) {
+                countTag(tagId);
+            }
+        } else {
+            countTag(lookupTable.getUntaggedTagId());
+        }
+
+        countRecord(protocol, port);
+        return tagSetId != TagLookupTable.NO_TAGS;
+    }
+
+    // Counts the union of the port/protocol tags and the tags of all matching address rules, each once
+    private boolean acceptWithAddressRules(FlowRecord logEntry, int protocol, int port, int tagSetId) {
+        int matches = lookupTable.matchAddressRules(logEntry.getSourceAddress(), logEntry.getDestinationAddress(),
+                protocol, port, addressMatches);
+        boolean tagged = tagSetId != TagLookupTable.NO_TAGS || matches > 0;
+        if (tagged) {
+            if (++stamp == 0) {
+                Arrays.fill(tagStamps, 0);
+                stamp = 1;
+            }
+            for (int tagId : lookupTable.getTagIds(tagSetId)) {
+                countOnce(tagId);
+            }
+            for (int i = 0; i < matches; i++) {
+                countOnce(addressMatches[i]);
+            }
+        } else {
+            countTag(lookupTable.getUntaggedTagId());
+        }
+
+        countRecord(protocol, port);
+        return tagged;
+    }
+
+    private void countOnce(int tagId) {
+        if (tagStamps[tagId] != stamp) {
+            tagStamps[tagId] = stamp;
+            countTag(tagId);
+        }
+    }
+
+    private void countTag(int tagId) {
+        addTagCount(tagId, 1);
+        if (tagBytes != null) {
+            tagBytes[tagId] += recordBytes;
+            tagPackets[tagId] += recordPackets;
+        }
+        if (tagSources != null) {
+            tagSourcesFor(tagId).addHash(recordSourceHash);
+        }
+    }
+
+    private void countRecord(int protocol, int port) {
+        countPortProtocol(protocol, port, 1);
+        if (portBytesByProtocol != null) {
+            addPortProtocolVolume(protocol, port, recordBytes, recordPackets);
+        }
+        if (portSourcesByProtocol != null) {
+            portSourcesFor(protocol, port).addHash(recordSourceHash);
+        }
+    }
+
+    public void merge(FlowLogAggregator other) {
+        boolean sameTagIds = other.lookupTable == lookupTable && other.extraTagNames.isEmpty();
+        boolean volumes = isTrackingVolumes() && other.isTrackingVolumes();
+        boolean sources = isTrackingDistinctSources() && other.isTrackingDistinctSources()
+                && other.distinctSourcePrecision == distinctSourcePrecision;
+        for (int i = 0; i < other.tagOrderSize; i++) {
+            int otherTagId = other.tagOrder[i];
+            int tagId = sameTagIds ? otherTagId : tagIdFor(other.getTagName(otherTagId));
+            addTagCount(tagId, other.tagCounts[otherTagId]);
+            if (volumes) {
+                tagBytes[tagId] += other.tagBytes[otherTagId];
+                tagPackets[tagId] += other.tagPackets[otherTagId];
+            }
+            if (sources && other.tagSources[otherTagId] != null) {
+                tagSourcesFor(tagId).merge(other.tagSources[otherTagId]);
+            }
+        }
+        for (int i = 0; i < other.portProtocolOrderSize; i++) {
+            long key = other.portProtocolOrder[i];
+            int protocol = (int) (key >>> 16);
+            int port = (int) (key & 0xFFFF);
+            countPortProtocol(protocol, port, other.getPortProtocolCount(protocol, port));
+            if (volumes) {
+                addPortProtocolVolume(protocol, port, other.getPortProtocolBytes(protocol, port),
+                        other.getPortProtocolPackets(protocol, port));
+            }
+            if (sources) {
+                HyperLogLog otherSources = other.getPortSources(protocol, port);
+                if (otherSources != null) {
+                    portSourcesFor(protocol, port).merge(otherSources);
+                }
+            }
+        }
+        if (heavyHitters != null && other.heavyHitters != null) {
+            heavyHitters.merge(other.heavyHitters);
+        }
+        if (groupBy != null && other.groupBy != null) {
+            groupBy.merge(other.groupBy);
+        }
+    }
+
+    public void addTagCount(String tag, long count) {
+        addTagCount(tagIdFor(tag), count);
+    }
+
+    public void addPortProtocolCount(int protocol, int port, long count) {
+        if (protocol < 0 || port < 0 || port >= PORT_COUNT) {
+            throw new IllegalArgumentException("Invalid port/protocol combination: " + port + "/" + protocol);
+        }
+        countPortProtocol(protocol, port, count);
+    }
+
+    // Adds to the byte and packet sums of a tag; ignored unless volumes are enabled. The tag's count
+    // decides whether and where it appears, so volumes are added after counts.
+    public void addTagVolume(String tag, long bytes, long packets) {
+        if (isTrackingVolumes()) {
+            int tagId = tagIdFor(tag);
+            tagBytes[tagId] += bytes;
+            tagPackets[tagId] += packets;
+        }
+    }
+
+    public void addPortProtocolVolume(int protocol, int port, long bytes, long packets) {
+        if (!isTrackingVolumes()) {
+            return;
+        }
+        if (protocol < 0 || port < 0 || port >= PORT_COUNT) {
+            throw new IllegalArgumentException("Invalid port/protocol combination: " + port + "/" + protocol);
+        }
+        if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+            if (portBytesByProtocol[protocol] == null) {
+                portBytesByProtocol[protocol] = new long[PORT_COUNT];
+                portPacketsByProtocol[protocol] = new long[PORT_COUNT];
+            }
+            portBytesByProtocol[protocol][port] += bytes;
+            portPacketsByProtocol[protocol][port] += packets;
+        } else {
+            // An entry here means the combination is listed, so volumes of one that was never counted are dropped
+            long[] counts = countsForLargeProtocols.get(portProtocolKey(protocol, port));
+            if (counts != null) {
+                counts[1] += bytes;
+                counts[2] += packets;
+            }
+        }
+    }
+
+    // Merges into the distinct sources of a tag; ignored unless distinct sources are enabled at the
+    // sketch's precision
+    public void addTagDistinctSources(String tag, HyperLogLog sources) {
+        if (isTrackingDistinctSources() && sources.getPrecision() == distinctSourcePrecision) {
+            tagSourcesFor(tagIdFor(tag)).merge(sources);
+        }
+    }
+
+    public void addPortProtocolDistinctSources(int protocol, int port, HyperLogLog sources) {
+        if (!isTrackingDistinctSources() || sources.getPrecision() != distinctSourcePrecision) {
+            return;
+        }
+        if (protocol < 0 || port < 0 || port >= PORT_COUNT) {
+            throw new IllegalArgumentException("Invalid port/protocol combination: " + port + "/" + protocol);
+        }
+        portSourcesFor(protocol, port).merge(sources);
+    }
+
+    public boolean isTrackingDistinctSources() {
+        return tagSources != null;
+    }
+
+    // HyperLogLog precision of the distinct sources, 0 when they are not tracked
+    public int getDistinctSourcePrecision() {
+        return distinctSourcePrecision;
+    }
+
+    public boolean isTrackingVolumes() {
+        return tagBytes != null;
+    }
+
+    // null unless heavy hitters are enabled
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    // null unless a group-by is configured
+    public GroupByTable getGroupBy() {
+        return groupBy;
+    }
+
+    // Moves the group-by rows to disk, for a partial result that has to wait before it is merged
+    public void spillGroupBy() {
+        if (groupBy != null) {
+            groupBy.spill();
+        }
+    }
+
+    public int getTagCountSize() {
+        return tagOrderSize;
+    }
+
+    public int getPortProtocolCountSize() {
+        return portProtocolOrderSize;
+    }
+
+    // Visits tag counts in first-seen order
+    public void forEachTagCount(TagCountConsumer consumer) {
+        for (int i = 0; i < tagOrderSize; i++) {
+            int tagId = tagOrder[i];
+            consumer.accept(getTagName(tagId), tagCounts[tagId]);
+        }
+    }
+
+    // Visits port/protocol counts in first-seen order
+    public void forEachPortProtocolCount(PortProtocolCountConsumer consumer) {
+        for (int i = 0; i < portProtocolOrderSize; i++) {
+            long key = portProtocolOrder[i];
+            int protocol = (int) (key >>> 16);
+            int port = (int) (key & 0xFFFF);
+            consumer.accept(protocol, port, getPortProtocolCount(protocol, port));
+        }
+    }
+
+    // Visits the byte and packet sums of every counted tag in first-seen order; nothing unless
+    // volumes are enabled
+    public void forEachTagVolume(TagVolumeConsumer consumer) {
+        if (!isTrackingVolumes()) {
+            return;
+        }
+        for (int i = 0; i < tagOrderSize; i++) {
+            int tagId = tagOrder[i];
+            consumer.accept(getTagName(tagId), tagBytes[tagId], tagPackets[tagId]);
+        }
+    }
+
+    public void forEachPortProtocolVolume(PortProtocolVolumeConsumer consumer) {
+        if (!isTrackingVolumes()) {
+            return;
+        }
+        for (int i = 0; i < portProtocolOrderSize; i++) {
+            long key = portProtocolOrder[i];
+            int protocol = (int) (key >>> 16);
+            int port = (int) (key & 0xFFFF);
+            consumer.accept(protocol, port, getPortProtocolBytes(protocol, port), getPortProtocolPackets(protocol, port));
+        }
+    }
+
+    // Visits the distinct source sketch of every counted tag in first-seen order; nothing unless
+    // distinct sources are enabled. Tags counted without a sketch, e.g. from an older snapshot, get an
+    // empty one.
+    public void forEachTagDistinctSources(TagSourcesConsumer consumer) {
+        if (!isTrackingDistinctSources()) {
+            return;
+        }
+        for (int i = 0; i < tagOrderSize; i++) {
+            int tagId = tagOrder[i];
+            consumer.accept(getTagName(tagId), tagSourcesFor(tagId));
+        }
+    }
+
+    public void forEachPortProtocolDistinctSources(PortProtocolSourcesConsumer consumer) {
+        if (!isTrackingDistinctSources()) {
+            return;
+        }
+        for (int i = 0; i < portProtocolOrderSize; i++) {
+            long key = portProtocolOrder[i];
+            int protocol = (int) (key >>> 16);
+            int port = (int) (key & 0xFFFF);
+            consumer.accept(protocol, port, portSourcesFor(protocol, port));
+        }
+    }
+
+    // Resets only the slots that were counted, so an aggregator can be reused cheaply for the next file
+    public void clear() {
+        for (int i = 0; i < tagOrderSize; i++) {
+            tagCounts[tagOrder[i]] = 0;
+            tagSeen[tagOrder[i]] = false;
+            if (tagBytes != null) {
+                tagBytes[tagOrder[i]] = 0;
+                tagPackets[tagOrder[i]] = 0;
+            }
+            if (tagSources != null) {
+                tagSources[tagOrder[i]] = null;
+            }
+        }
+        tagOrderSize = 0;
+        for (int i = 0; i < portProtocolOrderSize; i++) {
+            long key = portProtocolOrder[i];
+            int protocol = (int) (key >>> 16);
+            int port = (int) (key & 0xFFFF);
+            if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+                portCountsByProtocol[protocol][port] = 0;
+                portSeenByProtocol[protocol][port >>> 6] &= ~(1L << port);
+                if (portBytesByProtocol != null && portBytesByProtocol[protocol] != null) {
+                    portBytesByProtocol[protocol][port] = 0;
+                    portPacketsByProtocol[protocol][port] = 0;
+                }
+                if (portSourcesByProtocol != null && portSourcesByProtocol[protocol] != null) {
+                    portSourcesByProtocol[protocol][port] = null;
+                }
+            }
+        }
+        countsForLargeProtocols.clear();
+        if (sourcesForLargeProtocols != null) {
+            sourcesForLargeProtocols.clear();
+        }
+        portProtocolOrderSize = 0;
+        if (heavyHitters != null) {
+            heavyHitters.clear();
+        }
+        if (groupBy != null) {
+            groupBy.clear();
+        }
+    }
+
+    // The maps below are filled with merge() in first-seen order, which gives them the same capacity
+    // and bin layout as maps counted line by line
+    public Map<String, Long> getTagCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        forEachTagCount((tag, count) -> counts.merge(tag, count, Long::sum));
+        return counts;
+    }
+
+    public Map<PortProtocolKey, Long> getPortProtocolCounts() {
+        Map<PortProtocolKey, Long> counts = new HashMap<>();
+        forEachPortProtocolCount((protocol, port, count) ->
+                counts.merge(new PortProtocolKey(port, Protocols.toName(protocol)), count, Long::sum));
+        return counts;
+    }
+
+    private String getTagName(int tagId) {
+        int tableTags = lookupTable.getTagCount();
+        return tagId < tableTags ? lookupTable.getTagName(tagId) : extraTagNames.get(tagId - tableTags);
+    }
+
+    private int tagIdFor(String tag) {
+        int tagId = lookupTable.findTagId(tag);
+        if (tagId >= 0) {
+            return tagId;
+        }
+        Integer extraTagId = extraTagIds.get(tag);
+        if (extraTagId == null) {
+            extraTagId = lookupTable.getTagCount() + extraTagNames.size();
+            extraTagNames.add(tag);
+            extraTagIds.put(tag, extraTagId);
+            if (extraTagId >= tagCounts.length) {
+                tagCounts = Arrays.copyOf(tagCounts, Math.max(extraTagId + 1, tagCounts.length * 2));
+                tagSeen = Arrays.copyOf(tagSeen, tagCounts.length);
+                if (tagBytes != null) {
+                    tagBytes = Arrays.copyOf(tagBytes, tagCounts.length);
+                    tagPackets = Arrays.copyOf(tagPackets, tagCounts.length);
+                }
+                if (tagSources != null) {
+                    tagSources = Arrays.copyOf(tagSources, tagCounts.length);
+                }
+            }
+        }
+        return extraTagId;
+    }
+
+    private void addTagCount(int tagId, long count) {
+        if (!tagSeen[tagId]) {
+            tagSeen[tagId] = true;
+            if (tagOrderSize == tagOrder.length) {
+                tagOrder = Arrays.copyOf(tagOrder, tagOrderSize * 2);
+            }
+            tagOrder[tagOrderSize++] = tagId;
+        }
+        tagCounts[tagId] += count;
+    }
+
+    private void countPortProtocol(int protocol, int port, long count) {
+        boolean firstSeen;
+        if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+            long[] counts = portCountsByProtocol[protocol];
+            if (counts == null) {
+                counts = new long[PORT_COUNT];
+                portCountsByProtocol[protocol] = counts;
+                portSeenByProtocol[protocol] = new long[PORT_COUNT / Long.SIZE];
+            }
+            long[] seen = portSeenByProtocol[protocol];
+            firstSeen = (seen[port >>> 6] & (1L << port)) == 0;
+            seen[port >>> 6] |= 1L << port;
+            counts[port] += count;
+        } else {
+            long key = portProtocolKey(protocol, port);
+            long[] counts = countsForLargeProtocols.get(key);
+            firstSeen = counts == null;
+            if (firstSeen) {
+                counts = new long[3];
+                countsForLargeProtocols.put(key, counts);
+            }
+            counts[0] += count;
+        }
+
+        if (firstSeen) {
+            if (portProtocolOrderSize == portProtocolOrder.length) {
+                portProtocolOrder = Arrays.copyOf(portProtocolOrder, portProtocolOrderSize * 2);
+            }
+            portProtocolOrder[portProtocolOrderSize++] = portProtocolKey(protocol, port);
+        }
+    }
+
+    private long getPortProtocolCount(int protocol, int port) {
+        if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+            return portCountsByProtocol[protocol][port];
+        }
+        return countsForLargeProtocols.get(portProtocolKey(protocol, port))[0];
+    }
+
+    private long getPortProtocolBytes(int protocol, int port) {
+        if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+            long[] bytes = portBytesByProtocol[protocol];
+            return bytes == null ? 0 : bytes[port];
+        }
+        return countsForLargeProtocols.get(portProtocolKey(protocol, port))[1];
+    }
+
+    private long getPortProtocolPackets(int protocol, int port) {
+        if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+            long[] packets = portPacketsByProtocol[protocol];
+            return packets == null ? 0 : packets[port];
+        }
+        return countsForLargeProtocols.get(portProtocolKey(protocol, port))[2];
+    }
+
+    private HyperLogLog tagSourcesFor(int tagId) {
+        HyperLogLog sources = tagSources[tagId];
+        if (sources == null) {
+            sources = new HyperLogLog(distinctSourcePrecision);
+            tagSources[tagId] = sources;
+        }
+        return sources;
+    }
+
+    private HyperLogLog portSourcesFor(int protocol, int port) {
+        if (protocol > Protocols.MAX_PROTOCOL_NUMBER) {
+            return sourcesForLargeProtocols.computeIfAbsent(portProtocolKey(protocol, port),
+                    k -> new HyperLogLog(distinctSourcePrecision));
+        }
+        HyperLogLog[] sourcesByPort = portSourcesByProtocol[protocol];
+        if (sourcesByPort == null) {
+            sourcesByPort = new HyperLogLog[PORT_COUNT];
+            portSourcesByProtocol[protocol] = sourcesByPort;
+        }
+        HyperLogLog sources = sourcesByPort[port];
+        if (sources == null) {
+            sources = new HyperLogLog(distinctSourcePrecision);
+            sourcesByPort[port] = sources;
+        }
+        return sources;
+    }
+
+    private HyperLogLog getPortSources(int protocol, int port) {
+        if (protocol > Protocols.MAX_PROTOCOL_NUMBER) {
+            return sourcesForLargeProtocols.get(portProtocolKey(protocol, port));
+        }
+        HyperLogLog[] sourcesByPort = portSourcesByProtocol[protocol];
+        return sourcesByPort == null ? null : sourcesByPort[port];
+    }
+
+    private static long portProtocolKey(int protocol, int port) {
+        return ((long) protocol << 16) | port;
+    }
+
+    public interface TagCountConsumer {
+        void accept(String tag, long count);
+    }
+
+    public interface PortProtocolCountConsumer {
+        void accept(int protocol, int port, long count);
+    }
+
+    public interface TagVolumeConsumer {
+        void accept(String tag, long bytes, long packets);
+    }
+
+    public interface PortProtocolVolumeConsumer {
+        void accept(int protocol, int port, long bytes, long packets);
+    }
+
+    public interface TagSourcesConsumer {
+        void accept(String tag, HyperLogLog sources);
+    }
+
+    public interface PortProtocolSourcesConsumer {
+        void accept(int protocol, int port, HyperLogLog sources);
+    }
+}
@@ -1,80 +1,316 @@
 package in.anuragbanerjee.analyzer;
 
+import in.anuragbanerjee.mapper.TagLookupTable;
 import in.anuragbanerjee.mapper.TagMapper;
-import in.anuragbanerjee.model.LogEntry;
-import in.anuragbanerjee.model.PortProtocolKey;
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.model.FlowField;
 import in.anuragbanerjee.output.OutputGenerator;
 import in.anuragbanerjee.parser.LogParser;
 import in.anuragbanerjee.parser.LogParsingStrategyFactory;
-import in.anuragbanerjee.parser.strategy.LogParsingStrategy;
+import in.anuragbanerjee.snapshot.AggregateSnapshot;
+import in.anuragbanerjee.store.FlowQuery;
+import in.anuragbanerjee.store.FlowRecordStore;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.*;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class FlowLogAnalyzer {
-    private final LogParser logParser;
+// Closing the analyzer unregisters its metrics MBean when JMX is enabled
+public class FlowLogAnalyzer implements Closeable {
+    // Flow log path that stands for stdin
+    public static final String STDIN = "-";
+    private static final AtomicInteger MBEAN_SEQUENCE = new AtomicInteger();
+
+    private final String logFormat;
     private final TagMapper tagMapper;
     private final OutputGenerator outputGenerator;
+    private final AnalyzerConfig config;
+    private final AnalyzerMetrics metrics = new AnalyzerMetrics();
 
     public FlowLogAnalyzer(String logFormat, TagMapper tagMapper, OutputGenerator outputGenerator) {
-        LogParsingStrategy strategy = LogParsingStrategyFactory.createStrategy(logFormat);
-        this.logParser = new LogParser(strategy);
+        this(logFormat, tagMapper, outputGenerator, AnalyzerConfig.defaults());
+    }
+
+    public FlowLogAnalyzer(String logFormat, TagMapper tagMapper, OutputGenerator outputGenerator, AnalyzerConfig config) {
+        // Fails fast on an unsupported format
+        LogParsingStrategyFactory.createStrategy(logFormat);
+        this.logFormat = logFormat;
         this.tagMapper = tagMapper;
         this.outputGenerator = outputGenerator;
+        this.config = config;
+        if (config.isJmxEnabled()) {
+            metrics.register("analyzer-" + MBEAN_SEQUENCE.incrementAndGet());
+        }
     }
 
-    public void analyze(String flowLogFilePath, String lookupTableFilePath, String outputFilePath) {
-        tagMapper.loadTagMappings(lookupTableFilePath);
-        List<LogEntry> logEntries = parseFlowLogFile(flowLogFilePath);
-        Map<String, Integer> tagCounts = mapTagCounts(logEntries);
-        Map<PortProtocolKey, Integer> portProtocolCounts = mapPortProtocolCounts(logEntries);
-
-        outputGenerator.writeOutput(tagCounts, portProtocolCounts, outputFilePath);
-    }
-
-    private List<LogEntry> parseFlowLogFile(String flowLogFilePath) {
-        List<LogEntry> logEntries = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(flowLogFilePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    LogEntry logEntry = logParser.parseLogEntry(line);
-                    logEntries.add(logEntry);
-                } catch (IllegalArgumentException e) {
-                    // Log error and continue with next line
-                    // System.err.println("Error parsing line: " + line);
-                    System.err.println(e.getMessage());
-                }
+    public AnalyzerMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        metrics.unregister();
+    }
+
+    public void analyze(String flowLogPath, String lookupTableFilePath, String outputFilePath) {
+        analyze(List.of(flowLogPath), lookupTableFilePath, outputFilePath);
+    }
+
+    // Each flow log path may be a file, a directory or a glob; gzip-compressed files are detected by content.
+    // A single "-" reads the flow log from stdin.
+    public void analyze(List<String> flowLogPaths, String lookupTableFilePath, String outputFilePath) {
+        if (flowLogPaths.equals(List.of(STDIN))) {
+            analyze(System.in, lookupTableFilePath, outputFilePath);
+            return;
+        }
+        List<Path> flowLogFiles = resolve(flowLogPaths);
+
+        metrics.startRun();
+        // Pin one table for the whole run, even if the mapper is reloaded meanwhile
+        TagLookupTable lookupTable = loadTagMappings(lookupTableFilePath);
+        metrics.processingStarted();
+        FlowLogAggregator aggregator;
+        try (RejectedLines rejectedLines = new RejectedLines(config, false)) {
+            aggregator = config.isWindowed()
+                    ? aggregateWindowed(flowLogFiles, lookupTable, outputFilePath, rejectedLines)
+                    : aggregate(flowLogFiles, lookupTable, rejectedLines);
+        }
+        metrics.processingFinished();
+
+        writeResults(aggregator, outputFilePath, flowLogFiles.size());
+        printSummary();
+    }
+
+    // Reads a flow log from a stream that cannot be mapped or split, e.g. a pipe; gzip is detected by
+    // content. Reading overlaps with parsing on the configured number of threads. The stream is read to
+    // its end but not closed.
+    public void analyze(InputStream flowLog, String lookupTableFilePath, String outputFilePath) {
+        metrics.startRun();
+        TagLookupTable lookupTable = loadTagMappings(lookupTableFilePath);
+        metrics.processingStarted();
+        Set<FlowField> fields = FlowLogAggregator.requiredFields(config, lookupTable);
+        FlowLogAggregator aggregator;
+        try (RejectedLines rejectedLines = new RejectedLines(config, false)) {
+            if (config.isWindowed()) {
+                // Windows need the records in order, so the stream is parsed as it is read
+                aggregator = new FlowLogAggregator(lookupTable, config);
+                TumblingWindows windows = new TumblingWindows(config, lookupTable, outputGenerator, outputFilePath, false);
+                FlowLogFiles.process(FlowLogFiles.openReader(flowLog), new ByteLineProcessor(newLogParser(fields),
+                        aggregator, windows, new LineCounters(metrics), rejectedLines));
+                windows.finish();
+            } else {
+                aggregator = new PipelinedFlowLogProcessor(() -> newLogParser(fields), lookupTable, config, metrics,
+                        rejectedLines).process(FlowLogFiles.openStream(flowLog));
             }
         } catch (IOException e) {
-            throw new RuntimeException("Error reading flow log file", e);
+            throw new RuntimeException("Error reading flow log stream", e);
         }
-        return logEntries;
+        metrics.processingFinished();
+
+        writeResults(aggregator, outputFilePath, 1);
+        printSummary();
     }
 
-    private Map<String, Integer> mapTagCounts(List<LogEntry> logEntries) {
-        Map<String, Integer> tagCounts = new HashMap<>();
-        for (LogEntry logEntry : logEntries) {
-            Set<String> associatedTags = tagMapper.getAssociatedTags(logEntry);
-            if (associatedTags != null) {
-                for (String tag : associatedTags) {
-                    tagCounts.merge(tag, 1, Integer::sum);
-                }
-            } else {
-                tagCounts.merge("untagged", 1, Integer::sum);
+    // Parses the flow logs once into a columnar store, which can then be queried and analyzed any number
+    // of times without reading the files again. Files are read one after another.
+    public FlowRecordStore load(List<String> flowLogPaths) {
+        List<Path> flowLogFiles = resolve(flowLogPaths);
+
+        metrics.startRun();
+        metrics.processingStarted();
+        FlowRecordStore store = new FlowRecordStore();
+        LineCounters counters = new LineCounters(metrics);
+        try (RejectedLines rejectedLines = new RejectedLines(config, false)) {
+            for (Path flowLogFile : flowLogFiles) {
+                // The store keeps every field
+                LogParser logParser = newLogParser(EnumSet.allOf(FlowField.class));
+                FlowLogFiles.process(flowLogFile, new ByteLineProcessor(logParser, store::add, counters, rejectedLines));
+            }
+        }
+        store.trimToSize();
+        metrics.processingFinished();
+        printSummary();
+        return store;
+    }
+
+    public void analyze(FlowRecordStore store, String lookupTableFilePath, String outputFilePath) {
+        analyze(store.query(), lookupTableFilePath, outputFilePath);
+    }
+
+    // Tags and counts the rows the query selects. For a query over a whole store the report is the
+    // same as the one analyze() writes for the files the store was loaded from.
+    public void analyze(FlowQuery query, String lookupTableFilePath, String outputFilePath) {
+        metrics.startRun();
+        TagLookupTable lookupTable = loadTagMappings(lookupTableFilePath);
+        metrics.processingStarted();
+        FlowLogAggregator aggregator = new FlowLogAggregator(lookupTable, config);
+        LineCounters counters = new LineCounters(metrics);
+        query.forEach(record -> counters.lineParsed(aggregator.accept(record)));
+        counters.flush();
+        metrics.processingFinished();
+
+        writeResults(aggregator, outputFilePath, 1);
+        printSummary();
+    }
+
+    // Sums the counts of previously written snapshots (each path may be a file, directory or glob)
+    // and writes them as a regular report, plus a merged snapshot when a snapshot path is configured
+    public void mergeSnapshots(List<String> snapshotPaths, String outputFilePath) {
+        metrics.startRun();
+        FlowLogAggregator aggregator = new FlowLogAggregator(tagMapper.getLookupTable(), config);
+        int snapshotCount = 0;
+        for (String snapshotPath : snapshotPaths) {
+            for (Path snapshotFile : FlowLogFiles.resolve(snapshotPath)) {
+                AggregateSnapshot.readInto(snapshotFile, aggregator);
+                snapshotCount++;
             }
         }
-        return tagCounts;
+        writeResults(aggregator, outputFilePath, snapshotCount);
+        printSummary();
+    }
+
+    private void writeResults(FlowLogAggregator aggregator, String outputFilePath, int inputCount) {
+        long start = System.nanoTime();
+        try {
+            AggregateReport.write(outputGenerator, aggregator, config, outputFilePath);
+            if (config.getSnapshotPath() != null) {
+                Map<String, String> metadata = new LinkedHashMap<>();
+                metadata.put("createdAt", Instant.now().toString());
+                metadata.put("inputs", Integer.toString(inputCount));
+                metadata.put("lookupVersion", Long.toString(aggregator.getLookupTable().getVersion()));
+                AggregateSnapshot.write(aggregator, metadata, Path.of(config.getSnapshotPath()));
+            }
+        } finally {
+            if (aggregator.getGroupBy() != null) {
+                // Deletes its spill files, also when the write failed
+                aggregator.getGroupBy().clear();
+            }
+        }
+        metrics.recordPhase(AnalyzerMetrics.Phase.WRITE, System.nanoTime() - start);
+    }
+
+    private static List<Path> resolve(List<String> flowLogPaths) {
+        List<Path> flowLogFiles = new ArrayList<>();
+        for (String flowLogPath : flowLogPaths) {
+            flowLogFiles.addAll(FlowLogFiles.resolve(flowLogPath));
+        }
+        return flowLogFiles;
+    }
+
+    private TagLookupTable loadTagMappings(String lookupTableFilePath) {
+        long start = System.nanoTime();
+        tagMapper.loadTagMappings(lookupTableFilePath);
+        TagLookupTable lookupTable = tagMapper.getLookupTable();
+        metrics.recordPhase(AnalyzerMetrics.Phase.LOOKUP_LOAD, System.nanoTime() - start);
+        metrics.setLookupTable(lookupTable.getVersion(), lookupTable.getMappingCount());
+        return lookupTable;
+    }
+
+    private void printSummary() {
+        if (config.isMetricsSummary()) {
+            metrics.printSummary(System.out);
+        }
+    }
+
+    // Follows a growing flow log file and rewrites the output on the configured report interval.
+    // Blocks until the calling thread is interrupted.
+    public void follow(String flowLogFilePath, String lookupTableFilePath, String outputFilePath) {
+        metrics.startRun();
+        loadTagMappings(lookupTableFilePath);
+        metrics.processingStarted();
+        if (config.getLookupReloadIntervalMillis() > 0) {
+            tagMapper.startWatching(config.getLookupReloadIntervalMillis());
+        }
+        try (RejectedLines rejectedLines = new RejectedLines(config, true)) {
+            LogParser logParser = new LogParser(LogParsingStrategyFactory.createStrategy(logFormat));
+            logParser.filter(config.getFilter());
+            new FlowLogFollower(Path.of(flowLogFilePath), outputFilePath, logParser, tagMapper, outputGenerator, config, metrics,
+                    rejectedLines).run();
+        } finally {
+            tagMapper.stopWatching();
+        }
+        metrics.processingFinished();
+        printSummary();
+    }
+
+    // Aggregates flow log lines that clients push to the listen address (see FlowLogServer) and rewrites
+    // the output on the configured report interval. Blocks until the calling thread is interrupted.
+    public void serve(String listenAddress, String lookupTableFilePath, String outputFilePath) {
+        if (config.isWindowed()) {
+            throw new IllegalArgumentException("Windowed counts need records in order and are not supported by the server");
+        }
+        SocketAddress address = FlowLogServer.socketAddress(listenAddress);
+        metrics.startRun();
+        loadTagMappings(lookupTableFilePath);
+        metrics.processingStarted();
+        if (config.getLookupReloadIntervalMillis() > 0) {
+            tagMapper.startWatching(config.getLookupReloadIntervalMillis());
+        }
+        try (RejectedLines rejectedLines = new RejectedLines(config, true)) {
+            new FlowLogServer(address, outputFilePath, this::newLogParser, tagMapper, outputGenerator, config, metrics,
+                    rejectedLines).run();
+        } finally {
+            tagMapper.stopWatching();
+        }
+        metrics.processingFinished();
+        printSummary();
+    }
+
+    // Parsers decode only the fields the aggregation reads, and only of lines that match the filter
+    private LogParser newLogParser(Set<FlowField> fields) {
+        LogParser logParser = new LogParser(LogParsingStrategyFactory.createStrategy(logFormat));
+        logParser.project(fields);
+        logParser.filter(config.getFilter());
+        return logParser;
+    }
+
+    private FlowLogAggregator aggregate(List<Path> flowLogFiles, TagLookupTable lookupTable, RejectedLines rejectedLines) {
+        Set<FlowField> fields = FlowLogAggregator.requiredFields(config, lookupTable);
+        if (flowLogFiles.size() > 1) {
+            return new MultiFileFlowLogProcessor(() -> newLogParser(fields), lookupTable, config, metrics,
+                    rejectedLines).process(flowLogFiles);
+        }
+
+        Path flowLogFile = flowLogFiles.get(0);
+        if (config.isParallel() && !FlowLogFiles.isGzip(flowLogFile)) {
+            // Only the first chunk sees the header, so every chunk's parser is shown it up front
+            String header = FlowLogFiles.readFirstLine(flowLogFile);
+            return new ParallelFlowLogProcessor(() -> {
+                LogParser logParser = newLogParser(fields);
+                if (header != null) {
+                    logParser.acceptHeader(header);
+                }
+                return logParser;
+            }, lookupTable, config, metrics, rejectedLines).process(flowLogFile);
+        }
+        FlowLogAggregator aggregator = new FlowLogAggregator(lookupTable, config);
+        FlowLogFiles.process(flowLogFile, newLogParser(fields), aggregator, new LineCounters(metrics), rejectedLines);
+        return aggregator;
     }
 
-    private Map<PortProtocolKey, Integer> mapPortProtocolCounts(List<LogEntry> logEntries) {
-        Map<PortProtocolKey, Integer> portProtocolCounts = new HashMap<>();
-        for (LogEntry logEntry : logEntries) {
-            PortProtocolKey key = new PortProtocolKey(logEntry.getDestinationPort(), logEntry.getProtocolAsString());
-            portProtocolCounts.merge(key, 1, Integer::sum);
+    // Windows close as start times advance, so the files are read one after another in order, whatever
+    // the parallelism
+    private FlowLogAggregator aggregateWindowed(List<Path> flowLogFiles, TagLookupTable lookupTable, String outputFilePath,
+                                                RejectedLines rejectedLines) {
+        FlowLogAggregator aggregator = new FlowLogAggregator(lookupTable, config);
+        TumblingWindows windows = new TumblingWindows(config, lookupTable, outputGenerator, outputFilePath, false);
+        LineCounters counters = new LineCounters(metrics);
+        Set<FlowField> fields = FlowLogAggregator.requiredFields(config, lookupTable);
+        for (Path flowLogFile : flowLogFiles) {
+            FlowLogFiles.process(flowLogFile, new ByteLineProcessor(newLogParser(fields), aggregator, windows, counters, rejectedLines));
         }
-        return portProtocolCounts;
+        windows.finish();
+        return aggregator;
     }
 }
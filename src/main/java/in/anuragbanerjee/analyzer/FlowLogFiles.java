@@ -0,0 +1,172 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.parser.LogParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+final class FlowLogFiles {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private FlowLogFiles() {}
+
+    // A path can name a single file, a directory (all regular files directly inside it) or a glob
+    // such as logs/**/*.log.gz. Files are returned in a stable, sorted order. A path that exists as it
+    // is, e.g. logs/flow[1].log, is never expanded as a glob.
+    static List<Path> resolve(String flowLogPath) {
+        List<Path> files;
+        try {
+            if (isGlob(flowLogPath) && !exists(flowLogPath)) {
+                files = resolveGlob(flowLogPath);
+            } else {
+                Path path = Path.of(flowLogPath);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> entries = Files.list(path)) {
+                        files = entries.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                    }
+                } else {
+                    files = List.of(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error listing flow log files for: " + flowLogPath, e);
+        }
+
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No flow log files found for: " + flowLogPath);
+        }
+        return files;
+    }
+
+    static boolean isGzip(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static BufferedReader openReader(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        try {
+            if (isGzip(file)) {
+                in = new GZIPInputStream(in, READ_BUFFER_SIZE);
+            }
+            // Same charset FileReader uses
+            return new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()), READ_BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Decompresses a stream that starts with the gzip magic bytes; other streams are read as they are
+    static InputStream openStream(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, READ_BUFFER_SIZE);
+        buffered.mark(2);
+        boolean gzip = buffered.read() == 0x1f && buffered.read() == 0x8b;
+        buffered.reset();
+        return gzip ? new GZIPInputStream(buffered, READ_BUFFER_SIZE) : buffered;
+    }
+
+    static BufferedReader openReader(InputStream in) throws IOException {
+        return new BufferedReader(new InputStreamReader(openStream(in), Charset.defaultCharset()), READ_BUFFER_SIZE);
+    }
+
+    // The first line of the file, or null for an empty file
+    static String readFirstLine(Path file) {
+        try (BufferedReader reader = openReader(file)) {
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading flow log file", e);
+        }
+    }
+
+    static void process(Path file, LogParser logParser, FlowLogAggregator aggregator, LineCounters counters,
+                        RejectedLines rejectedLines) {
+        process(file, new ByteLineProcessor(logParser, aggregator, counters, rejectedLines));
+    }
+
+    static void process(Path file, ByteLineProcessor lineProcessor) {
+        try (BufferedReader reader = openReader(file)) {
+            process(reader, lineProcessor);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading flow log file", e);
+        }
+    }
+
+    static void process(BufferedReader reader, ByteLineProcessor lineProcessor) throws IOException {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineProcessor.processLine(line);
+            }
+        } finally {
+            lineProcessor.flushCounters();
+        }
+    }
+
+    private static boolean exists(String path) {
+        try {
+            return Files.exists(Path.of(path));
+        } catch (InvalidPathException e) {
+            // e.g. '*' on Windows
+            return false;
+        }
+    }
+
+    private static boolean isGlob(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(path.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Path> resolveGlob(String pattern) throws IOException {
+        // Walk from the deepest directory that precedes the first wildcard
+        Path patternPath = Path.of(pattern);
+        int firstGlobPart = 0;
+        while (firstGlobPart < patternPath.getNameCount() && !isGlob(patternPath.getName(firstGlobPart).toString())) {
+            firstGlobPart++;
+        }
+        boolean fromWorkingDirectory = firstGlobPart == 0 && !patternPath.isAbsolute();
+        Path base;
+        if (firstGlobPart > 0) {
+            Path prefix = patternPath.subpath(0, firstGlobPart);
+            base = patternPath.isAbsolute() ? patternPath.getRoot().resolve(prefix) : prefix;
+        } else {
+            base = fromWorkingDirectory ? Path.of(".") : patternPath.getRoot();
+        }
+        if (!Files.isDirectory(base)) {
+            return new ArrayList<>();
+        }
+
+        int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : patternPath.getNameCount() - firstGlobPart;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> entries = Files.walk(base, maxDepth)) {
+            return entries.filter(Files::isRegularFile)
+                    .map(file -> fromWorkingDirectory ? base.relativize(file) : file)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.mapper.TagLookupTable;
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.output.OutputGenerator;
+import in.anuragbanerjee.parser.LogParser;
+import in.anuragbanerjee.snapshot.AggregateSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Tails a growing flow log file: only complete lines appended since the last poll are parsed, the
+// counters are kept across polls and the report is rewritten on an interval. After each report a
+// checkpoint (file identity plus byte offset of the next unread line) is saved, so a restart resumes
+// reading where the previous run stopped. The checkpoint is an aggregate snapshot carrying the position
+// as metadata, so counters and offset are restored together. A file with a new identity or a smaller
+// size (rotation or truncation) is read again from the start. When the TagMapper publishes a new
+// lookup table, the counters so far are carried over and later lines are tagged with the new table.
+// Windowed counts are appended to the window output as their windows close; windows still open when
+// the follower stops are written then, so after a restart a window may appear twice, split at the
+// restart.
+class FlowLogFollower {
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path flowLogFile;
+    private final Path checkpointFile;
+    private final String outputFilePath;
+    private final OutputGenerator outputGenerator;
+    private final LogParser logParser;
+    private final TagMapper tagMapper;
+    private final LineCounters counters;
+    private final RejectedLines rejectedLines;
+    private final AnalyzerMetrics metrics;
+    private final long pollIntervalMillis;
+    private final long reportIntervalMillis;
+    private final AnalyzerConfig config;
+
+    private FlowLogAggregator aggregator;
+    private final TumblingWindows windows;
+    private ByteLineProcessor lineProcessor;
+    private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private String fileIdentity;
+    private long offset;
+
+    FlowLogFollower(Path flowLogFile, String outputFilePath, LogParser logParser, TagMapper tagMapper,
+                    OutputGenerator outputGenerator, AnalyzerConfig config, AnalyzerMetrics metrics,
+                    RejectedLines rejectedLines) {
+        this.flowLogFile = flowLogFile;
+        this.outputFilePath = outputFilePath;
+        this.checkpointFile = Path.of(config.getCheckpointPath() != null
+                ? config.getCheckpointPath() : outputFilePath + ".checkpoint");
+        this.outputGenerator = outputGenerator;
+        this.logParser = logParser;
+        this.tagMapper = tagMapper;
+        this.counters = new LineCounters(metrics);
+        this.rejectedLines = rejectedLines;
+        this.metrics = metrics;
+        this.config = config;
+        this.aggregator = new FlowLogAggregator(tagMapper.getLookupTable(), config);
+        this.windows = config.isWindowed()
+                ? new TumblingWindows(config, aggregator.getLookupTable(), outputGenerator, outputFilePath, true) : null;
+        logParser.project(FlowLogAggregator.requiredFields(config, aggregator.getLookupTable()));
+        this.lineProcessor = new ByteLineProcessor(logParser, aggregator, windows, counters, rejectedLines);
+        this.pollIntervalMillis = config.getFollowPollIntervalMillis();
+        this.reportIntervalMillis = config.getReportIntervalMillis();
+    }
+
+    // Runs until the calling thread is interrupted, then writes a final report and checkpoint
+    void run() {
+        loadCheckpoint();
+        long nextReport = System.currentTimeMillis() + reportIntervalMillis;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean readSomething = poll();
+                if (System.currentTimeMillis() >= nextReport) {
+                    report();
+                    nextReport = System.currentTimeMillis() + reportIntervalMillis;
+                }
+                if (!readSomething) {
+                    Thread.sleep(pollIntervalMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            report();
+            if (windows != null) {
+                windows.finish();
+            }
+        }
+    }
+
+    // Reads everything appended since the last poll; returns whether any complete line was consumed
+    boolean poll() {
+        if (!Files.exists(flowLogFile)) {
+            return false;
+        }
+        refreshLookupTable();
+        try (FileChannel channel = FileChannel.open(flowLogFile, StandardOpenOption.READ)) {
+            String identity = identityOf(flowLogFile);
+            long size = channel.size();
+            if (!identity.equals(fileIdentity) || size < offset) {
+                fileIdentity = identity;
+                offset = 0;
+            }
+
+            boolean consumed = false;
+            while (offset < size) {
+                buffer.clear();
+                int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                int lastNewline = read - 1;
+                while (lastNewline >= 0 && buffer.get(lastNewline) != '\n') {
+                    lastNewline--;
+                }
+                if (lastNewline < 0) {
+                    if (read < buffer.capacity()) {
+                        // Only a partial line so far: wait for the writer to finish it
+                        break;
+                    }
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                    continue;
+                }
+                lineProcessor.processLines(buffer, 0, lastNewline + 1);
+                offset += lastNewline + 1;
+                consumed = true;
+            }
+            lineProcessor.flushCounters();
+            return consumed;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading flow log file", e);
+        }
+    }
+
+    private void refreshLookupTable() {
+        TagLookupTable lookupTable = tagMapper.getLookupTable();
+        if (lookupTable == aggregator.getLookupTable()) {
+            return;
+        }
+        FlowLogAggregator refreshed = new FlowLogAggregator(lookupTable, config);
+        refreshed.merge(aggregator);
+        aggregator = refreshed;
+        if (windows != null) {
+            windows.setLookupTable(lookupTable);
+        }
+        // Address rules may need fields the old table did not
+        logParser.project(FlowLogAggregator.requiredFields(config, lookupTable));
+        lineProcessor.flushCounters();
+        lineProcessor = new ByteLineProcessor(logParser, aggregator, windows, counters, rejectedLines);
+        metrics.setLookupTable(lookupTable.getVersion(), lookupTable.getMappingCount());
+    }
+
+    void report() {
+        long start = System.nanoTime();
+        AggregateReport.write(outputGenerator, aggregator, config, outputFilePath);
+        saveCheckpoint();
+        metrics.recordPhase(AnalyzerMetrics.Phase.WRITE, System.nanoTime() - start);
+    }
+
+    private void loadCheckpoint() {
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+        try {
+            Map<String, String> position = AggregateSnapshot.readInto(checkpointFile, aggregator);
+            fileIdentity = position.get("identity");
+            offset = Long.parseLong(position.getOrDefault("offset", "0"));
+            if (offset > 0 && Files.exists(flowLogFile)) {
+                // Resuming past the header, which the parser still has to see
+                String header = FlowLogFiles.readFirstLine(flowLogFile);
+                if (header != null) {
+                    logParser.acceptHeader(header);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring unreadable checkpoint " + checkpointFile + ": " + e.getMessage());
+            aggregator.clear();
+            fileIdentity = null;
+            offset = 0;
+        }
+    }
+
+    private void saveCheckpoint() {
+        if (fileIdentity == null) {
+            return;
+        }
+        Map<String, String> position = new LinkedHashMap<>();
+        position.put("file", flowLogFile.toAbsolutePath().toString());
+        position.put("identity", fileIdentity);
+        position.put("offset", Long.toString(offset));
+        position.put("lookupVersion", Long.toString(aggregator.getLookupTable().getVersion()));
+        AggregateSnapshot.write(aggregator, position, checkpointFile);
+    }
+
+    private static String identityOf(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey();
+        return fileKey != null ? fileKey.toString() : "created:" + attributes.creationTime().toMillis();
+    }
+}
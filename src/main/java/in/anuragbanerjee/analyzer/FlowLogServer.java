@@ -0,0 +1,410 @@
+package in.anuragbanerjee.analyzer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import in.anuragbanerjee.mapper.TagLookupTable;
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.output.OutputGenerator;
+import in.anuragbanerjee.parser.LogParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+// Aggregates flow log lines pushed over a TCP or Unix domain socket by any number of clients at once,
+// one line per record as in a file. Connections are spread over one stripe per configured thread. A
+// stripe waits on its own Selector and parses whatever a read returned, whole lines at a time, into the
+// stripe's aggregator, so stripes never contend with each other; a partial line waits in its
+// connection's buffer for the rest. Every connection has its own parser and may start with a header,
+// like a file. Counts are collected by draining each stripe into running totals under the stripe's lock,
+// which holds a stripe up only for the keys it counted since the last drain. The totals are rewritten to
+// the output on the report interval and once more on shutdown. With a query address, GET /counts returns
+// the same report and GET /metrics the run metrics while ingestion goes on. Lines still incomplete when
+// the server stops are dropped.
+class FlowLogServer {
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private final SocketAddress listenAddress;
+    private final String outputFilePath;
+    private final Function<Set<FlowField>, LogParser> logParsers;
+    private final TagMapper tagMapper;
+    private final OutputGenerator outputGenerator;
+    private final AnalyzerConfig config;
+    private final AnalyzerMetrics metrics;
+    private final RejectedLines rejectedLines;
+    private final Stripe[] stripes;
+
+    // Guarded by this
+    private FlowLogAggregator totals;
+
+    // logParsers creates a parser that decodes the given fields, one per connection
+    FlowLogServer(SocketAddress listenAddress, String outputFilePath, Function<Set<FlowField>, LogParser> logParsers,
+                  TagMapper tagMapper, OutputGenerator outputGenerator, AnalyzerConfig config, AnalyzerMetrics metrics,
+                  RejectedLines rejectedLines) {
+        this.listenAddress = listenAddress;
+        this.outputFilePath = outputFilePath;
+        this.logParsers = logParsers;
+        this.tagMapper = tagMapper;
+        this.outputGenerator = outputGenerator;
+        this.config = config;
+        this.metrics = metrics;
+        this.rejectedLines = rejectedLines;
+        this.totals = new FlowLogAggregator(tagMapper.getLookupTable(), config, groupByTables());
+        this.stripes = new Stripe[config.getParallelism()];
+    }
+
+    // "unix:<path>" for a Unix domain socket, otherwise "[host:]port". Without a host only local clients
+    // can connect.
+    static SocketAddress socketAddress(String address) {
+        if (address.startsWith("unix:")) {
+            if (address.length() == "unix:".length()) {
+                throw new IllegalArgumentException("Missing socket path in address: " + address);
+            }
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+        int colon = address.lastIndexOf(':');
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port in address: " + address);
+        }
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid port in address: " + address);
+        }
+        String host = colon > 0 ? address.substring(0, colon) : null;
+        return host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    // Runs until the calling thread is interrupted, then writes a final report
+    void run() {
+        ServerSocketChannel serverChannel;
+        try {
+            serverChannel = listenAddress instanceof UnixDomainSocketAddress
+                    ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+            serverChannel.bind(listenAddress);
+            System.out.println("Listening for flow logs on " + serverChannel.getLocalAddress());
+        } catch (IOException e) {
+            throw new RuntimeException("Error listening on " + listenAddress, e);
+        }
+        HttpServer queryServer = null;
+        Thread acceptor = new Thread(() -> accept(serverChannel), "flow-log-acceptor");
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Stripe(i);
+                stripes[i].start();
+            }
+            acceptor.start();
+            if (config.getQueryAddress() != null) {
+                queryServer = startQueryServer((InetSocketAddress) socketAddress(config.getQueryAddress()));
+            }
+            long nextReport = System.currentTimeMillis() + config.getReportIntervalMillis();
+            while (!Thread.currentThread().isInterrupted()) {
+                long wait = nextReport - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                report();
+                nextReport = System.currentTimeMillis() + config.getReportIntervalMillis();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Waiting for the threads below needs the interrupt cleared; it is restored afterwards
+            boolean interrupted = Thread.interrupted();
+            if (queryServer != null) {
+                queryServer.stop(0);
+            }
+            close(serverChannel);
+            awaitQuietly(acceptor);
+            for (Stripe stripe : stripes) {
+                if (stripe != null) {
+                    stripe.shutdown();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            report();
+            synchronized (this) {
+                if (totals.getGroupBy() != null) {
+                    // Deletes its spill files
+                    totals.getGroupBy().clear();
+                }
+            }
+        }
+    }
+
+    synchronized void report() {
+        long start = System.nanoTime();
+        AggregateReport.write(outputGenerator, collect(), config, outputFilePath);
+        metrics.recordPhase(AnalyzerMetrics.Phase.WRITE, System.nanoTime() - start);
+    }
+
+    synchronized void writeCounts(OutputStream out) throws IOException {
+        AggregateReport.write(outputGenerator, collect(), config, out);
+    }
+
+    // Drains every stripe into the totals, which are tagged with the mapper's latest table
+    private synchronized FlowLogAggregator collect() {
+        TagLookupTable lookupTable = tagMapper.getLookupTable();
+        if (lookupTable != totals.getLookupTable()) {
+            FlowLogAggregator refreshed = new FlowLogAggregator(lookupTable, config, groupByTables());
+            refreshed.merge(totals);
+            totals = refreshed;
+            metrics.setLookupTable(lookupTable.getVersion(), lookupTable.getMappingCount());
+        }
+        for (Stripe stripe : stripes) {
+            if (stripe != null) {
+                stripe.drainInto(totals);
+            }
+        }
+        return totals;
+    }
+
+    // Hands each new connection to the next stripe until the channel is closed
+    private void accept(ServerSocketChannel serverChannel) {
+        int next = 0;
+        while (true) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                stripes[next].add(channel);
+                next = (next + 1) % stripes.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Error accepting flow log connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private HttpServer startQueryServer(InetSocketAddress address) {
+        try {
+            HttpServer server = HttpServer.create(address, 0);
+            server.createContext("/counts", exchange -> respond(exchange, outputGenerator.getFormat().getContentType(),
+                    this::writeCounts));
+            server.createContext("/metrics", exchange -> respond(exchange, "text/plain; charset=utf-8", body -> {
+                PrintStream out = new PrintStream(body, false, StandardCharsets.UTF_8);
+                metrics.printSummary(out);
+                out.flush();
+            }));
+            server.start();
+            System.out.println("Serving queries on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+            return server;
+        } catch (IOException e) {
+            throw new RuntimeException("Error starting query server on " + address, e);
+        }
+    }
+
+    private interface Body {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, Body body) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            body.writeTo(response);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, response.size());
+            response.writeTo(exchange.getResponseBody());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void close(ServerSocketChannel serverChannel) {
+        try {
+            serverChannel.close();
+            if (listenAddress instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) listenAddress).getPath());
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing " + listenAddress + ": " + e.getMessage());
+        }
+    }
+
+    // One connection's unparsed bytes and its parser
+    private static class Connection {
+        private final SocketChannel channel;
+        private final LogParser logParser;
+        private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // The aggregator lineProcessor counts into; replaced along with the stripe's
+        private FlowLogAggregator aggregator;
+        private ByteLineProcessor lineProcessor;
+
+        Connection(SocketChannel channel, LogParser logParser) {
+            this.channel = channel;
+            this.logParser = logParser;
+        }
+    }
+
+    // A thread with its own selector, connections and aggregator
+    private class Stripe extends Thread {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final LineCounters counters = new LineCounters(metrics);
+        private volatile boolean stopping;
+
+        // Guarded by this
+        private FlowLogAggregator aggregator = new FlowLogAggregator(tagMapper.getLookupTable(), config, groupByTables());
+
+        Stripe(int index) {
+            super("flow-log-stripe-" + index);
+            try {
+                this.selector = Selector.open();
+            } catch (IOException e) {
+                throw new RuntimeException("Error opening selector", e);
+            }
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            stopping = true;
+            selector.wakeup();
+            awaitQuietly(this);
+        }
+
+        synchronized void drainInto(FlowLogAggregator totals) {
+            totals.merge(aggregator);
+            aggregator.clear();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopping) {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        read(key);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error waiting for flow log connections: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                closeQuietly(selector);
+                for (SocketChannel channel : pending) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    LogParser logParser;
+                    synchronized (this) {
+                        logParser = logParsers.apply(FlowLogAggregator.requiredFields(config, aggregator.getLookupTable()));
+                    }
+                    channel.register(selector, SelectionKey.OP_READ, new Connection(channel, logParser));
+                } catch (IOException e) {
+                    System.err.println("Error registering flow log connection: " + e.getMessage());
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void read(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            ByteBuffer buffer = connection.buffer;
+            int read;
+            try {
+                read = connection.channel.read(buffer);
+            } catch (IOException e) {
+                System.err.println("Error reading flow log connection: " + e.getMessage());
+                read = -1;
+            }
+            int filled = buffer.position();
+            int end = read < 0 ? filled : PipelinedFlowLogProcessor.lastLineEnd(buffer.array(), filled);
+            if (end > 0) {
+                process(connection, end);
+            }
+            if (read < 0) {
+                key.cancel();
+                closeQuietly(connection.channel);
+            } else if (end == 0 && filled == buffer.capacity()) {
+                // A single line longer than the buffer
+                connection.buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+            } else {
+                buffer.limit(filled).position(end);
+                buffer.compact();
+            }
+        }
+
+        private synchronized void process(Connection connection, int end) {
+            TagLookupTable lookupTable = tagMapper.getLookupTable();
+            if (lookupTable != aggregator.getLookupTable()) {
+                FlowLogAggregator refreshed = new FlowLogAggregator(lookupTable, config, groupByTables());
+                refreshed.merge(aggregator);
+                aggregator = refreshed;
+            }
+            if (connection.aggregator != aggregator) {
+                // Address rules may need fields the old table did not
+                connection.logParser.project(FlowLogAggregator.requiredFields(config, lookupTable));
+                connection.aggregator = aggregator;
+                connection.lineProcessor = new ByteLineProcessor(connection.logParser, aggregator, counters, rejectedLines);
+            }
+            connection.lineProcessor.processLines(connection.buffer, 0, end);
+            connection.lineProcessor.flushCounters();
+        }
+    }
+
+    // The stripes and the totals share the group-by memory budget
+    private int groupByTables() {
+        return config.getParallelism() + 1;
+    }
+
+    private static void awaitQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing left to do with it
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.mapper.TagLookupTable;
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.parser.LogParser;
+
+import java.io.BufferedReader;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+// Aggregates many (optionally gzip-compressed) files on a fixed pool, one file per task. Results are
+// merged in file order while at most IN_FLIGHT_PER_THREAD files per worker are pending, so memory stays
+// bounded for tens of thousands of inputs and the merged counters see keys in a deterministic order.
+class MultiFileFlowLogProcessor {
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    private final Supplier<LogParser> logParsers;
+    private final TagLookupTable lookupTable;
+    private final AnalyzerConfig config;
+    private final AnalyzerMetrics metrics;
+    private final RejectedLines rejectedLines;
+    private final int parallelism;
+
+    // Each file gets a fresh parser from logParsers, since every file may start with its own header
+    MultiFileFlowLogProcessor(Supplier<LogParser> logParsers, TagLookupTable lookupTable, AnalyzerConfig config, AnalyzerMetrics metrics,
+                              RejectedLines rejectedLines) {
+        this.logParsers = logParsers;
+        this.lookupTable = lookupTable;
+        this.config = config;
+        this.metrics = metrics;
+        this.rejectedLines = rejectedLines;
+        this.parallelism = config.getParallelism();
+    }
+
+    FlowLogAggregator process(List<Path> files) {
+        int maxInFlight = parallelism * IN_FLIGHT_PER_THREAD;
+        // One group-by table per file in flight plus the merged one share the memory budget
+        int groupByTables = maxInFlight + 1;
+        BlockingQueue<FlowLogAggregator> idleAggregators = new ArrayBlockingQueue<>(maxInFlight);
+        for (int i = 0; i < maxInFlight; i++) {
+            idleAggregators.add(new FlowLogAggregator(lookupTable, config, groupByTables));
+        }
+        ThreadLocal<LineCounters> lineCounters = ThreadLocal.withInitial(() -> new LineCounters(metrics));
+
+        FlowLogAggregator merged = new FlowLogAggregator(lookupTable, config, groupByTables);
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            Deque<FileTask> inFlight = new ArrayDeque<>();
+            for (Path file : files) {
+                if (inFlight.size() == maxInFlight) {
+                    mergeNext(inFlight, merged, idleAggregators);
+                }
+                FlowLogAggregator aggregator = idleAggregators.remove();
+                // Fails with the IOException itself, so mergeNext can report it without guessing at wrappers
+                Future<?> future = pool.submit(() -> {
+                    try (BufferedReader reader = FlowLogFiles.openReader(file)) {
+                        FlowLogFiles.process(reader, new ByteLineProcessor(logParsers.get(), aggregator, lineCounters.get(), rejectedLines));
+                    }
+                    return null;
+                });
+                inFlight.add(new FileTask(file, aggregator, future));
+            }
+            while (!inFlight.isEmpty()) {
+                mergeNext(inFlight, merged, idleAggregators);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return merged;
+    }
+
+    private void mergeNext(Deque<FileTask> inFlight, FlowLogAggregator merged, BlockingQueue<FlowLogAggregator> idleAggregators) {
+        FileTask task = inFlight.remove();
+        try {
+            task.future.get();
+            merged.merge(task.aggregator);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error reading flow log file " + task.file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading flow log files", e);
+        }
+        task.aggregator.clear();
+        idleAggregators.add(task.aggregator);
+    }
+
+    private static class FileTask {
+        private final Path file;
+        private final FlowLogAggregator aggregator;
+        private final Future<?> future;
+
+        private FileTask(Path file, FlowLogAggregator aggregator, Future<?> future) {
+            this.file = file;
+            this.aggregator = aggregator;
+            this.future = future;
+        }
+    }
+}
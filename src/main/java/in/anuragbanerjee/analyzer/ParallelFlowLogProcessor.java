@@ -0,0 +1,154 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.mapper.TagLookupTable;
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.parser.LogParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+class ParallelFlowLogProcessor {
+    private static final int BOUNDARY_SCAN_BUFFER_SIZE = 8 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    private final Supplier<LogParser> logParsers;
+    private final TagLookupTable lookupTable;
+    private final AnalyzerConfig config;
+    private final AnalyzerMetrics metrics;
+    private final RejectedLines rejectedLines;
+    private final int parallelism;
+    private final int maxChunkSize;
+
+    // logParsers supplies one parser per chunk, already knowing the file's header if it has one
+    ParallelFlowLogProcessor(Supplier<LogParser> logParsers, TagLookupTable lookupTable, AnalyzerConfig config, AnalyzerMetrics metrics,
+                             RejectedLines rejectedLines) {
+        this.logParsers = logParsers;
+        this.lookupTable = lookupTable;
+        this.config = config;
+        this.metrics = metrics;
+        this.rejectedLines = rejectedLines;
+        this.parallelism = config.getParallelism();
+        this.maxChunkSize = config.getChunkSizeBytes();
+    }
+
+    FlowLogAggregator process(Path flowLogFile) {
+        try (FileChannel channel = FileChannel.open(flowLogFile, StandardOpenOption.READ)) {
+            long[] boundaries = findChunkBoundaries(channel);
+            // Chunks are merged in file order while at most IN_FLIGHT_PER_THREAD per worker are pending, and
+            // their aggregators are cleared and reused, so memory does not grow with the file. Their group-by
+            // tables and the merged one share the memory budget.
+            int maxInFlight = parallelism * IN_FLIGHT_PER_THREAD;
+            int groupByTables = maxInFlight + 1;
+            Deque<FlowLogAggregator> idleAggregators = new ArrayDeque<>();
+            FlowLogAggregator merged = new FlowLogAggregator(lookupTable, config, groupByTables);
+            ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+            try {
+                Deque<Future<FlowLogAggregator>> inFlight = new ArrayDeque<>();
+                for (int i = 0; i + 1 < boundaries.length; i++) {
+                    if (inFlight.size() == maxInFlight) {
+                        idleAggregators.push(mergeNext(inFlight, merged));
+                    }
+                    if (idleAggregators.isEmpty()) {
+                        idleAggregators.push(new FlowLogAggregator(lookupTable, config, groupByTables));
+                    }
+                    FlowLogAggregator aggregator = idleAggregators.pop();
+                    long start = boundaries[i];
+                    long end = boundaries[i + 1];
+                    inFlight.add(pool.submit(() -> processChunk(channel, start, end, aggregator)));
+                }
+                while (!inFlight.isEmpty()) {
+                    mergeNext(inFlight, merged);
+                }
+                return merged;
+            } finally {
+                pool.shutdownNow();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading flow log file", e);
+        }
+    }
+
+    // Merges the oldest chunk in file order, so keys reach the merged counters in the same order as a
+    // sequential read, and returns its aggregator cleared for reuse
+    private FlowLogAggregator mergeNext(Deque<Future<FlowLogAggregator>> inFlight, FlowLogAggregator merged) {
+        try {
+            FlowLogAggregator aggregator = inFlight.remove().get();
+            merged.merge(aggregator);
+            aggregator.clear();
+            return aggregator;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error reading flow log file", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading flow log file", e);
+        }
+    }
+
+    private long[] findChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkCount = Math.max((long) parallelism * CHUNKS_PER_THREAD, (size + maxChunkSize - 1) / maxChunkSize);
+        long targetChunkSize = Math.min(maxChunkSize, Math.max(1, (size + chunkCount - 1) / chunkCount));
+
+        long[] boundaries = new long[16];
+        int count = 0;
+        boundaries[count++] = 0;
+        long position = 0;
+        ByteBuffer scanBuffer = ByteBuffer.allocate(BOUNDARY_SCAN_BUFFER_SIZE);
+        while (position < size) {
+            long next = Math.min(size, position + targetChunkSize);
+            if (next < size) {
+                next = findNextLineStart(channel, next, size, scanBuffer);
+            }
+            if (count == boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, count * 2);
+            }
+            boundaries[count++] = next;
+            position = next;
+        }
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    // Returns the offset just after the first '\n' at or after from, or size when there is none
+    private long findNextLineStart(FileChannel channel, long from, long size, ByteBuffer scanBuffer) throws IOException {
+        long position = from - 1;
+        while (position < size) {
+            scanBuffer.clear();
+            int read = channel.read(scanBuffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scanBuffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private FlowLogAggregator processChunk(FileChannel channel, long start, long end, FlowLogAggregator aggregator) throws IOException {
+        LogParser logParser = logParsers.get();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ByteLineProcessor lineProcessor = new ByteLineProcessor(logParser, aggregator, new LineCounters(metrics), rejectedLines);
+        lineProcessor.processLines(buffer, 0, buffer.limit());
+        lineProcessor.flushCounters();
+        // Finished chunks wait for the ones before them to be merged, so their group-by rows go to disk
+        aggregator.spillGroupBy();
+        return aggregator;
+    }
+}
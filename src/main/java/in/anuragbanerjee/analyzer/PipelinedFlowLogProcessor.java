@@ -0,0 +1,175 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.mapper.TagLookupTable;
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+import in.anuragbanerjee.metrics.LineCounters;
+import in.anuragbanerjee.parser.LogParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+// Aggregates a stream that can be neither mapped nor split up front, such as stdin fed by
+// `aws s3 cp - | zcat`. The calling thread reads the stream into batches of whole lines while a fixed
+// pool parses earlier batches, each into its own aggregator, so reading and parsing overlap. Results are
+// merged in stream order, which gives the same report as a sequential read. At most IN_FLIGHT_PER_THREAD
+// batches per worker are read ahead; once the workers fall behind, the reader waits for the oldest batch
+// and merges it before reading on, so memory stays bounded however fast the producer is.
+class PipelinedFlowLogProcessor {
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    private final Supplier<LogParser> logParsers;
+    private final TagLookupTable lookupTable;
+    private final AnalyzerConfig config;
+    private final AnalyzerMetrics metrics;
+    private final RejectedLines rejectedLines;
+    private final int parallelism;
+    private final int batchSize;
+    // Every batch that can exist at once plus the merged aggregator share the group-by memory budget
+    private final int groupByTables;
+
+    // logParsers supplies one parser per batch buffer
+    PipelinedFlowLogProcessor(Supplier<LogParser> logParsers, TagLookupTable lookupTable, AnalyzerConfig config, AnalyzerMetrics metrics,
+                              RejectedLines rejectedLines) {
+        this.logParsers = logParsers;
+        this.lookupTable = lookupTable;
+        this.config = config;
+        this.metrics = metrics;
+        this.rejectedLines = rejectedLines;
+        this.parallelism = config.getParallelism();
+        this.batchSize = config.getStreamBatchSizeBytes();
+        this.groupByTables = parallelism * IN_FLIGHT_PER_THREAD + 2;
+    }
+
+    FlowLogAggregator process(InputStream in) {
+        int maxInFlight = parallelism * IN_FLIGHT_PER_THREAD;
+        Deque<Batch> idleBatches = new ArrayDeque<>();
+        int batchCount = 1;
+        Batch batch = new Batch();
+        String header = null;
+
+        FlowLogAggregator merged = new FlowLogAggregator(lookupTable, config, groupByTables);
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            Deque<Future<Batch>> inFlight = new ArrayDeque<>();
+            int filled = 0;
+            while (true) {
+                int read = in.read(batch.buffer, filled, batch.buffer.length - filled);
+                if (read > 0) {
+                    filled += read;
+                }
+                if (read < 0 || filled == batch.buffer.length) {
+                    int end = read < 0 ? filled : lastLineEnd(batch.buffer, filled);
+                    if (end == 0 && read >= 0) {
+                        // A single line longer than the buffer
+                        batch.buffer = Arrays.copyOf(batch.buffer, batch.buffer.length * 2);
+                        continue;
+                    }
+                    if (header == null) {
+                        // Parsers of later batches have to know the field order of a custom format
+                        header = firstLine(batch.buffer, end);
+                    }
+                    Batch next = null;
+                    if (read >= 0) {
+                        if (idleBatches.isEmpty() && batchCount <= maxInFlight) {
+                            idleBatches.push(new Batch());
+                            batchCount++;
+                        } else if (idleBatches.isEmpty()) {
+                            idleBatches.push(mergeNext(inFlight, merged));
+                        }
+                        next = idleBatches.pop();
+                        // Carry the partial last line over to the next batch
+                        int carried = filled - end;
+                        if (next.buffer.length < carried) {
+                            next.buffer = new byte[Math.max(batchSize, carried * 2)];
+                        }
+                        System.arraycopy(batch.buffer, end, next.buffer, 0, carried);
+                        filled = carried;
+                    }
+                    if (end > 0) {
+                        inFlight.add(submit(pool, batch, end, header));
+                    } else {
+                        idleBatches.push(batch);
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    batch = next;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                mergeNext(inFlight, merged);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading flow log stream", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return merged;
+    }
+
+    private Future<Batch> submit(ExecutorService pool, Batch batch, int length, String header) {
+        if (!batch.headerSeen) {
+            batch.logParser.acceptHeader(header);
+            batch.headerSeen = true;
+        }
+        return pool.submit(() -> {
+            batch.lineProcessor.processLines(ByteBuffer.wrap(batch.buffer), 0, length);
+            batch.lineProcessor.flushCounters();
+            return batch;
+        });
+    }
+
+    // Merges the oldest batch and returns it for reuse
+    private Batch mergeNext(Deque<Future<Batch>> inFlight, FlowLogAggregator merged) {
+        try {
+            Batch batch = inFlight.remove().get();
+            merged.merge(batch.aggregator);
+            batch.aggregator.clear();
+            return batch;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error processing flow log stream", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading flow log stream", e);
+        }
+    }
+
+    // End of the last complete line. Batches are cut after '\n' so that "\r\n" is never split; a lone
+    // '\r' ends a line only when another byte follows it.
+    static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n' || buffer[i] == '\r' && i < length - 1) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static String firstLine(byte[] buffer, int length) {
+        int end = 0;
+        while (end < length && buffer[end] != '\n' && buffer[end] != '\r') {
+            end++;
+        }
+        return new String(buffer, 0, end, Charset.defaultCharset());
+    }
+
+    // A buffer with the aggregator and parser it is processed with; used by one thread at a time
+    private class Batch {
+        private byte[] buffer = new byte[batchSize];
+        private final FlowLogAggregator aggregator = new FlowLogAggregator(lookupTable, config, groupByTables);
+        private final LogParser logParser = logParsers.get();
+        private final ByteLineProcessor lineProcessor = new ByteLineProcessor(logParser, aggregator, new LineCounters(metrics),
+                rejectedLines);
+        private boolean headerSeen;
+    }
+}
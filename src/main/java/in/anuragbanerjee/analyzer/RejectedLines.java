@@ -0,0 +1,98 @@
+package in.anuragbanerjee.analyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Where the lines of a run that fail to parse go, besides the failure counts in the metrics. Error
+// messages are printed to stderr at no more than errorLogRatePerSecond a second and the number left out
+// is reported when the run ends, so a badly broken file neither floods the log nor slows the run down
+// to the speed of the console. With a quarantine path configured, the raw lines are also written to that
+// file so they can be fixed and replayed. Shared by the workers of a run: each ByteLineProcessor buffers
+// its rejected lines and hands them over in blocks, so lines of one worker stay in order but blocks of
+// parallel workers may interleave.
+class RejectedLines implements Closeable {
+    private static final int LOG_COUNT_BITS = 20;
+    private static final long LOG_COUNT_MASK = (1L << LOG_COUNT_BITS) - 1;
+
+    private final int logRatePerSecond;
+    private final long origin = System.nanoTime();
+    // Second of the current log window above LOG_COUNT_BITS, messages printed in it below
+    private final AtomicLong logWindow = new AtomicLong();
+    private final LongAdder suppressed = new LongAdder();
+    private final OutputStream quarantine;
+
+    // A follower appends to the quarantine file; a run over whole files replaces it
+    RejectedLines(AnalyzerConfig config, boolean append) {
+        this.logRatePerSecond = config.getErrorLogRatePerSecond();
+        String quarantinePath = config.getQuarantinePath();
+        if (quarantinePath == null) {
+            this.quarantine = null;
+            return;
+        }
+        try {
+            this.quarantine = append
+                    ? Files.newOutputStream(Path.of(quarantinePath), StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                    : Files.newOutputStream(Path.of(quarantinePath));
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening quarantine file", e);
+        }
+    }
+
+    boolean isQuarantining() {
+        return quarantine != null;
+    }
+
+    // Whether the message for a rejected line should be printed; the caller only builds it if so
+    boolean tryLog() {
+        if (logRatePerSecond == 0) {
+            suppressed.increment();
+            return false;
+        }
+        long second = (System.nanoTime() - origin) / 1_000_000_000L;
+        while (true) {
+            long window = logWindow.get();
+            long next;
+            if (window >>> LOG_COUNT_BITS != second) {
+                next = second << LOG_COUNT_BITS | 1;
+            } else if ((window & LOG_COUNT_MASK) < logRatePerSecond) {
+                next = window + 1;
+            } else {
+                suppressed.increment();
+                return false;
+            }
+            if (logWindow.compareAndSet(window, next)) {
+                return true;
+            }
+        }
+    }
+
+    // Appends whole lines, each ending with '\n'
+    synchronized void quarantine(byte[] lines, int length) {
+        try {
+            quarantine.write(lines, 0, length);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing quarantine file", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        long count = suppressed.sumThenReset();
+        if (count > 0) {
+            System.err.println(count + " more parse errors were not logged");
+        }
+        if (quarantine != null) {
+            try {
+                quarantine.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing quarantine file", e);
+            }
+        }
+    }
+}
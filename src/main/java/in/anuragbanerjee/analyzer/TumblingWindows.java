@@ -0,0 +1,176 @@
+package in.anuragbanerjee.analyzer;
+
+import in.anuragbanerjee.mapper.TagLookupTable;
+import in.anuragbanerjee.model.FlowRecord;
+import in.anuragbanerjee.output.OutputFormat;
+import in.anuragbanerjee.output.OutputGenerator;
+import in.anuragbanerjee.output.OutputSection;
+import in.anuragbanerjee.output.ReportWriter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Tag and port/protocol counts per tumbling window of each configured size, keyed on the flow's start
+// time. The watermark trails the latest start time seen by the allowed lateness; a window is closed once
+// its end is at or before the watermark, and is then appended to the window output and its counters are
+// reused. Memory is therefore bounded by the open windows, not by the length of the input. Flows that
+// start in a window that is already closed are dropped from the windows (they still count towards the
+// totals), as are flows without a start time. Records must arrive in file order, so the input is read
+// sequentially. Not thread-safe.
+class TumblingWindows {
+    private final long[] windowSeconds;
+    private final long allowedLatenessSeconds;
+    private final OutputGenerator outputGenerator;
+    private final String outputFilePath;
+    private final ReportWriter writer;
+    private TagLookupTable lookupTable;
+
+    // Open windows per size by start time; windows of a size that start before its closedBefore are closed
+    private final List<TreeMap<Long, FlowLogAggregator>> openWindows = new ArrayList<>();
+    private final long[] closedBefore;
+    // The window of each size the previous flow went to, since consecutive flows mostly share one
+    private final long[] lastWindowStarts;
+    private final FlowLogAggregator[] lastWindows;
+    private final Deque<FlowLogAggregator> idleAggregators = new ArrayDeque<>();
+    private long latestStartTime = Long.MIN_VALUE;
+    private long lateRecords;
+    private long untimedRecords;
+
+    // append keeps the windows written by an earlier run, e.g. when following a file
+    TumblingWindows(AnalyzerConfig config, TagLookupTable lookupTable, OutputGenerator outputGenerator,
+                    String outputFilePath, boolean append) {
+        this.windowSeconds = config.getWindowSeconds();
+        this.allowedLatenessSeconds = config.getWindowAllowedLatenessSeconds();
+        this.lookupTable = lookupTable;
+        this.outputGenerator = outputGenerator;
+        this.outputFilePath = config.getWindowOutputPath() != null
+                ? config.getWindowOutputPath() : outputFilePath + ".windows";
+        this.closedBefore = new long[windowSeconds.length];
+        this.lastWindowStarts = new long[windowSeconds.length];
+        this.lastWindows = new FlowLogAggregator[windowSeconds.length];
+        for (int i = 0; i < windowSeconds.length; i++) {
+            openWindows.add(new TreeMap<>());
+            closedBefore[i] = Long.MIN_VALUE;
+        }
+        try {
+            FileOutputStream out = new FileOutputStream(this.outputFilePath, append);
+            if (outputGenerator.getFormat() == OutputFormat.CSV && out.getChannel().position() > 0) {
+                // Keeps the blank line between the windows of an earlier run and the first of this one
+                out.write('\n');
+            }
+            this.writer = outputGenerator.getFormat().open(out);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing window output file: " + this.outputFilePath, e);
+        }
+    }
+
+    // Windows opened from now on count with the new table; open ones keep theirs
+    void setLookupTable(TagLookupTable lookupTable) {
+        if (lookupTable != this.lookupTable) {
+            this.lookupTable = lookupTable;
+            idleAggregators.clear();
+        }
+    }
+
+    void accept(FlowRecord record) {
+        if (!record.hasValidStartTime()) {
+            untimedRecords++;
+            return;
+        }
+        long startTime = record.getStartTime();
+        boolean late = false;
+        for (int i = 0; i < windowSeconds.length; i++) {
+            long windowStart = Math.floorDiv(startTime, windowSeconds[i]) * windowSeconds[i];
+            if (windowStart < closedBefore[i]) {
+                late = true;
+                continue;
+            }
+            FlowLogAggregator window = lastWindows[i] != null && lastWindowStarts[i] == windowStart
+                    ? lastWindows[i] : openWindows.get(i).get(windowStart);
+            if (window == null) {
+                window = idleAggregators.isEmpty() ? new FlowLogAggregator(lookupTable) : idleAggregators.pop();
+                openWindows.get(i).put(windowStart, window);
+            }
+            lastWindowStarts[i] = windowStart;
+            lastWindows[i] = window;
+            window.accept(record);
+        }
+        if (late) {
+            lateRecords++;
+        }
+        if (startTime > latestStartTime) {
+            latestStartTime = startTime;
+            closeUpTo(startTime - allowedLatenessSeconds);
+        }
+    }
+
+    // Closes every window at the end of the input and reports the flows left out
+    void finish() {
+        closeUpTo(Long.MAX_VALUE);
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing window output file: " + outputFilePath, e);
+        }
+        if (lateRecords > 0 || untimedRecords > 0) {
+            System.err.println("Left out of the windows: " + lateRecords + " late flows, "
+                    + untimedRecords + " flows without a start time");
+        }
+    }
+
+    private void closeUpTo(long watermark) {
+        boolean closed = false;
+        for (int i = 0; i < windowSeconds.length; i++) {
+            long size = windowSeconds[i];
+            TreeMap<Long, FlowLogAggregator> windows = openWindows.get(i);
+            while (!windows.isEmpty() && windows.firstKey() <= watermark - size) {
+                Map.Entry<Long, FlowLogAggregator> window = windows.pollFirstEntry();
+                write(window.getKey(), size, window.getValue());
+                recycle(window.getValue());
+                lastWindows[i] = null;
+                closed = true;
+            }
+            if (watermark != Long.MAX_VALUE) {
+                closedBefore[i] = Math.max(closedBefore[i], Math.floorDiv(watermark, size) * size);
+            }
+        }
+        if (closed) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing window output file: " + outputFilePath, e);
+            }
+        }
+    }
+
+    private void write(long windowStart, long size, FlowLogAggregator window) {
+        String interval = Instant.ofEpochSecond(windowStart) + "/" + Instant.ofEpochSecond(windowStart + size);
+        List<Object[]> tagRows = new ArrayList<>();
+        outputGenerator.arrange(window.getTagCounts()).forEach((tag, count) -> tagRows.add(new Object[]{tag, count}));
+        List<Object[]> portProtocolRows = new ArrayList<>();
+        outputGenerator.arrange(window.getPortProtocolCounts()).forEach((key, count) ->
+                portProtocolRows.add(new Object[]{key.getPort(), key.getProtocol(), count}));
+        try {
+            outputGenerator.appendSections(List.of(
+                    new OutputSection("Window " + interval + " Tag Counts", List.of("Tag", "Count"), tagRows),
+                    new OutputSection("Window " + interval + " Port/Protocol Combination Counts",
+                            List.of("Port", "Protocol", "Count"), portProtocolRows)), writer);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing window output file: " + outputFilePath, e);
+        }
+    }
+
+    private void recycle(FlowLogAggregator window) {
+        if (window.getLookupTable() == lookupTable) {
+            window.clear();
+            idleAggregators.push(window);
+        }
+    }
+}
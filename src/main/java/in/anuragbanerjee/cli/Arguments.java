@@ -0,0 +1,56 @@
+package in.anuragbanerjee.cli;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// "--name value" and "--flag" command line options; an option may be given more than once
+final class Arguments {
+    private final Map<String, List<String>> values = new LinkedHashMap<>();
+
+    Arguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            values.computeIfAbsent(args[i], name -> new ArrayList<>()).add(hasValue ? args[++i] : "true");
+        }
+    }
+
+    void checkKnown(Set<String> names) {
+        for (String name : values.keySet()) {
+            if (!names.contains(name)) {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+    }
+
+    boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    // The last value given for the option
+    String get(String name, String defaultValue) {
+        List<String> given = values.get(name);
+        return given != null ? given.get(given.size() - 1) : defaultValue;
+    }
+
+    List<String> getAll(String name) {
+        return values.getOrDefault(name, List.of());
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = get(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package in.anuragbanerjee.cli;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// One analysis: flow logs (file, directory, glob or - for stdin), lookup table and output file
+final class BatchJob {
+    private final List<String> flowLogPaths;
+    private final String lookupPath;
+    private final String outputPath;
+    private final String logFormat;
+
+    BatchJob(List<String> flowLogPaths, String lookupPath, String outputPath, String logFormat) {
+        this.flowLogPaths = List.copyOf(flowLogPaths);
+        this.lookupPath = lookupPath;
+        this.outputPath = outputPath;
+        this.logFormat = logFormat;
+    }
+
+    // Rows are flowlogs,lookup,output with an optional fourth log format column that overrides the
+    // default one. Blank lines and lines starting with # are skipped.
+    static List<BatchJob> readManifest(String manifestPath, String defaultLogFormat) {
+        List<BatchJob> jobs = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifestPath))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String row = line.trim();
+                if (row.isEmpty() || row.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = row.split(",", -1);
+                if (parts.length < 3 || parts.length > 4) {
+                    throw new IllegalArgumentException("Invalid number of fields. Expected 3 or 4 but got "
+                            + parts.length + " in manifest line " + lineNumber + ": " + line);
+                }
+                String logFormat = parts.length == 4 && !parts[3].isBlank() ? parts[3].trim() : defaultLogFormat;
+                jobs.add(new BatchJob(List.of(parts[0].trim()), parts[1].trim(), parts[2].trim(), logFormat));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error reading manifest file: " + manifestPath, e);
+        }
+        return jobs;
+    }
+
+    List<String> getFlowLogPaths() {
+        return flowLogPaths;
+    }
+
+    String getLookupPath() {
+        return lookupPath;
+    }
+
+    String getOutputPath() {
+        return outputPath;
+    }
+
+    String getLogFormat() {
+        return logFormat;
+    }
+}
@@ -0,0 +1,78 @@
+package in.anuragbanerjee.cli;
+
+import in.anuragbanerjee.analyzer.AnalyzerConfig;
+import in.anuragbanerjee.analyzer.FlowLogAnalyzer;
+import in.anuragbanerjee.mapper.LookupTableCache;
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+import in.anuragbanerjee.output.OutputGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs many jobs in one JVM, so startup, class loading and JIT warm-up are paid once. Jobs run
+// concurrently and share a LookupTableCache, so a lookup file used by many jobs is compiled once. A
+// failing job does not stop the others; each gets its own result.
+final class BatchRunner {
+    private final AnalyzerConfig config;
+    private final int concurrency;
+    private final LookupTableCache lookupTableCache = new LookupTableCache();
+    private final OutputGenerator outputGenerator;
+
+    BatchRunner(AnalyzerConfig config, OutputGenerator outputGenerator, int concurrency) {
+        this.config = config;
+        this.outputGenerator = outputGenerator;
+        this.concurrency = concurrency;
+    }
+
+    // Results in job order
+    List<JobResult> run(List<BatchJob> jobs) {
+        List<JobResult> results = new ArrayList<>();
+        if (jobs.isEmpty()) {
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(concurrency, jobs.size()));
+        try {
+            List<Future<JobResult>> futures = new ArrayList<>();
+            for (BatchJob job : jobs) {
+                futures.add(pool.submit(() -> runJob(job)));
+            }
+            for (Future<JobResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            // runJob reports failures in its result
+            throw new IllegalStateException("Unexpected job failure", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running jobs", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    LookupTableCache getLookupTableCache() {
+        return lookupTableCache;
+    }
+
+    private JobResult runJob(BatchJob job) {
+        long start = System.nanoTime();
+        AnalyzerMetrics metrics = null;
+        try (FlowLogAnalyzer analyzer = new FlowLogAnalyzer(job.getLogFormat(), new TagMapper(lookupTableCache),
+                outputGenerator, config)) {
+            metrics = analyzer.getMetrics();
+            analyzer.analyze(job.getFlowLogPaths(), job.getLookupPath(), job.getOutputPath());
+            return new JobResult(job, JobResult.SUCCESS, null, metrics, System.nanoTime() - start);
+        } catch (Throwable e) {
+            // Also errors such as OutOfMemoryError, so the other jobs still run and report their results
+            String error = e.getCause() != null ? e.getMessage() + ": " + e.getCause().getMessage()
+                    : e instanceof RuntimeException ? e.getMessage() : e.toString();
+            return new JobResult(job, JobResult.FAILURE, error, metrics, System.nanoTime() - start);
+        }
+    }
+}
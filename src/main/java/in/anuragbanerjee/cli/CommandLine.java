@@ -0,0 +1,326 @@
+package in.anuragbanerjee.cli;
+
+import in.anuragbanerjee.analyzer.AnalyzerConfig;
+import in.anuragbanerjee.analyzer.FlowLogAnalyzer;
+import in.anuragbanerjee.mapper.TagMapper;
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.output.OutputFormat;
+import in.anuragbanerjee.output.OutputGenerator;
+import in.anuragbanerjee.output.OutputOrder;
+import in.anuragbanerjee.sketch.HeavyHitters;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+// Headless entry point for scripts and cron jobs: one job from flags, or every job of a manifest in one
+// process. The exit status is 0 when every job succeeded, 1 when any job failed and 2 for bad usage.
+public final class CommandLine {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_JOB_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final Set<String> OPTIONS = Set.of("--flow-logs", "--lookup", "--output", "--manifest",
+            "--jobs", "--status-file", "--format", "--threads", "--volumes", "--heavy-hitters",
+            "--heavy-hitter-metric", "--distinct-sources", "--snapshot", "--quarantine", "--error-log-rate",
+            "--group-by", "--group-by-memory-mb", "--spill-dir", "--filter", "--listen", "--query", "--report-interval",
+            "--output-format", "--sort", "--top", "--metrics", "--follow", "--merge-snapshots", "--window",
+            "--allowed-lateness", "--jmx", "--reload-interval", "--help");
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage:",
+            "  --flow-logs <path> [--flow-logs <path> ...] --lookup <file> --output <file> [options]",
+            "  --manifest <file> [--jobs <n>] [--status-file <file>] [options]",
+            "  --listen <address> --lookup <file> --output <file> [--query <address>] [options]",
+            "  --follow <file> --lookup <file> --output <file> [options]",
+            "  --merge-snapshots <path> [--merge-snapshots <path> ...] --output <file> [options]",
+            "",
+            "A flow log path is a file, a directory, a glob or - for stdin. Manifest rows are",
+            "flowlogs,lookup,output[,format]; blank lines and lines starting with # are skipped.",
+            "With --listen the process aggregates lines pushed to [host:]port or unix:<path> until",
+            "it is stopped, rewriting the output on the report interval. --follow tails a growing",
+            "file the same way, resuming from <output>.checkpoint after a restart. --merge-snapshots",
+            "sums snapshot files, directories or globs into one report.",
+            "",
+            "Options:",
+            "  --format <format>             default, fast-v2, custom or custom:<fields> (default: default)",
+            "  --threads <n>                 parser threads per job (default: 1)",
+            "  --jobs <n>                    manifest jobs run at once (default: available processors)",
+            "  --status-file <file>          CSV with the exit status of every job",
+            "  --volumes                     add byte and packet totals",
+            "  --heavy-hitters <n>           add the top n source IPs, destination IPs and conversations",
+            "  --heavy-hitter-metric <m>     rank heavy hitters by flows or bytes (default: flows)",
+            "  --distinct-sources            add distinct source IP estimates",
+            "  --snapshot <file>             also write a binary snapshot (single job or merge only)",
+            "  --quarantine <file>           write lines that fail to parse to this file (single job only)",
+            "  --error-log-rate <n>          parse errors printed per second, 0 for none (default: 100)",
+            "  --group-by <fields>           also write exact counts per combination of these comma-separated",
+            "                                fields to <output>.groupby, e.g. account-id,interface-id,action",
+            "  --group-by-memory-mb <n>      group-by memory per job before it spills to disk (default: 64)",
+            "  --spill-dir <dir>             directory for group-by spill files (default: the temp directory)",
+            "  --filter <expression>         only analyze lines that match, e.g. \"action=REJECT and dstport=22|3389\"",
+            "  --query <address>             with --listen, serve GET /counts and /metrics on [host:]port",
+            "  --report-interval <seconds>   with --listen or --follow, seconds between output rewrites (default: 60)",
+            "  --reload-interval <seconds>   with --listen or --follow, check the lookup file for changes this",
+            "                                often and reload it (default: never)",
+            "  --window <seconds>            also write counts per tumbling window of these comma-separated",
+            "                                sizes to <output>.windows, e.g. 60,3600",
+            "  --allowed-lateness <seconds>  how late a flow may arrive and still count in its window (default: 0)",
+            "  --output-format <format>      csv, json (one object per row) or binary (default: csv)",
+            "  --sort <order>                sort count rows by count (highest first) or key (default: unsorted)",
+            "  --top <n>                     keep only the n highest counts per count section and group-by",
+            "  --metrics                     print run metrics after each job",
+            "  --jmx                         expose run metrics as MBeans while jobs run");
+
+    private CommandLine() {}
+
+    public static int run(String[] args) {
+        List<BatchJob> jobs;
+        AnalyzerConfig config;
+        OutputGenerator outputGenerator;
+        int concurrency;
+        String statusFile;
+        try {
+            Arguments arguments = new Arguments(args);
+            if (arguments.has("--help")) {
+                System.out.println(USAGE);
+                return EXIT_OK;
+            }
+            arguments.checkKnown(OPTIONS);
+            config = config(arguments);
+            outputGenerator = outputGenerator(arguments);
+            if (arguments.has("--listen")) {
+                return serve(arguments, config, outputGenerator);
+            }
+            if (arguments.has("--follow")) {
+                return follow(arguments, config, outputGenerator);
+            }
+            if (arguments.has("--merge-snapshots")) {
+                return mergeSnapshots(arguments, config, outputGenerator);
+            }
+            jobs = jobs(arguments);
+            concurrency = arguments.getInt("--jobs", Runtime.getRuntime().availableProcessors());
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("--jobs must be at least 1 but got " + concurrency);
+            }
+            statusFile = arguments.get("--status-file", null);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        BatchRunner runner = new BatchRunner(config, outputGenerator, concurrency);
+        List<JobResult> results = runner.run(jobs);
+        int failed = 0;
+        for (JobResult result : results) {
+            BatchJob job = result.getJob();
+            if (result.getExitStatus() == JobResult.SUCCESS) {
+                System.out.println("OK " + job.getOutputPath() + " (" + result.getElapsedMillis() + " ms)");
+            } else {
+                failed++;
+                System.err.println("FAILED " + job.getOutputPath() + ": " + result.getError());
+            }
+        }
+        if (jobs.size() > 1) {
+            System.out.println(jobs.size() - failed + " of " + jobs.size() + " jobs succeeded, "
+                    + runner.getLookupTableCache().getLoads() + " lookup tables loaded");
+        }
+        if (statusFile != null && !writeStatusFile(statusFile, results)) {
+            return EXIT_JOB_FAILED;
+        }
+        return failed == 0 ? EXIT_OK : EXIT_JOB_FAILED;
+    }
+
+    private static AnalyzerConfig config(Arguments arguments) {
+        AnalyzerConfig.Builder builder = new AnalyzerConfig.Builder()
+                .parallelism(arguments.getInt("--threads", 1))
+                .volumes(arguments.has("--volumes"))
+                .heavyHitters(arguments.getInt("--heavy-hitters", 0))
+                .distinctSources(arguments.has("--distinct-sources"))
+                .snapshotPath(arguments.get("--snapshot", null))
+                .quarantinePath(arguments.get("--quarantine", null))
+                .errorLogRatePerSecond(arguments.getInt("--error-log-rate", 100))
+                .filter(arguments.get("--filter", null))
+                .queryAddress(arguments.get("--query", null))
+                .reportIntervalMillis(arguments.getInt("--report-interval", 60) * 1000L)
+                .lookupReloadIntervalMillis(arguments.getInt("--reload-interval", 0) * 1000L)
+                .windowAllowedLatenessSeconds(arguments.getInt("--allowed-lateness", 0))
+                .groupByMemoryBytes(arguments.getInt("--group-by-memory-mb", 64) * 1024L * 1024L)
+                .jmxEnabled(arguments.has("--jmx"))
+                .metricsSummary(arguments.has("--metrics"));
+        String windows = arguments.get("--window", null);
+        if (windows != null) {
+            builder.windowSeconds(windowSeconds(windows));
+        }
+        String groupBy = arguments.get("--group-by", null);
+        if (groupBy != null) {
+            builder.groupBy(groupByFields(groupBy));
+        }
+        String spillDirectory = arguments.get("--spill-dir", null);
+        if (spillDirectory != null) {
+            builder.spillDirectory(spillDirectory);
+        }
+        String metric = arguments.get("--heavy-hitter-metric", null);
+        if (metric != null) {
+            try {
+                builder.heavyHitterMetric(HeavyHitters.Metric.valueOf(metric.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid heavy hitter metric: " + metric);
+            }
+        }
+        return builder.build();
+    }
+
+    private static int serve(Arguments arguments, AnalyzerConfig config, OutputGenerator outputGenerator) {
+        if (arguments.has("--flow-logs") || arguments.has("--manifest") || arguments.has("--follow")
+                || arguments.has("--merge-snapshots")) {
+            throw new IllegalArgumentException("--listen cannot be combined with --flow-logs, --manifest, --follow or --merge-snapshots");
+        }
+        if (!arguments.has("--lookup") || !arguments.has("--output")) {
+            throw new IllegalArgumentException("Missing --lookup or --output");
+        }
+        FlowLogAnalyzer analyzer = new FlowLogAnalyzer(arguments.get("--format", "default"), new TagMapper(),
+                outputGenerator, config);
+        String output = arguments.get("--output", null);
+        return runUntilStopped(analyzer, output,
+                () -> analyzer.serve(arguments.get("--listen", null), arguments.get("--lookup", null), output));
+    }
+
+    private static int follow(Arguments arguments, AnalyzerConfig config, OutputGenerator outputGenerator) {
+        if (arguments.has("--flow-logs") || arguments.has("--manifest") || arguments.has("--merge-snapshots")) {
+            throw new IllegalArgumentException("--follow cannot be combined with --flow-logs, --manifest or --merge-snapshots");
+        }
+        if (!arguments.has("--lookup") || !arguments.has("--output")) {
+            throw new IllegalArgumentException("Missing --lookup or --output");
+        }
+        FlowLogAnalyzer analyzer = new FlowLogAnalyzer(arguments.get("--format", "default"), new TagMapper(),
+                outputGenerator, config);
+        String output = arguments.get("--output", null);
+        return runUntilStopped(analyzer, output,
+                () -> analyzer.follow(arguments.get("--follow", null), arguments.get("--lookup", null), output));
+    }
+
+    // Snapshots carry their own tag names, so no lookup table is needed
+    private static int mergeSnapshots(Arguments arguments, AnalyzerConfig config, OutputGenerator outputGenerator) {
+        if (arguments.has("--flow-logs") || arguments.has("--manifest") || arguments.has("--lookup")) {
+            throw new IllegalArgumentException("--merge-snapshots cannot be combined with --flow-logs, --manifest or --lookup");
+        }
+        if (!arguments.has("--output")) {
+            throw new IllegalArgumentException("Missing --output");
+        }
+        String output = arguments.get("--output", null);
+        long start = System.nanoTime();
+        try (FlowLogAnalyzer analyzer = new FlowLogAnalyzer("default", new TagMapper(), outputGenerator, config)) {
+            analyzer.mergeSnapshots(arguments.getAll("--merge-snapshots"), output);
+        } catch (RuntimeException e) {
+            System.err.println("FAILED " + output + ": " + describe(e));
+            return EXIT_JOB_FAILED;
+        }
+        System.out.println("OK " + output + " (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        return EXIT_OK;
+    }
+
+    // Runs until the process is stopped, e.g. by Ctrl-C or SIGTERM, which interrupts the running thread
+    // and waits for the final report
+    private static int runUntilStopped(FlowLogAnalyzer analyzer, String output, Runnable run) {
+        Thread running = Thread.currentThread();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread shutdownHook = new Thread(() -> {
+            running.interrupt();
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        try (analyzer) {
+            run.run();
+            return EXIT_OK;
+        } catch (RuntimeException e) {
+            System.err.println("FAILED " + output + ": " + describe(e));
+            return EXIT_JOB_FAILED;
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private static String describe(RuntimeException e) {
+        return e.getCause() != null ? e.getMessage() + ": " + e.getCause().getMessage() : e.getMessage();
+    }
+
+    private static OutputGenerator outputGenerator(Arguments arguments) {
+        return new OutputGenerator(OutputFormat.fromName(arguments.get("--output-format", "csv")),
+                OutputOrder.fromName(arguments.get("--sort", "unsorted")), arguments.getInt("--top", 0));
+    }
+
+    private static long[] windowSeconds(String sizes) {
+        String[] parts = sizes.split(",");
+        long[] seconds = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                seconds[i] = Long.parseLong(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid window size: " + parts[i].trim());
+            }
+        }
+        return seconds;
+    }
+
+    private static List<FlowField> groupByFields(String names) {
+        List<FlowField> fields = new ArrayList<>();
+        for (String name : names.split(",")) {
+            FlowField field = FlowField.fromName(name.trim());
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown group-by field: " + name.trim());
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private static List<BatchJob> jobs(Arguments arguments) {
+        String logFormat = arguments.get("--format", "default");
+        if (arguments.has("--manifest")) {
+            if (arguments.has("--flow-logs") || arguments.has("--lookup") || arguments.has("--output")) {
+                throw new IllegalArgumentException("--manifest cannot be combined with --flow-logs, --lookup or --output");
+            }
+            if (arguments.has("--snapshot") || arguments.has("--quarantine")) {
+                throw new IllegalArgumentException("--snapshot and --quarantine are only supported for a single job");
+            }
+            return BatchJob.readManifest(arguments.get("--manifest", null), logFormat);
+        }
+        if (!arguments.has("--flow-logs") || !arguments.has("--lookup") || !arguments.has("--output")) {
+            throw new IllegalArgumentException("Missing --flow-logs, --lookup or --output");
+        }
+        return List.of(new BatchJob(arguments.getAll("--flow-logs"), arguments.get("--lookup", null),
+                arguments.get("--output", null), logFormat));
+    }
+
+    // The error is the last column and may itself contain commas
+    private static boolean writeStatusFile(String statusFile, List<JobResult> results) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(statusFile))) {
+            writer.write("Flow Logs,Lookup,Output,Exit Status,Lines Read,Parse Failures,Millis,Error");
+            writer.newLine();
+            for (JobResult result : results) {
+                BatchJob job = result.getJob();
+                boolean measured = result.getMetrics() != null;
+                writer.write(String.join(";", job.getFlowLogPaths()) + "," + job.getLookupPath() + ","
+                        + job.getOutputPath() + "," + result.getExitStatus() + ","
+                        + (measured ? result.getMetrics().getLinesRead() : 0) + ","
+                        + (measured ? result.getMetrics().getParseFailures() : 0) + ","
+                        + result.getElapsedMillis() + "," + (result.getError() != null ? result.getError() : ""));
+                writer.newLine();
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing status file " + statusFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
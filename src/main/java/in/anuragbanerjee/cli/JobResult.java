@@ -0,0 +1,44 @@
+package in.anuragbanerjee.cli;
+
+import in.anuragbanerjee.metrics.AnalyzerMetrics;
+
+final class JobResult {
+    static final int SUCCESS = 0;
+    static final int FAILURE = 1;
+
+    private final BatchJob job;
+    private final int exitStatus;
+    private final String error;
+    private final AnalyzerMetrics metrics;
+    private final long elapsedNanos;
+
+    JobResult(BatchJob job, int exitStatus, String error, AnalyzerMetrics metrics, long elapsedNanos) {
+        this.job = job;
+        this.exitStatus = exitStatus;
+        this.error = error;
+        this.metrics = metrics;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    BatchJob getJob() {
+        return job;
+    }
+
+    int getExitStatus() {
+        return exitStatus;
+    }
+
+    // null for a successful job
+    String getError() {
+        return error;
+    }
+
+    // null when the job failed before its analyzer was created, e.g. for an unsupported log format
+    AnalyzerMetrics getMetrics() {
+        return metrics;
+    }
+
+    long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+}
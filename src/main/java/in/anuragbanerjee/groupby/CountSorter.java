@@ -0,0 +1,208 @@
+package in.anuragbanerjee.groupby;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+// Orders rows by count, highest first, rows of equal count in the order they were added. Added rows are
+// serialized into a buffer of at most the memory budget; a full buffer is sorted and written to a run
+// file, and the runs are merged at the end, so any number of rows is ordered within a fixed heap. Rows of
+// equal count go to the earlier run first, which keeps the merge stable. Not thread-safe.
+final class CountSorter {
+    // Runs merged at once; more are first merged into longer runs, a batch at a time
+    private static final int MERGE_WIDTH = 64;
+    private static final int INITIAL_ROWS = 1024;
+    // Keeps row offsets within an int whatever the budget
+    private static final int MAX_BUFFER_SIZE = 1 << 30;
+
+    private final KeyLayout layout;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+
+    private final Buffer buffer = new Buffer();
+    private final DataOutputStream bufferOutput = new DataOutputStream(buffer);
+    // Row i: count in counts[i], serialized at buffer[offsets[i], offsets[i + 1])
+    private long[] counts = new long[INITIAL_ROWS];
+    private int[] offsets = new int[INITIAL_ROWS + 1];
+    private int size;
+    private final List<Path> runs = new ArrayList<>();
+
+    CountSorter(KeyLayout layout, long memoryBudget, Path spillDirectory) {
+        this.layout = layout;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    void add(Row row) {
+        try {
+            if (size == counts.length) {
+                grow();
+            }
+            row.write(bufferOutput);
+            counts[size] = row.count;
+            offsets[++size] = buffer.size();
+            if (footprint() >= memoryBudget || buffer.size() >= MAX_BUFFER_SIZE) {
+                writeRun();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing group-by spill file", e);
+        }
+    }
+
+    // Visits every added row in order, then deletes the runs. The row is reused from call to call.
+    void forEach(Consumer<Row> consumer) {
+        try {
+            if (runs.isEmpty()) {
+                forEachInMemory(consumer);
+                return;
+            }
+            writeRun();
+            while (runs.size() > MERGE_WIDTH) {
+                List<Path> batch = new ArrayList<>(runs.subList(0, MERGE_WIDTH));
+                Path merged = GroupByTable.createSpillFile(spillDirectory);
+                runs.set(0, merged);
+                runs.subList(1, MERGE_WIDTH).clear();
+                try (DataOutputStream output = GroupByTable.openOutput(merged)) {
+                    mergeRuns(batch, row -> {
+                        try {
+                            row.write(output);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Error writing group-by spill file", e);
+                        }
+                    });
+                } finally {
+                    batch.forEach(GroupByTable::deleteQuietly);
+                }
+            }
+            mergeRuns(runs, consumer);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading group-by spill file", e);
+        } finally {
+            clear();
+        }
+    }
+
+    // Deletes the runs, e.g. when a row could not be added
+    void clear() {
+        runs.forEach(GroupByTable::deleteQuietly);
+        runs.clear();
+        size = 0;
+        buffer.reset();
+    }
+
+    private void forEachInMemory(Consumer<Row> consumer) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(buffer.array(), 0, buffer.size());
+        DataInputStream input = new DataInputStream(bytes);
+        Row row = new Row(layout);
+        for (int i : sortedOrder()) {
+            bytes.reset();
+            bytes.skip(offsets[i]);
+            row.read(input);
+            consumer.accept(row);
+        }
+    }
+
+    private void writeRun() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        Path run = GroupByTable.createSpillFile(spillDirectory);
+        runs.add(run);
+        try (DataOutputStream output = GroupByTable.openOutput(run)) {
+            for (int i : sortedOrder()) {
+                output.write(buffer.array(), offsets[i], offsets[i + 1] - offsets[i]);
+            }
+        }
+        size = 0;
+        buffer.reset();
+    }
+
+    private void mergeRuns(List<Path> runs, Consumer<Row> consumer) throws IOException {
+        DataInputStream[] inputs = new DataInputStream[runs.size()];
+        Row[] heads = new Row[runs.size()];
+        // Run numbers by their head row: highest count first, then the earlier run
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+            int result = Long.compare(heads[b].count, heads[a].count);
+            return result != 0 ? result : Integer.compare(a, b);
+        });
+        try {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = GroupByTable.openInput(runs.get(i));
+                heads[i] = new Row(layout);
+                if (heads[i].read(inputs[i])) {
+                    queue.add(i);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int next = queue.poll();
+                consumer.accept(heads[next]);
+                if (heads[next].read(inputs[next])) {
+                    queue.add(next);
+                }
+            }
+        } finally {
+            for (DataInputStream input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+    }
+
+    private int[] sortedOrder() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return sortByCount(order, counts);
+    }
+
+    // Orders the numbers by their counts[number], highest first. A merge sort, so numbers of equal count
+    // keep their order; returns the sorted array, which may be the one passed in.
+    static int[] sortByCount(int[] order, long[] counts) {
+        int size = order.length;
+        int[] merged = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int from = 0; from < size; from += 2 * width) {
+                int middle = Math.min(from + width, size);
+                int to = Math.min(from + 2 * width, size);
+                int i = from;
+                int j = middle;
+                for (int k = from; k < to; k++) {
+                    merged[k] = j == to || i < middle && counts[order[i]] >= counts[order[j]] ? order[i++] : order[j++];
+                }
+            }
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    // The buffer, which may have grown to twice what it holds, and per row its count, offset and the two
+    // arrays of a sort
+    private long footprint() {
+        return 2L * buffer.size() + (long) size * (Long.BYTES + 3 * Integer.BYTES);
+    }
+
+    private void grow() {
+        int capacity = counts.length * 2;
+        counts = Arrays.copyOf(counts, capacity);
+        offsets = Arrays.copyOf(offsets, capacity + 1);
+    }
+
+    // Exposes its array, so that rows can be read and copied out of it in place
+    private static final class Buffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
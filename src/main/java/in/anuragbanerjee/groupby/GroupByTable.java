@@ -0,0 +1,561 @@
+package in.anuragbanerjee.groupby;
+
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.model.FlowRecord;
+import in.anuragbanerjee.model.Ipv4Addresses;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Exact flow counts, byte and packet sums per distinct combination of some record fields, e.g.
+// (account-id, interface-id, action) or (srcaddr, dstaddr, dstport). Keys are packed into a few longs
+// (see KeyLayout) and kept with their sums in flat arrays behind an open-addressing index, so an entry
+// takes tens of bytes rather than the hundreds of a HashMap of key objects. When the arrays would have
+// to grow past the memory budget, every entry is written to one of PARTITIONS spill files by a hash of
+// its key and the table starts over. Reading the rows merges each partition's files on its own, one
+// level down and spilling again if a partition still does not fit, so the result stays exact within a
+// fixed heap. Rows come out sorted by key whether or not anything was spilled, which makes the result
+// independent of how the input was split between tables. Not thread-safe.
+public final class GroupByTable {
+    private static final int PARTITION_BITS = 4;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    // A partition that is still too big at this level is kept in memory rather than split again
+    private static final int MAX_LEVEL = 6;
+    private static final int INITIAL_ENTRIES = 1024;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final KeyLayout layout;
+    private final int words;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final int level;
+
+    // Entry i: key in keys[i * words, (i + 1) * words), sums in counts[i], bytes[i] and packets[i]
+    private long[] keys;
+    private long[] counts;
+    private long[] bytes;
+    private long[] packets;
+    private int size;
+    // Open addressing with linear probing from key to entry + 1; 0 marks an empty bucket
+    private int[] index;
+    private final TextDictionary dictionary = new TextDictionary();
+    private final long[] scratch;
+
+    // Spill files of each partition, holding every entry spilled so far
+    private final List<List<Path>> spillFiles = new ArrayList<>();
+
+    public GroupByTable(List<FlowField> fields, long memoryBudgetBytes, Path spillDirectory) {
+        this(new KeyLayout(fields), memoryBudgetBytes, spillDirectory, 0);
+    }
+
+    private GroupByTable(KeyLayout layout, long memoryBudget, Path spillDirectory, int level) {
+        this.layout = layout;
+        this.words = layout.wordCount();
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.level = level;
+        this.scratch = new long[words];
+        for (int i = 0; i < PARTITIONS; i++) {
+            spillFiles.add(new ArrayList<>());
+        }
+        allocate(INITIAL_ENTRIES);
+    }
+
+    // Throws IllegalArgumentException unless a table can be keyed on these fields: at least one field,
+    // all of them part of the version 2 record
+    public static void checkFields(List<FlowField> fields) {
+        new KeyLayout(fields);
+    }
+
+    public List<FlowField> getFields() {
+        List<FlowField> fields = new ArrayList<>();
+        for (int i = 0; i < layout.fieldCount(); i++) {
+            fields.add(layout.field(i));
+        }
+        return fields;
+    }
+
+    public void add(FlowRecord record) {
+        reserve();
+        Arrays.fill(scratch, 0);
+        for (int i = 0; i < layout.fieldCount(); i++) {
+            layout.set(scratch, 0, i, encode(record, layout.field(i)));
+        }
+        int entry = findOrInsert(scratch);
+        counts[entry]++;
+        // "-" is parsed as -1
+        bytes[entry] += Math.max(record.getBytes(), 0);
+        packets[entry] += Math.max(record.getPackets(), 0);
+    }
+
+    // Adds the other table's rows and takes over its spill files, leaving it empty
+    public void merge(GroupByTable other) {
+        if (!layout.sameFields(other.layout)) {
+            throw new IllegalArgumentException("Cannot merge group-bys of different fields: "
+                    + getFields() + " and " + other.getFields());
+        }
+        for (int i = 0; i < PARTITIONS; i++) {
+            spillFiles.get(i).addAll(other.spillFiles.get(i));
+            other.spillFiles.get(i).clear();
+        }
+        Row row = new Row(layout);
+        for (int entry = 0; entry < other.size; entry++) {
+            other.decode(entry, row);
+            add(row);
+        }
+        other.clearEntries();
+    }
+
+    // Visits every row in key order, spilled or not. The values array is reused from row to row.
+    public void forEachRow(RowConsumer consumer) {
+        String[] values = new String[layout.fieldCount()];
+        forEachSorted(row -> {
+            row.format(values);
+            consumer.accept(values, row.count, row.bytes, row.packets);
+        });
+    }
+
+    // Visits every row highest count first, rows of equal count in key order. A table that never spilled
+    // only sorts its entry numbers; otherwise the rows stream in key order through a CountSorter of the
+    // same memory budget. The values array is reused from row to row.
+    public void forEachRowByCount(RowConsumer consumer) {
+        String[] values = new String[layout.fieldCount()];
+        Consumer<Row> format = row -> {
+            row.format(values);
+            consumer.accept(values, row.count, row.bytes, row.packets);
+        };
+        if (!hasSpilled()) {
+            int[] order = CountSorter.sortByCount(sortedEntries(), counts);
+            Row row = new Row(layout);
+            for (int entry : order) {
+                decode(entry, row);
+                format.accept(row);
+            }
+            return;
+        }
+        CountSorter sorter = new CountSorter(layout, memoryBudget, spillDirectory);
+        try {
+            forEachSorted(sorter::add);
+            sorter.forEach(format);
+        } finally {
+            sorter.clear();
+        }
+    }
+
+    // Writes every entry to the spill files and empties the table, e.g. for a finished chunk that waits
+    // to be merged
+    public void spill() {
+        if (size == 0) {
+            return;
+        }
+        DataOutputStream[] outputs = new DataOutputStream[PARTITIONS];
+        Row row = new Row(layout);
+        try {
+            for (int entry = 0; entry < size; entry++) {
+                decode(entry, row);
+                int partition = row.partition(level, PARTITION_BITS);
+                if (outputs[partition] == null) {
+                    Path file = createSpillFile(spillDirectory);
+                    spillFiles.get(partition).add(file);
+                    outputs[partition] = openOutput(file);
+                }
+                row.write(outputs[partition]);
+            }
+            for (DataOutputStream output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing group-by spill file", e);
+        }
+        clearEntries();
+    }
+
+    // Empties the table and deletes its spill files
+    public void clear() {
+        clearEntries();
+        for (List<Path> files : spillFiles) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+            files.clear();
+        }
+    }
+
+    private void add(Row row) {
+        reserve();
+        Arrays.fill(scratch, 0);
+        for (int i = 0; i < layout.fieldCount(); i++) {
+            long bits = switch (layout.kind(i)) {
+                case INT -> row.numbers[i] & 0xFFFFFFFFL;
+                case PORT -> row.numbers[i] + 1;
+                case LONG -> row.numbers[i];
+                case ADDRESS -> row.texts[i] == null ? row.numbers[i] : KeyLayout.TEXT_ADDRESS | dictionary.encode(row.texts[i]);
+                case TEXT -> dictionary.encode(row.texts[i]);
+            };
+            layout.set(scratch, 0, i, bits);
+        }
+        int entry = findOrInsert(scratch);
+        counts[entry] += row.count;
+        bytes[entry] += row.bytes;
+        packets[entry] += row.packets;
+    }
+
+    private long encode(FlowRecord record, FlowField field) {
+        return switch (field) {
+            case VERSION -> record.getVersion() & 0xFFFFFFFFL;
+            case PROTOCOL -> record.getProtocol() & 0xFFFFFFFFL;
+            case PACKETS -> record.getPackets() & 0xFFFFFFFFL;
+            case SOURCE_PORT -> record.getSourcePort() + 1;
+            case DESTINATION_PORT -> record.getDestinationPort() + 1;
+            case ACCOUNT_ID -> record.getAccountId();
+            case BYTES -> record.getBytes();
+            case START -> record.getStartTime();
+            case END -> record.getEndTime();
+            case SOURCE_ADDRESS -> record.getSourceAddress() != Ipv4Addresses.NONE ? record.getSourceAddress()
+                    : KeyLayout.TEXT_ADDRESS | dictionary.encode(text(record.getSourceIp()));
+            case DESTINATION_ADDRESS -> record.getDestinationAddress() != Ipv4Addresses.NONE ? record.getDestinationAddress()
+                    : KeyLayout.TEXT_ADDRESS | dictionary.encode(text(record.getDestinationIp()));
+            case INTERFACE_ID -> dictionary.encode(text(record.getInterfaceId()));
+            case ACTION -> dictionary.encode(text(record.getAction()));
+            case LOG_STATUS -> dictionary.encode(text(record.getLogStatus()));
+            default -> throw new IllegalStateException("Cannot group by " + field.getFieldName());
+        };
+    }
+
+    private static String text(String value) {
+        return value != null ? value : "-";
+    }
+
+    private void decode(int entry, Row row) {
+        int offset = entry * words;
+        for (int i = 0; i < layout.fieldCount(); i++) {
+            long bits = layout.get(keys, offset, i);
+            row.texts[i] = null;
+            switch (layout.kind(i)) {
+                case INT -> row.numbers[i] = (int) bits;
+                case PORT -> row.numbers[i] = bits - 1;
+                case LONG -> row.numbers[i] = bits;
+                case ADDRESS -> {
+                    if (bits < KeyLayout.TEXT_ADDRESS) {
+                        row.numbers[i] = bits;
+                    } else {
+                        row.numbers[i] = Ipv4Addresses.NONE;
+                        row.texts[i] = dictionary.decode((int) (bits - KeyLayout.TEXT_ADDRESS));
+                    }
+                }
+                case TEXT -> row.texts[i] = dictionary.decode((int) bits);
+            }
+        }
+        row.count = counts[entry];
+        row.bytes = bytes[entry];
+        row.packets = packets[entry];
+    }
+
+    // Makes room for one more entry: the arrays grow while they fit in the budget together with the
+    // dictionary, otherwise the table is spilled. A table always holds INITIAL_ENTRIES keys before it
+    // spills, however small the budget, so that a spill file is never just a handful of rows.
+    private void reserve() {
+        int capacity = counts.length;
+        long dictionaryBytes = dictionary.getMemoryBytes();
+        if (size < capacity && (size < INITIAL_ENTRIES || footprint(capacity) + dictionaryBytes <= memoryBudget)) {
+            return;
+        }
+        boolean canGrow = (long) capacity * 2 * words <= MAX_ARRAY_LENGTH;
+        if (size == capacity && canGrow && footprint(capacity * 2L) + dictionaryBytes <= memoryBudget) {
+            grow();
+        } else if (level <= MAX_LEVEL && size >= INITIAL_ENTRIES) {
+            spill();
+        } else if (size == capacity) {
+            if (!canGrow) {
+                throw new IllegalStateException("Group-by partition has too many keys to hold in memory: " + size);
+            }
+            grow();
+        }
+    }
+
+    // Heap of the arrays for this many entries
+    private long footprint(long entries) {
+        return entries * (words * 8L + 3 * 8L + 2 * 4L);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * words];
+        counts = new long[capacity];
+        bytes = new long[capacity];
+        packets = new long[capacity];
+        index = new int[capacity * 2];
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldBytes = bytes;
+        long[] oldPackets = packets;
+        allocate(counts.length * 2);
+        System.arraycopy(oldKeys, 0, keys, 0, size * words);
+        System.arraycopy(oldCounts, 0, counts, 0, size);
+        System.arraycopy(oldBytes, 0, bytes, 0, size);
+        System.arraycopy(oldPackets, 0, packets, 0, size);
+        int mask = index.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int bucket = hash(keys, entry * words) & mask;
+            while (index[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            index[bucket] = entry + 1;
+        }
+    }
+
+    private int findOrInsert(long[] key) {
+        int mask = index.length - 1;
+        int bucket = hash(key, 0) & mask;
+        while (true) {
+            int entry = index[bucket] - 1;
+            if (entry < 0) {
+                entry = size++;
+                System.arraycopy(key, 0, keys, entry * words, words);
+                counts[entry] = 0;
+                bytes[entry] = 0;
+                packets[entry] = 0;
+                index[bucket] = entry + 1;
+                return entry;
+            }
+            if (Arrays.equals(keys, entry * words, entry * words + words, key, 0, words)) {
+                return entry;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    private int hash(long[] key, int offset) {
+        long hash = 0;
+        for (int i = 0; i < words; i++) {
+            hash = (hash ^ key[offset + i]) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private void clearEntries() {
+        size = 0;
+        Arrays.fill(index, 0);
+        dictionary.clear();
+    }
+
+    private boolean hasSpilled() {
+        for (List<Path> files : spillFiles) {
+            if (!files.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void forEachSorted(Consumer<Row> consumer) {
+        if (!hasSpilled()) {
+            forEachSortedInMemory(consumer);
+            return;
+        }
+        // Everything goes to the partitions, and the arrays shrink to make room for merging them
+        spill();
+        allocate(INITIAL_ENTRIES);
+        List<Path> runs = new ArrayList<>();
+        try {
+            for (List<Path> files : spillFiles) {
+                if (!files.isEmpty()) {
+                    runs.add(sortPartition(files));
+                }
+            }
+            mergeRuns(runs, consumer);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading group-by spill file", e);
+        } finally {
+            for (Path run : runs) {
+                deleteQuietly(run);
+            }
+        }
+    }
+
+    // Merges the files of one partition and writes its rows in key order to a new file
+    private Path sortPartition(List<Path> files) throws IOException {
+        GroupByTable partition = new GroupByTable(layout, level < MAX_LEVEL ? memoryBudget : Long.MAX_VALUE,
+                spillDirectory, level + 1);
+        try {
+            Row row = new Row(layout);
+            for (Path file : files) {
+                try (DataInputStream input = openInput(file)) {
+                    while (row.read(input)) {
+                        partition.add(row);
+                    }
+                }
+            }
+            Path run = createSpillFile(spillDirectory);
+            try (DataOutputStream output = openOutput(run)) {
+                partition.forEachSorted(sorted -> {
+                    try {
+                        sorted.write(output);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error writing group-by spill file", e);
+                    }
+                });
+            }
+            return run;
+        } finally {
+            partition.clear();
+        }
+    }
+
+    // Partitions hold disjoint keys, so merging their sorted runs only interleaves them
+    private void mergeRuns(List<Path> runs, Consumer<Row> consumer) throws IOException {
+        DataInputStream[] inputs = new DataInputStream[runs.size()];
+        Row[] heads = new Row[runs.size()];
+        try {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = openInput(runs.get(i));
+                heads[i] = new Row(layout);
+                if (!heads[i].read(inputs[i])) {
+                    heads[i] = null;
+                }
+            }
+            while (true) {
+                int smallest = -1;
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] != null && (smallest < 0 || heads[i].compareTo(heads[smallest]) < 0)) {
+                        smallest = i;
+                    }
+                }
+                if (smallest < 0) {
+                    break;
+                }
+                consumer.accept(heads[smallest]);
+                if (!heads[smallest].read(inputs[smallest])) {
+                    heads[smallest] = null;
+                }
+            }
+        } finally {
+            for (DataInputStream input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+    }
+
+    private void forEachSortedInMemory(Consumer<Row> consumer) {
+        int[] order = sortedEntries();
+        Row row = new Row(layout);
+        for (int entry : order) {
+            decode(entry, row);
+            consumer.accept(row);
+        }
+    }
+
+    private int[] sortedEntries() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(order, 0, size, dictionary.ranks());
+        return order;
+    }
+
+    // Quicksort of entry numbers by key, recursing into the smaller part. Keys are distinct.
+    private void sort(int[] order, int from, int to, int[] ranks) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int pivot = medianOfThree(order[from], order[(from + to) >>> 1], order[to - 1], ranks);
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compare(order[i], pivot, ranks) < 0) i++;
+                while (compare(order[j], pivot, ranks) > 0) j--;
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (j + 1 - from < to - i) {
+                sort(order, from, j + 1, ranks);
+                from = i;
+            } else {
+                sort(order, i, to, ranks);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int entry = order[i];
+            int j = i - 1;
+            while (j >= from && compare(order[j], entry, ranks) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = entry;
+        }
+    }
+
+    private int medianOfThree(int a, int b, int c, int[] ranks) {
+        if (compare(a, b, ranks) < 0) {
+            return compare(b, c, ranks) < 0 ? b : compare(a, c, ranks) < 0 ? c : a;
+        }
+        return compare(a, c, ranks) < 0 ? a : compare(b, c, ranks) < 0 ? c : b;
+    }
+
+    // Same order as Row.compareTo, with text compared by the rank of its dictionary code
+    private int compare(int a, int b, int[] ranks) {
+        int offsetA = a * words;
+        int offsetB = b * words;
+        for (int i = 0; i < layout.fieldCount(); i++) {
+            long x = layout.get(keys, offsetA, i);
+            long y = layout.get(keys, offsetB, i);
+            int result = switch (layout.kind(i)) {
+                case INT -> Integer.compare((int) x, (int) y);
+                case PORT, LONG -> Long.compare(x, y);
+                case ADDRESS -> x < KeyLayout.TEXT_ADDRESS || y < KeyLayout.TEXT_ADDRESS ? Long.compare(x, y)
+                        : Integer.compare(ranks[(int) (x - KeyLayout.TEXT_ADDRESS)], ranks[(int) (y - KeyLayout.TEXT_ADDRESS)]);
+                case TEXT -> Integer.compare(ranks[(int) x], ranks[(int) y]);
+            };
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    static Path createSpillFile(Path spillDirectory) throws IOException {
+        Files.createDirectories(spillDirectory);
+        return Files.createTempFile(spillDirectory, "groupby-", ".spill");
+    }
+
+    static DataOutputStream openOutput(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), SPILL_BUFFER_SIZE));
+    }
+
+    static DataInputStream openInput(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), SPILL_BUFFER_SIZE));
+    }
+
+    static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not delete group-by spill file " + file + ": " + e.getMessage());
+        }
+    }
+
+    public interface RowConsumer {
+        void accept(String[] key, long count, long bytes, long packets);
+    }
+}
@@ -0,0 +1,101 @@
+package in.anuragbanerjee.groupby;
+
+import in.anuragbanerjee.model.FlowField;
+
+import java.util.Arrays;
+import java.util.List;
+
+// How the fields of a group-by key are packed into a few longs. Each field takes a fixed number of
+// bits: ports 17 (the port + 1, so that "-" fits), other int fields 32, long fields a whole word,
+// addresses 33 (the packed address, or 2^32 plus a dictionary code for a value that is not a dotted
+// quad) and text fields 32 (a dictionary code). Fields are laid out in order and a new word is started
+// whenever the next one does not fit, so (srcaddr, dstaddr, dstport) takes two longs.
+final class KeyLayout {
+    enum Kind { INT, PORT, LONG, ADDRESS, TEXT }
+
+    static final long TEXT_ADDRESS = 1L << 32;
+
+    private final FlowField[] fields;
+    private final Kind[] kinds;
+    private final int[] words;
+    private final int[] shifts;
+    private final long[] masks;
+    private final int wordCount;
+
+    KeyLayout(List<FlowField> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("A group-by needs at least one field");
+        }
+        this.fields = fields.toArray(new FlowField[0]);
+        int count = this.fields.length;
+        kinds = new Kind[count];
+        words = new int[count];
+        shifts = new int[count];
+        masks = new long[count];
+        int word = 0;
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            kinds[i] = kindOf(this.fields[i]);
+            int bits = bitsOf(kinds[i]);
+            if (used + bits > Long.SIZE) {
+                word++;
+                used = 0;
+            }
+            words[i] = word;
+            shifts[i] = used;
+            masks[i] = bits == Long.SIZE ? -1L : (1L << bits) - 1;
+            used += bits;
+        }
+        wordCount = word + 1;
+    }
+
+    static Kind kindOf(FlowField field) {
+        return switch (field) {
+            case VERSION, PROTOCOL, PACKETS -> Kind.INT;
+            case SOURCE_PORT, DESTINATION_PORT -> Kind.PORT;
+            case ACCOUNT_ID, BYTES, START, END -> Kind.LONG;
+            case SOURCE_ADDRESS, DESTINATION_ADDRESS -> Kind.ADDRESS;
+            case INTERFACE_ID, ACTION, LOG_STATUS -> Kind.TEXT;
+            default -> throw new IllegalArgumentException("Cannot group by " + field.getFieldName());
+        };
+    }
+
+    private static int bitsOf(Kind kind) {
+        return switch (kind) {
+            case INT, TEXT -> 32;
+            case PORT -> 17;
+            case LONG -> 64;
+            case ADDRESS -> 33;
+        };
+    }
+
+    int fieldCount() {
+        return fields.length;
+    }
+
+    int wordCount() {
+        return wordCount;
+    }
+
+    FlowField field(int i) {
+        return fields[i];
+    }
+
+    Kind kind(int i) {
+        return kinds[i];
+    }
+
+    // The bits of field i in the key at keys[offset]
+    long get(long[] keys, int offset, int i) {
+        return (keys[offset + words[i]] >>> shifts[i]) & masks[i];
+    }
+
+    // Expects the field's bits to be clear
+    void set(long[] keys, int offset, int i, long bits) {
+        keys[offset + words[i]] |= (bits & masks[i]) << shifts[i];
+    }
+
+    boolean sameFields(KeyLayout other) {
+        return Arrays.equals(fields, other.fields);
+    }
+}
@@ -0,0 +1,117 @@
+package in.anuragbanerjee.groupby;
+
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.model.Ipv4Addresses;
+import in.anuragbanerjee.model.Protocols;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+// A group-by key with its sums, decoded from a table's packed form so that it no longer depends on the
+// table's dictionary: it can be written to a spill file, read back into another table and compared with
+// rows of other tables. Reused from row to row.
+final class Row {
+    private final KeyLayout layout;
+    // INT, PORT and LONG values; the packed address for dotted-quad ADDRESS values, otherwise NONE
+    final long[] numbers;
+    // TEXT values and ADDRESS values that are not dotted quads
+    final String[] texts;
+    long count;
+    long bytes;
+    long packets;
+
+    Row(KeyLayout layout) {
+        this.layout = layout;
+        this.numbers = new long[layout.fieldCount()];
+        this.texts = new String[layout.fieldCount()];
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        for (int i = 0; i < numbers.length; i++) {
+            switch (layout.kind(i)) {
+                case TEXT -> out.writeUTF(texts[i]);
+                case ADDRESS -> {
+                    out.writeLong(numbers[i]);
+                    if (numbers[i] == Ipv4Addresses.NONE) {
+                        out.writeUTF(texts[i]);
+                    }
+                }
+                default -> out.writeLong(numbers[i]);
+            }
+        }
+        out.writeLong(count);
+        out.writeLong(bytes);
+        out.writeLong(packets);
+    }
+
+    // Returns false at the end of the file
+    boolean read(DataInputStream in) throws IOException {
+        for (int i = 0; i < numbers.length; i++) {
+            try {
+                switch (layout.kind(i)) {
+                    case TEXT -> texts[i] = in.readUTF();
+                    case ADDRESS -> {
+                        numbers[i] = in.readLong();
+                        texts[i] = numbers[i] == Ipv4Addresses.NONE ? in.readUTF() : null;
+                    }
+                    default -> numbers[i] = in.readLong();
+                }
+            } catch (EOFException e) {
+                if (i == 0) {
+                    return false;
+                }
+                throw e;
+            }
+        }
+        count = in.readLong();
+        bytes = in.readLong();
+        packets = in.readLong();
+        return true;
+    }
+
+    // Field by field: numbers in numeric order, text in String order, dotted quads before other addresses
+    int compareTo(Row other) {
+        for (int i = 0; i < numbers.length; i++) {
+            int result;
+            KeyLayout.Kind kind = layout.kind(i);
+            if (kind == KeyLayout.Kind.TEXT) {
+                result = texts[i].compareTo(other.texts[i]);
+            } else if (kind == KeyLayout.Kind.ADDRESS && (texts[i] != null || other.texts[i] != null)) {
+                result = texts[i] == null ? -1 : other.texts[i] == null ? 1 : texts[i].compareTo(other.texts[i]);
+            } else {
+                result = Long.compare(numbers[i], other.numbers[i]);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    // The spill partition of the key; every level splits by a different hash
+    int partition(int level, int partitionBits) {
+        long hash = 0x632BE59BD9B4E019L * (level + 1);
+        for (int i = 0; i < numbers.length; i++) {
+            hash = (hash ^ (texts[i] != null ? texts[i].hashCode() : numbers[i])) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 32;
+        }
+        return (int) (hash >>> (Long.SIZE - partitionBits));
+    }
+
+    // CSV values of the key; "-" for fields the lines did not carry
+    void format(String[] values) {
+        for (int i = 0; i < numbers.length; i++) {
+            long number = numbers[i];
+            values[i] = switch (layout.kind(i)) {
+                case TEXT -> texts[i];
+                case ADDRESS -> number != Ipv4Addresses.NONE ? Ipv4Addresses.format((int) number)
+                        : texts[i].equals("-1") ? "-" : texts[i];
+                default -> number == -1 ? "-"
+                        : layout.field(i) == FlowField.PROTOCOL ? Protocols.toName((int) number)
+                        : Long.toString(number);
+            };
+        }
+    }
+}
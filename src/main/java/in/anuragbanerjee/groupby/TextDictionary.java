@@ -0,0 +1,54 @@
+package in.anuragbanerjee.groupby;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Assigns dense codes to the text values of one table in first-seen order, and keeps a rough count of
+// the heap they take so the table can include it in its memory budget
+final class TextDictionary {
+    // A String with its array, a map node and a boxed code, plus a list slot
+    private static final int ENTRY_OVERHEAD = 112;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private long memoryBytes;
+
+    int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+            memoryBytes += ENTRY_OVERHEAD + value.length();
+        }
+        return code;
+    }
+
+    String decode(int code) {
+        return values.get(code);
+    }
+
+    long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    // The position of every code's value in String order
+    int[] ranks() {
+        String[] sorted = values.toArray(new String[0]);
+        Arrays.sort(sorted);
+        int[] ranks = new int[sorted.length];
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks[codes.get(sorted[rank])] = rank;
+        }
+        return ranks;
+    }
+
+    void clear() {
+        codes.clear();
+        values.clear();
+        memoryBytes = 0;
+    }
+}
@@ -0,0 +1,28 @@
+package in.anuragbanerjee.mapper;
+
+// A lookup table row that also matches on the source and/or destination address. A null protocol or
+// a null prefix match anything.
+public final class AddressRule {
+    private final PortRange ports;
+    private final String protocol;
+    private final String tag;
+    private final Ipv4Prefix sourcePrefix;
+    private final Ipv4Prefix destinationPrefix;
+
+    public AddressRule(PortRange ports, String protocol, String tag, Ipv4Prefix sourcePrefix, Ipv4Prefix destinationPrefix) {
+        if (sourcePrefix == null && destinationPrefix == null) {
+            throw new IllegalArgumentException("An address rule needs a source or destination CIDR block");
+        }
+        this.ports = ports;
+        this.protocol = protocol;
+        this.tag = tag;
+        this.sourcePrefix = sourcePrefix;
+        this.destinationPrefix = destinationPrefix;
+    }
+
+    public PortRange getPorts() { return ports; }
+    public String getProtocol() { return protocol; }
+    public String getTag() { return tag; }
+    public Ipv4Prefix getSourcePrefix() { return sourcePrefix; }
+    public Ipv4Prefix getDestinationPrefix() { return destinationPrefix; }
+}
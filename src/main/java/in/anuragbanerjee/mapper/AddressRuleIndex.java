@@ -0,0 +1,82 @@
+package in.anuragbanerjee.mapper;
+
+import in.anuragbanerjee.model.Ipv4Addresses;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Finds the address rules that match a flow. Rules with a source prefix are indexed by a trie over
+// source addresses; rules that only have a destination prefix by a trie over destination addresses.
+// The candidates found in the trie are then checked against the remaining conditions.
+final class AddressRuleIndex {
+    private static final int ANY = -1;
+
+    private final int[] ruleTagIds;
+    private final int[] ruleProtocols;
+    private final int[] ruleFromPorts;
+    private final int[] ruleToPorts;
+    private final Ipv4Prefix[] ruleDestinationPrefixes;
+    private final PrefixTrie sourceTrie;
+    private final PrefixTrie destinationTrie;
+    private final int maxMatches;
+
+    // protocols holds the resolved protocol number of each rule, or -1 for any protocol
+    AddressRuleIndex(List<AddressRule> rules, int[] protocols, int[] tagIds) {
+        int ruleCount = rules.size();
+        ruleTagIds = tagIds;
+        ruleProtocols = protocols;
+        ruleFromPorts = new int[ruleCount];
+        ruleToPorts = new int[ruleCount];
+        ruleDestinationPrefixes = new Ipv4Prefix[ruleCount];
+
+        List<Ipv4Prefix> sourcePrefixes = new ArrayList<>();
+        List<Ipv4Prefix> destinationPrefixes = new ArrayList<>();
+        int[] sourceRuleIds = new int[ruleCount];
+        int[] destinationRuleIds = new int[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            AddressRule rule = rules.get(i);
+            ruleFromPorts[i] = rule.getPorts().getFrom();
+            ruleToPorts[i] = rule.getPorts().getTo();
+            if (rule.getSourcePrefix() != null) {
+                // The destination, if any, is checked per candidate
+                ruleDestinationPrefixes[i] = rule.getDestinationPrefix();
+                sourceRuleIds[sourcePrefixes.size()] = i;
+                sourcePrefixes.add(rule.getSourcePrefix());
+            } else {
+                destinationRuleIds[destinationPrefixes.size()] = i;
+                destinationPrefixes.add(rule.getDestinationPrefix());
+            }
+        }
+        sourceTrie = new PrefixTrie(sourcePrefixes, Arrays.copyOf(sourceRuleIds, sourcePrefixes.size()));
+        destinationTrie = new PrefixTrie(destinationPrefixes, Arrays.copyOf(destinationRuleIds, destinationPrefixes.size()));
+        maxMatches = sourceTrie.getMaxMatches() + destinationTrie.getMaxMatches();
+    }
+
+    int getMaxMatches() {
+        return maxMatches;
+    }
+
+    // Writes the tag ids of all matching rules to tagIds (at least getMaxMatches() long) in rule order
+    // per trie and returns how many were written. The same tag id may appear more than once.
+    int match(long sourceAddress, long destinationAddress, int protocol, int port, int[] tagIds) {
+        int candidates = 0;
+        if (sourceAddress != Ipv4Addresses.NONE) {
+            candidates = sourceTrie.collect((int) sourceAddress, tagIds, candidates);
+        }
+        if (destinationAddress != Ipv4Addresses.NONE) {
+            candidates = destinationTrie.collect((int) destinationAddress, tagIds, candidates);
+        }
+
+        int matches = 0;
+        for (int i = 0; i < candidates; i++) {
+            int rule = tagIds[i];
+            if ((ruleProtocols[rule] == ANY || ruleProtocols[rule] == protocol)
+                    && port >= ruleFromPorts[rule] && port <= ruleToPorts[rule]
+                    && (ruleDestinationPrefixes[rule] == null || ruleDestinationPrefixes[rule].contains(destinationAddress))) {
+                tagIds[matches++] = ruleTagIds[rule];
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,39 @@
+package in.anuragbanerjee.mapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+// Modification time and size of a lookup table file, to tell whether it changed since it was loaded
+final class FileState {
+    private final long lastModifiedMillis;
+    private final long size;
+
+    private FileState(long lastModifiedMillis, long size) {
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.size = size;
+    }
+
+    // null when the file cannot be read right now, e.g. while it is being replaced
+    static FileState of(Path file) {
+        try {
+            return new FileState(Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileState that = (FileState) o;
+        return lastModifiedMillis == that.lastModifiedMillis && size == that.size;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lastModifiedMillis, size);
+    }
+}
@@ -0,0 +1,64 @@
+package in.anuragbanerjee.mapper;
+
+import in.anuragbanerjee.model.Ipv4Addresses;
+
+import java.util.Objects;
+
+// An IPv4 CIDR block such as 10.0.0.0/8. A bare address is a /32. Host bits are cleared.
+public final class Ipv4Prefix {
+    private final int network;
+    private final int length;
+
+    public Ipv4Prefix(int network, int length) {
+        if (length < 0 || length > 32) {
+            throw new IllegalArgumentException("Invalid prefix length: " + length);
+        }
+        this.network = network & mask(length);
+        this.length = length;
+    }
+
+    public static Ipv4Prefix parse(String value) {
+        int slash = value.indexOf('/');
+        long address = Ipv4Addresses.parse(value, 0, slash >= 0 ? slash : value.length());
+        int length = 32;
+        if (slash >= 0) {
+            String lengthText = value.substring(slash + 1);
+            length = lengthText.length() > 0 && lengthText.length() <= 2 && lengthText.chars().allMatch(Character::isDigit)
+                    ? Integer.parseInt(lengthText) : -1;
+        }
+        if (address == Ipv4Addresses.NONE || length < 0 || length > 32) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + value);
+        }
+        return new Ipv4Prefix((int) address, length);
+    }
+
+    public int getNetwork() { return network; }
+    public int getLength() { return length; }
+    public int getMask() { return mask(length); }
+
+    public boolean contains(long address) {
+        return address != Ipv4Addresses.NONE && (((int) address ^ network) & mask(length)) == 0;
+    }
+
+    static int mask(int length) {
+        return length == 0 ? 0 : -1 << (32 - length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Ipv4Prefix that = (Ipv4Prefix) o;
+        return network == that.network && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(network, length);
+    }
+
+    @Override
+    public String toString() {
+        return Ipv4Addresses.format(network) + "/" + length;
+    }
+}
@@ -0,0 +1,82 @@
+package in.anuragbanerjee.mapper;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compiled lookup tables shared by the jobs of one process, keyed by file path. A file is read and
+// compiled once and its table reused while the file's modification time and size stay the same; a
+// changed file is loaded again under the next version. Thread-safe: jobs that need the same file at
+// the same time wait for a single load.
+public class LookupTableCache {
+    private final ConcurrentMap<Path, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    public TagLookupTable get(String lookupTableFilePath) {
+        Path file = Path.of(lookupTableFilePath).toAbsolutePath().normalize();
+        FileState state = FileState.of(file);
+        while (true) {
+            CompletableFuture<Entry> current = entries.get(file);
+            Entry cached = null;
+            if (current != null) {
+                try {
+                    cached = current.join();
+                } catch (CompletionException e) {
+                    // That load failed and its future has already been taken out again
+                    continue;
+                }
+                if (state != null && state.equals(cached.state)) {
+                    hits.incrementAndGet();
+                    return cached.table;
+                }
+            }
+            // The file is read and compiled outside the map, so loads of other files never wait for it
+            CompletableFuture<Entry> loading = new CompletableFuture<>();
+            boolean claimed = current == null ? entries.putIfAbsent(file, loading) == null : entries.replace(file, current, loading);
+            if (!claimed) {
+                // Another job started loading the file first
+                continue;
+            }
+            try {
+                long version = cached != null ? cached.table.getVersion() + 1 : 1;
+                Entry loaded = new Entry(state, TagMapper.readLookupTable(lookupTableFilePath, version));
+                loads.incrementAndGet();
+                loading.complete(loaded);
+                return loaded.table;
+            } catch (RuntimeException | Error e) {
+                // The last good table stays for the next request
+                if (current != null) {
+                    entries.replace(file, loading, current);
+                } else {
+                    entries.remove(file, loading);
+                }
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    // Number of times a file was read and compiled
+    public long getLoads() {
+        return loads.get();
+    }
+
+    // Number of requests answered with an already compiled table
+    public long getHits() {
+        return hits.get();
+    }
+
+    private static class Entry {
+        private final FileState state;
+        private final TagLookupTable table;
+
+        private Entry(FileState state, TagLookupTable table) {
+            this.state = state;
+            this.table = table;
+        }
+    }
+}
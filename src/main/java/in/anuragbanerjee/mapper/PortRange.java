@@ -0,0 +1,74 @@
+package in.anuragbanerjee.mapper;
+
+import java.util.Objects;
+
+// An inclusive range of destination ports as written in the lookup table: a single port, "from-to"
+// or * for every port
+public final class PortRange {
+    public static final int MAX_PORT = 65535;
+    public static final PortRange ALL = new PortRange(0, MAX_PORT);
+
+    private final int from;
+    private final int to;
+
+    public PortRange(int from, int to) {
+        if (from < 0 || to > MAX_PORT || from > to) {
+            throw new IllegalArgumentException("Invalid port range: " + from + "-" + to);
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    public static PortRange parse(String value) {
+        String range = value.trim();
+        if ("*".equals(range)) {
+            return ALL;
+        }
+        int dash = range.indexOf('-', 1);
+        if (dash < 0) {
+            int port = parsePort(range);
+            return new PortRange(port, port);
+        }
+        return new PortRange(parsePort(range.substring(0, dash)), parsePort(range.substring(dash + 1)));
+    }
+
+    private static int parsePort(String value) {
+        int port = Integer.parseInt(value.trim());
+        if (port < 0 || port > MAX_PORT) {
+            throw new IllegalArgumentException("Invalid port number: " + port);
+        }
+        return port;
+    }
+
+    public int getFrom() { return from; }
+    public int getTo() { return to; }
+
+    public boolean isSinglePort() {
+        return from == to;
+    }
+
+    public boolean contains(int port) {
+        return port >= from && port <= to;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PortRange that = (PortRange) o;
+        return from == that.from && to == that.to;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to);
+    }
+
+    @Override
+    public String toString() {
+        if (from == 0 && to == MAX_PORT) {
+            return "*";
+        }
+        return from == to ? String.valueOf(from) : from + "-" + to;
+    }
+}
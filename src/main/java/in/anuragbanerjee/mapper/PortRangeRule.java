@@ -0,0 +1,30 @@
+package in.anuragbanerjee.mapper;
+
+// A lookup table row with a port range or a wildcard instead of a single port/protocol pair. A null
+// protocol matches any protocol. The row text and line number are kept for overlap reports.
+public final class PortRangeRule {
+    private final PortRange ports;
+    private final String protocol;
+    private final String tag;
+    private final int lineNumber;
+    private final String row;
+
+    public PortRangeRule(PortRange ports, String protocol, String tag, int lineNumber, String row) {
+        this.ports = ports;
+        this.protocol = protocol;
+        this.tag = tag;
+        this.lineNumber = lineNumber;
+        this.row = row;
+    }
+
+    public PortRange getPorts() { return ports; }
+    public String getProtocol() { return protocol; }
+    public String getTag() { return tag; }
+    public int getLineNumber() { return lineNumber; }
+    public String getRow() { return row; }
+
+    @Override
+    public String toString() {
+        return "'" + row + "' (line " + lineNumber + ")";
+    }
+}
@@ -0,0 +1,183 @@
+package in.anuragbanerjee.mapper;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Path-compressed binary trie over IPv4 prefixes. Every node is either a prefix that carries rules or a
+// branching point, so there are fewer than two nodes per distinct prefix. Nodes are packed into one int
+// array (network, length, children), and a table indexed by the top 16 bits of the address jumps
+// straight to the deepest node of length 16 or less, so a lookup only walks the nodes below /16.
+final class PrefixTrie {
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+    private static final int DIRECT_BITS = 16;
+
+    private static final int NETWORK = 0;
+    private static final int LENGTH = 1;
+    private static final int ZERO_CHILD = 2;
+    private static final int ONE_CHILD = 3;
+    private static final int NODE_SIZE = 4;
+
+    private int[] nodes = new int[16 * NODE_SIZE];
+    private int nodeCount;
+
+    // Rules of node n are rules[ruleStart[n] .. ruleStart[n + 1])
+    private final int[] ruleStart;
+    private final int[] rules;
+    // Nearest ancestor that carries rules, or NO_NODE
+    private final int[] ruleParents;
+    private final int[] directNodes = new int[1 << DIRECT_BITS];
+    private final int maxMatches;
+
+    PrefixTrie(List<Ipv4Prefix> prefixes, int[] ruleIds) {
+        addNode(0, 0);
+        int[] nodeOfRule = new int[ruleIds.length];
+        for (int i = 0; i < ruleIds.length; i++) {
+            nodeOfRule[i] = insert(prefixes.get(i));
+        }
+
+        // Group rule ids by node, keeping the order in which they were given
+        ruleStart = new int[nodeCount + 1];
+        for (int node : nodeOfRule) {
+            ruleStart[node + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            ruleStart[node + 1] += ruleStart[node];
+        }
+        rules = new int[ruleIds.length];
+        int[] next = Arrays.copyOf(ruleStart, nodeCount);
+        for (int i = 0; i < ruleIds.length; i++) {
+            rules[next[nodeOfRule[i]]++] = ruleIds[i];
+        }
+
+        ruleParents = new int[nodeCount];
+        maxMatches = index(ROOT, NO_NODE);
+    }
+
+    // Largest number of rule ids a single lookup can return
+    int getMaxMatches() {
+        return maxMatches;
+    }
+
+    // Appends the ids of all rules whose prefix contains the address to matches, starting at count,
+    // shortest prefix first. Returns the new count.
+    int collect(int address, int[] matches, int count) {
+        int node = directNodes[address >>> (32 - DIRECT_BITS)];
+
+        // The node and all its ancestors contain the whole /16, so their rules match
+        int ancestorRules = 0;
+        for (int n = hasRules(node) ? node : ruleParents[node]; n != NO_NODE; n = ruleParents[n]) {
+            ancestorRules += ruleStart[n + 1] - ruleStart[n];
+        }
+        int end = count + ancestorRules;
+        for (int n = hasRules(node) ? node : ruleParents[node]; n != NO_NODE; n = ruleParents[n]) {
+            for (int i = ruleStart[n + 1] - 1; i >= ruleStart[n]; i--) {
+                matches[--end] = rules[i];
+            }
+        }
+        count += ancestorRules;
+
+        node = child(node, address);
+        while (node != NO_NODE) {
+            int base = node * NODE_SIZE;
+            int length = nodes[base + LENGTH];
+            if (((address ^ nodes[base + NETWORK]) & Ipv4Prefix.mask(length)) != 0) {
+                break;
+            }
+            for (int i = ruleStart[node]; i < ruleStart[node + 1]; i++) {
+                matches[count++] = rules[i];
+            }
+            node = child(node, address);
+        }
+        return count;
+    }
+
+    private int child(int node, int address) {
+        int base = node * NODE_SIZE;
+        int length = nodes[base + LENGTH];
+        if (length == 32) {
+            return NO_NODE;
+        }
+        return nodes[base + (bit(address, length) == 0 ? ZERO_CHILD : ONE_CHILD)];
+    }
+
+    private boolean hasRules(int node) {
+        return ruleStart[node + 1] > ruleStart[node];
+    }
+
+    private int insert(Ipv4Prefix prefix) {
+        int network = prefix.getNetwork();
+        int length = prefix.getLength();
+        int node = ROOT;
+        while (true) {
+            int nodeLength = nodes[node * NODE_SIZE + LENGTH];
+            if (nodeLength == length) {
+                return node;
+            }
+            int branch = bit(network, nodeLength);
+            int child = nodes[node * NODE_SIZE + (branch == 0 ? ZERO_CHILD : ONE_CHILD)];
+            if (child == NO_NODE) {
+                int leaf = addNode(network, length);
+                setChild(node, branch, leaf);
+                return leaf;
+            }
+
+            int childNetwork = nodes[child * NODE_SIZE + NETWORK];
+            int childLength = nodes[child * NODE_SIZE + LENGTH];
+            int common = Math.min(Math.min(Integer.numberOfLeadingZeros(network ^ childNetwork), childLength), length);
+            if (common == childLength) {
+                node = child;
+                continue;
+            }
+            // The new prefix diverges from the child, or lies between node and child: split the edge
+            int middle = addNode(network & Ipv4Prefix.mask(common), common);
+            setChild(node, branch, middle);
+            setChild(middle, bit(childNetwork, common), child);
+            if (common == length) {
+                return middle;
+            }
+            int leaf = addNode(network, length);
+            setChild(middle, bit(network, common), leaf);
+            return leaf;
+        }
+    }
+
+    private int addNode(int network, int length) {
+        if ((nodeCount + 1) * NODE_SIZE > nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        int base = nodeCount * NODE_SIZE;
+        nodes[base + NETWORK] = network;
+        nodes[base + LENGTH] = length;
+        nodes[base + ZERO_CHILD] = NO_NODE;
+        nodes[base + ONE_CHILD] = NO_NODE;
+        return nodeCount++;
+    }
+
+    private void setChild(int node, int branch, int child) {
+        nodes[node * NODE_SIZE + (branch == 0 ? ZERO_CHILD : ONE_CHILD)] = child;
+    }
+
+    // Fills ruleParents and directNodes below node in pre-order, so deeper nodes overwrite the direct
+    // entries of their ancestors. Returns the largest number of rules on a path from node down.
+    private int index(int node, int ruleParent) {
+        if (node == NO_NODE) {
+            return 0;
+        }
+        ruleParents[node] = ruleParent;
+        int base = node * NODE_SIZE;
+        int length = nodes[base + LENGTH];
+        if (length <= DIRECT_BITS) {
+            int first = nodes[base + NETWORK] >>> (32 - DIRECT_BITS);
+            Arrays.fill(directNodes, first, first + (1 << (DIRECT_BITS - length)), node);
+        }
+        int childRuleParent = hasRules(node) ? node : ruleParent;
+        int below = Math.max(index(nodes[base + ZERO_CHILD], childRuleParent), index(nodes[base + ONE_CHILD], childRuleParent));
+        return ruleStart[node + 1] - ruleStart[node] + below;
+    }
+
+    // Bit at the given position counted from the most significant bit
+    private static int bit(int value, int position) {
+        return (value >>> (31 - position)) & 1;
+    }
+}
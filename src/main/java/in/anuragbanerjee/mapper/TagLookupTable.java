@@ -0,0 +1,402 @@
+package in.anuragbanerjee.mapper;
+
+import in.anuragbanerjee.model.PortProtocolKey;
+import in.anuragbanerjee.model.Protocols;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Compiled, immutable form of the lookup table. Each (protocol, port) pair resolves to an interned
+// tag-set id through a per-protocol array of 65536 entries, so a lookup is two array reads.
+// Tag-set id 0 means "no tags". Rows with CIDR blocks are kept apart in an AddressRuleIndex and only
+// consulted when the table has any. TagMapper publishes a new table on every load instead of changing
+// one in place, so a table can be shared by any number of threads without locking.
+public class TagLookupTable {
+    public static final String UNTAGGED = "untagged";
+    public static final int NO_TAGS = 0;
+    private static final int PORT_COUNT = 65536;
+    private static final int MAX_REPORTED_OVERLAPS = 1000;
+
+    private final String[] tagNames;
+    private final Map<String, Integer> tagIds;
+    private final int untaggedTagId;
+    private final int[][] tagIdsBySet;
+    private final List<Set<String>> tagSets;
+    private final int[][] tagSetIdsByProtocol;
+    private final Map<Long, Integer> tagSetIdsForLargeProtocols;
+    private final Map<Integer, int[]> rangeTagSetIdsForLargeProtocols;
+    private final int[] anyProtocolTagSetIds;
+    private final AddressRuleIndex addressRules;
+    private final long version;
+    private final int mappingCount;
+    private final List<String> overlaps;
+
+    private TagLookupTable(String[] tagNames, Map<String, Integer> tagIds, int untaggedTagId, int[][] tagIdsBySet, List<Set<String>> tagSets,
+                           int[][] tagSetIdsByProtocol, Map<Long, Integer> tagSetIdsForLargeProtocols,
+                           Map<Integer, int[]> rangeTagSetIdsForLargeProtocols, int[] anyProtocolTagSetIds, AddressRuleIndex addressRules,
+                           long version, int mappingCount, List<String> overlaps) {
+        this.tagNames = tagNames;
+        this.tagIds = tagIds;
+        this.untaggedTagId = untaggedTagId;
+        this.tagIdsBySet = tagIdsBySet;
+        this.tagSets = tagSets;
+        this.tagSetIdsByProtocol = tagSetIdsByProtocol;
+        this.tagSetIdsForLargeProtocols = tagSetIdsForLargeProtocols;
+        this.rangeTagSetIdsForLargeProtocols = rangeTagSetIdsForLargeProtocols;
+        this.anyProtocolTagSetIds = anyProtocolTagSetIds;
+        this.addressRules = addressRules;
+        this.version = version;
+        this.mappingCount = mappingCount;
+        this.overlaps = overlaps;
+    }
+
+    public static TagLookupTable empty() {
+        return compile(Collections.emptyMap());
+    }
+
+    public static TagLookupTable compile(Map<PortProtocolKey, Set<String>> tagMapping) {
+        return compile(tagMapping, Collections.emptyList(), 0);
+    }
+
+    public static TagLookupTable compile(Map<PortProtocolKey, Set<String>> tagMapping, List<AddressRule> addressRules, long version) {
+        return compile(tagMapping, Collections.emptyList(), addressRules, version);
+    }
+
+    public static TagLookupTable compile(Map<PortProtocolKey, Set<String>> tagMapping, List<PortRangeRule> rangeRules,
+                                         List<AddressRule> addressRules, long version) {
+        Compiler compiler = new Compiler();
+
+        // Tag sets of the single-port rows are interned first and in map order, so a table without
+        // range rules compiles exactly as it always did
+        Map<PortProtocolKey, Integer> rowTagSetIds = new LinkedHashMap<>();
+        for (Map.Entry<PortProtocolKey, Set<String>> entry : tagMapping.entrySet()) {
+            int port = entry.getKey().getPort();
+            int protocol = Protocols.fromName(entry.getKey().getProtocol());
+            Set<String> tags = entry.getValue();
+            if (port < 0 || port >= PORT_COUNT || protocol < 0 || tags.isEmpty()) {
+                // Can never match a parsed log entry
+                continue;
+            }
+            rowTagSetIds.put(entry.getKey(), compiler.internTagSet(new ArrayList<>(tags)));
+        }
+
+        // Range rules are flattened into one array per protocol they name, plus one shared by every
+        // other protocol for the rules with a wildcard protocol
+        List<PortRangeRule> anyProtocolRules = new ArrayList<>();
+        Map<Integer, List<PortRangeRule>> rulesByProtocol = new TreeMap<>();
+        for (PortRangeRule rule : rangeRules) {
+            if (rule.getProtocol() == null) {
+                anyProtocolRules.add(rule);
+                continue;
+            }
+            int protocol = Protocols.fromName(rule.getProtocol());
+            if (protocol >= 0) {
+                rulesByProtocol.computeIfAbsent(protocol, p -> new ArrayList<>()).add(rule);
+            }
+        }
+        int[] anyProtocolPorts = anyProtocolRules.isEmpty() ? null
+                : compiler.flatten(anyProtocolRules, "any protocol", false);
+
+        int[][] tagSetIdsByProtocol = new int[Protocols.MAX_PROTOCOL_NUMBER + 1][];
+        Map<Integer, int[]> rangeTagSetIdsForLargeProtocols = new HashMap<>();
+        for (Map.Entry<Integer, List<PortRangeRule>> entry : rulesByProtocol.entrySet()) {
+            int protocol = entry.getKey();
+            List<PortRangeRule> rules = entry.getValue();
+            if (!anyProtocolRules.isEmpty()) {
+                rules.addAll(anyProtocolRules);
+                rules.sort(Comparator.comparingInt(PortRangeRule::getLineNumber));
+            }
+            int[] ports = compiler.flatten(rules, Protocols.toName(protocol), true);
+            if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+                tagSetIdsByProtocol[protocol] = ports;
+            } else {
+                rangeTagSetIdsForLargeProtocols.put(protocol, ports);
+            }
+        }
+
+        Map<Long, Integer> tagSetIdsForLargeProtocols = new HashMap<>();
+        Map<Integer, Integer> coveredRowsByProtocol = new TreeMap<>();
+        for (Map.Entry<PortProtocolKey, Integer> entry : rowTagSetIds.entrySet()) {
+            int port = entry.getKey().getPort();
+            int protocol = Protocols.fromName(entry.getKey().getProtocol());
+            int[] ports;
+            if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+                ports = tagSetIdsByProtocol[protocol];
+                if (ports == null) {
+                    ports = anyProtocolPorts == null ? new int[PORT_COUNT] : anyProtocolPorts.clone();
+                    tagSetIdsByProtocol[protocol] = ports;
+                }
+            } else {
+                ports = rangeTagSetIdsForLargeProtocols.get(protocol);
+            }
+            int[] rangePorts = ports != null ? ports : anyProtocolPorts;
+
+            int tagSetId = entry.getValue();
+            if (rangePorts != null && rangePorts[port] != NO_TAGS) {
+                // The row's own tags come first, followed by those of the ranges that cover it
+                tagSetId = compiler.combine(tagSetId, rangePorts[port]);
+                coveredRowsByProtocol.merge(protocol, 1, Integer::sum);
+            }
+            if (ports != null) {
+                ports[port] = tagSetId;
+            } else {
+                tagSetIdsForLargeProtocols.put(largeProtocolKey(protocol, port), tagSetId);
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : coveredRowsByProtocol.entrySet()) {
+            compiler.overlaps.add(entry.getValue() + " single-port row(s) for " + Protocols.toName(entry.getKey())
+                    + " and the port ranges covering them");
+        }
+        if (compiler.unreportedOverlaps > 0) {
+            compiler.overlaps.add(compiler.unreportedOverlaps + " more overlapping pair(s) of rules");
+        }
+        if (anyProtocolPorts != null) {
+            // Protocols without rows or ranges of their own only see the wildcard rules
+            for (int protocol = 0; protocol <= Protocols.MAX_PROTOCOL_NUMBER; protocol++) {
+                if (tagSetIdsByProtocol[protocol] == null) {
+                    tagSetIdsByProtocol[protocol] = anyProtocolPorts;
+                }
+            }
+        }
+
+        AddressRuleIndex addressRuleIndex = compileAddressRules(addressRules, compiler);
+
+        int untaggedTagId = compiler.intern(UNTAGGED);
+        return new TagLookupTable(compiler.tagNames.toArray(new String[0]), compiler.tagIds, untaggedTagId,
+                compiler.tagIdsBySet.toArray(new int[0][]), compiler.tagSets, tagSetIdsByProtocol, tagSetIdsForLargeProtocols,
+                rangeTagSetIdsForLargeProtocols, anyProtocolPorts, addressRuleIndex, version,
+                tagMapping.size() + rangeRules.size() + addressRules.size(), Collections.unmodifiableList(compiler.overlaps));
+    }
+
+    private static AddressRuleIndex compileAddressRules(List<AddressRule> addressRules, Compiler compiler) {
+        List<AddressRule> rules = new ArrayList<>();
+        List<Integer> protocols = new ArrayList<>();
+        for (AddressRule rule : addressRules) {
+            int protocol = rule.getProtocol() == null ? -1 : Protocols.fromName(rule.getProtocol());
+            if (rule.getProtocol() != null && protocol < 0) {
+                // Can never match a parsed log entry
+                continue;
+            }
+            rules.add(rule);
+            protocols.add(protocol);
+        }
+        if (rules.isEmpty()) {
+            return null;
+        }
+        int[] ruleTagIds = new int[rules.size()];
+        int[] ruleProtocols = new int[rules.size()];
+        for (int i = 0; i < ruleTagIds.length; i++) {
+            ruleTagIds[i] = compiler.intern(rules.get(i).getTag());
+            ruleProtocols[i] = protocols.get(i);
+        }
+        return new AddressRuleIndex(rules, ruleProtocols, ruleTagIds);
+    }
+
+    public int lookup(int protocol, int port) {
+        if (port < 0 || port >= PORT_COUNT || protocol < 0) {
+            return NO_TAGS;
+        }
+        if (protocol <= Protocols.MAX_PROTOCOL_NUMBER) {
+            int[] ports = tagSetIdsByProtocol[protocol];
+            return ports == null ? NO_TAGS : ports[port];
+        }
+        if (!rangeTagSetIdsForLargeProtocols.isEmpty()) {
+            int[] ports = rangeTagSetIdsForLargeProtocols.get(protocol);
+            if (ports != null) {
+                return ports[port];
+            }
+        }
+        if (!tagSetIdsForLargeProtocols.isEmpty()) {
+            Integer tagSetId = tagSetIdsForLargeProtocols.get(largeProtocolKey(protocol, port));
+            if (tagSetId != null) {
+                return tagSetId;
+            }
+        }
+        return anyProtocolTagSetIds == null ? NO_TAGS : anyProtocolTagSetIds[port];
+    }
+
+    public boolean hasAddressRules() {
+        return addressRules != null;
+    }
+
+    // Size of the buffer matchAddressRules needs
+    public int getMaxAddressMatches() {
+        return addressRules == null ? 0 : addressRules.getMaxMatches();
+    }
+
+    // Writes the tag ids of every address rule that matches the flow to tagIds and returns how many
+    // were written; tags of the port/protocol rows are not included and ids may repeat. Addresses are
+    // packed as in FlowRecord.getSourceAddress().
+    public int matchAddressRules(long sourceAddress, long destinationAddress, int protocol, int port, int[] tagIds) {
+        return addressRules == null ? 0 : addressRules.match(sourceAddress, destinationAddress, protocol, port, tagIds);
+    }
+
+    public int[] getTagIds(int tagSetId) {
+        return tagIdsBySet[tagSetId];
+    }
+
+    public Set<String> getTagSet(int tagSetId) {
+        return tagSets.get(tagSetId);
+    }
+
+    public String getTagName(int tagId) {
+        return tagNames[tagId];
+    }
+
+    // Returns the id of the given tag, or -1 when the table does not contain it
+    public int findTagId(String tag) {
+        return tagIds.getOrDefault(tag, -1);
+    }
+
+    // Increases with every load of a TagMapper; 0 for a table that was never loaded from a file
+    public long getVersion() {
+        return version;
+    }
+
+    // Number of rows the table was compiled from
+    public int getMappingCount() {
+        return mappingCount;
+    }
+
+    // Descriptions of the rules that cover the same ports, in protocol and port order and limited to the
+    // first 1000 pairs. Overlapping rules are not an error: a port gets the tags of all of them.
+    public List<String> getOverlaps() {
+        return overlaps;
+    }
+
+    public int getTagCount() {
+        return tagNames.length;
+    }
+
+    // Id under which lines without any tag are counted; shared with a tag literally named "untagged"
+    public int getUntaggedTagId() {
+        return untaggedTagId;
+    }
+
+    // Interning state while a table is compiled
+    private static final class Compiler {
+        private final Map<String, Integer> tagIds = new HashMap<>();
+        private final List<String> tagNames = new ArrayList<>();
+        // Tag sets are interned by iteration order, not just content, so counting walks each set in
+        // exactly the order the mapping returns it
+        private final Map<List<String>, Integer> tagSetIds = new HashMap<>();
+        private final List<int[]> tagIdsBySet = new ArrayList<>();
+        private final List<Set<String>> tagSets = new ArrayList<>();
+        private final List<String> overlaps = new ArrayList<>();
+        private long unreportedOverlaps;
+
+        private Compiler() {
+            tagIdsBySet.add(new int[0]);
+            tagSets.add(null);
+        }
+
+        private int intern(String tag) {
+            Integer id = tagIds.get(tag);
+            if (id == null) {
+                id = tagNames.size();
+                tagIds.put(tag, id);
+                tagNames.add(tag);
+            }
+            return id;
+        }
+
+        private int internTagSet(List<String> orderedTags) {
+            Integer tagSetId = tagSetIds.get(orderedTags);
+            if (tagSetId == null) {
+                int[] ids = new int[orderedTags.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = intern(orderedTags.get(i));
+                }
+                tagSetId = tagIdsBySet.size();
+                tagSetIds.put(orderedTags, tagSetId);
+                tagIdsBySet.add(ids);
+                tagSets.add(Collections.unmodifiableSet(new LinkedHashSet<>(orderedTags)));
+            }
+            return tagSetId;
+        }
+
+        private int combine(int firstTagSetId, int secondTagSetId) {
+            Set<String> tags = new LinkedHashSet<>(tagSets.get(firstTagSetId));
+            tags.addAll(tagSets.get(secondTagSetId));
+            return internTagSet(new ArrayList<>(tags));
+        }
+
+        // Flattens the rules (in file order) into one tag-set id per port with a sweep over the range
+        // boundaries; a port covered by several rules gets the tags of all of them in file order.
+        // Overlapping pairs are recorded as they are found, except pairs of two wildcard-protocol rules
+        // when those were already swept on their own.
+        private int[] flatten(List<PortRangeRule> rules, String protocolName, boolean skipAnyProtocolPairs) {
+            int ruleCount = rules.size();
+            Integer[] byStart = new Integer[ruleCount];
+            Integer[] byEnd = new Integer[ruleCount];
+            for (int i = 0; i < ruleCount; i++) {
+                byStart[i] = i;
+                byEnd[i] = i;
+            }
+            Arrays.sort(byStart, Comparator.comparingInt(i -> rules.get(i).getPorts().getFrom()));
+            Arrays.sort(byEnd, Comparator.comparingInt(i -> rules.get(i).getPorts().getTo()));
+
+            // Every port at which the set of covering rules can change
+            int[] boundaries = new int[ruleCount * 2];
+            for (int i = 0; i < ruleCount; i++) {
+                boundaries[2 * i] = rules.get(i).getPorts().getFrom();
+                boundaries[2 * i + 1] = rules.get(i).getPorts().getTo() + 1;
+            }
+            boundaries = Arrays.stream(boundaries).sorted().distinct().toArray();
+
+            int[] ports = new int[PORT_COUNT];
+            BitSet active = new BitSet(ruleCount);
+            int started = 0;
+            int ended = 0;
+            for (int k = 0; k < boundaries.length - 1; k++) {
+                int position = boundaries[k];
+                while (ended < ruleCount && rules.get(byEnd[ended]).getPorts().getTo() < position) {
+                    active.clear(byEnd[ended++]);
+                }
+                while (started < ruleCount && rules.get(byStart[started]).getPorts().getFrom() == position) {
+                    int rule = byStart[started++];
+                    for (int other = active.nextSetBit(0); other >= 0; other = active.nextSetBit(other + 1)) {
+                        reportOverlap(rules.get(Math.min(rule, other)), rules.get(Math.max(rule, other)), protocolName,
+                                skipAnyProtocolPairs);
+                    }
+                    active.set(rule);
+                }
+                if (!active.isEmpty()) {
+                    Set<String> tags = new LinkedHashSet<>();
+                    for (int rule = active.nextSetBit(0); rule >= 0; rule = active.nextSetBit(rule + 1)) {
+                        tags.add(rules.get(rule).getTag());
+                    }
+                    Arrays.fill(ports, position, boundaries[k + 1], internTagSet(new ArrayList<>(tags)));
+                }
+            }
+            return ports;
+        }
+
+        private void reportOverlap(PortRangeRule first, PortRangeRule second, String protocolName, boolean skipAnyProtocolPairs) {
+            if (skipAnyProtocolPairs && first.getProtocol() == null && second.getProtocol() == null) {
+                return;
+            }
+            if (overlaps.size() >= MAX_REPORTED_OVERLAPS) {
+                unreportedOverlaps++;
+                return;
+            }
+            PortRange overlap = new PortRange(Math.max(first.getPorts().getFrom(), second.getPorts().getFrom()),
+                    Math.min(first.getPorts().getTo(), second.getPorts().getTo()));
+            overlaps.add(first + " and " + second + " on " + protocolName + " ports " + overlap);
+        }
+    }
+
+    private static long largeProtocolKey(int protocol, int port) {
+        return ((long) protocol << 16) | port;
+    }
+}
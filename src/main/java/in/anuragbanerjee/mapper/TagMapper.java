@@ -1,42 +1,152 @@
 package in.anuragbanerjee.mapper;
 
-import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.model.FlowRecord;
 import in.anuragbanerjee.model.PortProtocolKey;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+// Holds the current compiled lookup table. Every load builds a new immutable TagLookupTable and
+// publishes it through a volatile field, so readers on the parse threads never lock and always see
+// a complete table; loads themselves are serialized.
 public class TagMapper {
-    private final Map<PortProtocolKey, Set<String>> tagMapping;
+    private static final String WILDCARD = "*";
+
+    private final LookupTableCache cache;
+    private volatile TagLookupTable lookupTable;
+    private long version;
+    private Path lookupTableFile;
+    private FileState loadedState;
+    private FileState lastSeenState;
+    private ScheduledExecutorService watcher;
 
     public TagMapper() {
-        tagMapping = new HashMap<>();
+        this(null);
+    }
+
+    // Loads go through the cache, so mappers of many jobs in one process share each compiled table
+    public TagMapper(LookupTableCache cache) {
+        this.cache = cache;
+        lookupTable = TagLookupTable.empty();
+    }
+
+    // Replaces the current mapping with the contents of the file
+    public synchronized void loadTagMappings(String lookupTableFilePath) {
+        Path file = Path.of(lookupTableFilePath);
+        FileState state = FileState.of(file);
+        lookupTable = cache != null ? cache.get(lookupTableFilePath) : readLookupTable(lookupTableFilePath, version + 1);
+        version = lookupTable.getVersion();
+        lookupTableFile = file;
+        loadedState = state;
+        lastSeenState = state;
+    }
+
+    // Loads the file again when its modification time or size changed since the last load.
+    // Returns whether a new table was published.
+    public synchronized boolean reloadIfChanged() {
+        if (lookupTableFile == null) {
+            return false;
+        }
+        FileState state = FileState.of(lookupTableFile);
+        if (state == null || state.equals(loadedState)) {
+            return false;
+        }
+        loadTagMappings(lookupTableFile.toString());
+        return true;
     }
 
-    public void loadTagMappings(String lookupTableFilePath) {
+    // Polls the last loaded file on a daemon thread and reloads it once a change has been stable for
+    // one interval, so a file that is still being written is not picked up half-way. A failed reload
+    // keeps the previous table.
+    public synchronized void startWatching(long intervalMillis) {
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lookup-table-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::reloadIfStable, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
 
+    private synchronized void reloadIfStable() {
+        if (lookupTableFile == null) {
+            return;
+        }
+        FileState state = FileState.of(lookupTableFile);
+        boolean stable = state != null && state.equals(lastSeenState);
+        lastSeenState = state;
+        if (!stable || state.equals(loadedState)) {
+            return;
+        }
+        try {
+            loadTagMappings(lookupTableFile.toString());
+            System.err.println("Reloaded lookup table " + lookupTableFile + " (version " + version + ")");
+        } catch (RuntimeException e) {
+            System.err.println("Keeping lookup table version " + version + ", reload of " + lookupTableFile
+                    + " failed: " + e.getMessage());
+            loadedState = state;
+        }
+    }
+
+    // Rows are dstport,protocol,tag with optional source and destination CIDR columns. The port may be
+    // a range such as 8000-8999, and the port or protocol may be * for any. Rows with a CIDR block
+    // become address rules, other rows with a range or wildcard become port range rules.
+    static TagLookupTable readLookupTable(String lookupTableFilePath, long version) {
+        Map<PortProtocolKey, Set<String>> tagMapping = new HashMap<>();
+        List<PortRangeRule> rangeRules = new ArrayList<>();
+        List<AddressRule> addressRules = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(lookupTableFilePath))) {
             String line;
+            int lineNumber = 0;
             while ((line = reader.readLine()) != null) {
+                lineNumber++;
                 try {
                     String[] parts = line.split(",");
 
-                    if (parts.length != 3) {
+                    if (parts.length < 3 || parts.length > 5) {
                         throw new IllegalArgumentException(
-                                "Invalid number of fields. Expected " + 3 +
+                                "Invalid number of fields. Expected 3 to 5" +
                                         " but got " + parts.length + " in line: " + line
                         );
                     }
 
-                    int dstport = Integer.parseInt(parts[0]);
-                    String protocol = parts[1].toLowerCase();
+                    PortRange ports = PortRange.parse(parts[0]);
+                    String protocol = WILDCARD.equals(parts[1]) ? null : parts[1].toLowerCase();
                     String tag = parts[2].toLowerCase();
-                    PortProtocolKey portProtocolKey = new PortProtocolKey(dstport, protocol);
+
+                    Ipv4Prefix sourcePrefix = parts.length > 3 ? parsePrefix(parts[3]) : null;
+                    Ipv4Prefix destinationPrefix = parts.length > 4 ? parsePrefix(parts[4]) : null;
+                    if (sourcePrefix != null || destinationPrefix != null) {
+                        addressRules.add(new AddressRule(ports, protocol, tag, sourcePrefix, destinationPrefix));
+                        continue;
+                    }
+                    if (!ports.isSinglePort() || protocol == null) {
+                        rangeRules.add(new PortRangeRule(ports, protocol, tag, lineNumber, line));
+                        continue;
+                    }
+
+                    PortProtocolKey portProtocolKey = new PortProtocolKey(ports.getFrom(), protocol);
 
                     Set<String> associatedTags = tagMapping.getOrDefault(portProtocolKey, new HashSet<>());
                     associatedTags.add(tag);
@@ -47,13 +157,51 @@ public class TagMapper {
                 }
             }
         } catch (IOException e) {
-            throw new RuntimeException("Error reading flow log file", e);
+            throw new RuntimeException("Error reading lookup table file", e);
         }
-        // System.out.println(tagMapping.toString());
+        TagLookupTable table = TagLookupTable.compile(tagMapping, rangeRules, addressRules, version);
+        for (String overlap : table.getOverlaps()) {
+            System.err.println("Lookup rules overlap, their tags are combined: " + overlap);
+        }
+        return table;
+    }
+
+    // An empty column or * matches any address
+    private static Ipv4Prefix parsePrefix(String value) {
+        String prefix = value.trim();
+        return prefix.isEmpty() || WILDCARD.equals(prefix) ? null : Ipv4Prefix.parse(prefix);
     }
 
-    public Set<String> getAssociatedTags(LogEntry logEntry) {
-        PortProtocolKey key = new PortProtocolKey(logEntry.getDestinationPort(), logEntry.getProtocolAsString());
-        return tagMapping.get(key);
+    // The current table; callers that need a consistent view for a whole run should read it once
+    public TagLookupTable getLookupTable() {
+        return lookupTable;
+    }
+
+    public long getVersion() {
+        return lookupTable.getVersion();
+    }
+
+    // Number of rows loaded: distinct port/protocol combinations plus range and CIDR rules
+    public int getMappingCount() {
+        return lookupTable.getMappingCount();
+    }
+
+    public Set<String> getAssociatedTags(FlowRecord logEntry) {
+        TagLookupTable table = lookupTable;
+        Set<String> tags = table.getTagSet(table.lookup(logEntry.getProtocol(), logEntry.getDestinationPort()));
+        if (!table.hasAddressRules()) {
+            return tags;
+        }
+        int[] tagIds = new int[table.getMaxAddressMatches()];
+        int matches = table.matchAddressRules(logEntry.getSourceAddress(), logEntry.getDestinationAddress(),
+                logEntry.getProtocol(), logEntry.getDestinationPort(), tagIds);
+        if (matches == 0) {
+            return tags;
+        }
+        Set<String> allTags = tags != null ? new LinkedHashSet<>(tags) : new LinkedHashSet<>();
+        for (int i = 0; i < matches; i++) {
+            allTags.add(table.getTagName(tagIds[i]));
+        }
+        return allTags;
     }
 }
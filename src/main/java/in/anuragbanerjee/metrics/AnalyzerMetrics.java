@@ -0,0 +1,249 @@
+package in.anuragbanerjee.metrics;
+
+import in.anuragbanerjee.parser.LogParseException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Shared counters of one analyzer. Workers do not update these directly; they count into their own
+// LineCounters, which are added here in batches. Reset at the start of every run.
+public class AnalyzerMetrics implements AnalyzerMetricsMXBean {
+    public enum Phase {
+        LOOKUP_LOAD,
+        // Reading, parsing, aggregating and merging, measured on the wall clock
+        PROCESS,
+        // Estimated from sampled lines and summed over all workers
+        PARSE,
+        AGGREGATE,
+        WRITE
+    }
+
+    private static final LogParseException.Reason[] REASONS = LogParseException.Reason.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final AtomicLong runCount = new AtomicLong();
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder linesParsed = new LongAdder();
+    private final LongAdder linesFiltered = new LongAdder();
+    private final LongAdder taggedLines = new LongAdder();
+    private final LongAdder untaggedLines = new LongAdder();
+    private final LongAdder[] parseFailures = new LongAdder[REASONS.length];
+    private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+    private volatile int lookupTableEntries;
+    private volatile long lookupTableVersion;
+    private volatile long processStartNanos;
+    private volatile long processEndNanos;
+    // Guarded by this; null unless registered
+    private ObjectName objectName;
+
+    public AnalyzerMetrics() {
+        for (int i = 0; i < parseFailures.length; i++) {
+            parseFailures[i] = new LongAdder();
+        }
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    public synchronized void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("in.anuragbanerjee:type=FlowLogAnalyzer,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Error registering metrics MBean " + name, e);
+        }
+    }
+
+    // Does nothing unless registered
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new RuntimeException("Error unregistering metrics MBean " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    public void startRun() {
+        runCount.incrementAndGet();
+        linesRead.reset();
+        bytesRead.reset();
+        linesParsed.reset();
+        linesFiltered.reset();
+        taggedLines.reset();
+        untaggedLines.reset();
+        for (LongAdder adder : parseFailures) {
+            adder.reset();
+        }
+        for (LongAdder adder : phaseNanos) {
+            adder.reset();
+        }
+        processStartNanos = 0;
+        processEndNanos = 0;
+    }
+
+    public void processingStarted() {
+        processEndNanos = 0;
+        processStartNanos = System.nanoTime();
+    }
+
+    public void processingFinished() {
+        processEndNanos = System.nanoTime();
+        recordPhase(Phase.PROCESS, processEndNanos - processStartNanos);
+    }
+
+    public void recordPhase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    public void setLookupTable(long version, int entries) {
+        lookupTableVersion = version;
+        lookupTableEntries = entries;
+    }
+
+    void addLines(long read, long bytes, long parsed, long filtered, long tagged, long untagged, long[] failures,
+                  long parseNanos, long aggregateNanos) {
+        linesRead.add(read);
+        bytesRead.add(bytes);
+        linesParsed.add(parsed);
+        linesFiltered.add(filtered);
+        taggedLines.add(tagged);
+        untaggedLines.add(untagged);
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != 0) {
+                parseFailures[i].add(failures[i]);
+            }
+        }
+        phaseNanos[Phase.PARSE.ordinal()].add(parseNanos);
+        phaseNanos[Phase.AGGREGATE.ordinal()].add(aggregateNanos);
+    }
+
+    @Override
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getLinesParsed() {
+        return linesParsed.sum();
+    }
+
+    @Override
+    public long getLinesFiltered() {
+        return linesFiltered.sum();
+    }
+
+    @Override
+    public long getParseFailures() {
+        long failures = 0;
+        for (LongAdder adder : parseFailures) {
+            failures += adder.sum();
+        }
+        return failures;
+    }
+
+    @Override
+    public Map<String, Long> getParseFailuresByReason() {
+        Map<String, Long> failures = new LinkedHashMap<>();
+        for (LogParseException.Reason reason : REASONS) {
+            failures.put(reason.name().toLowerCase(Locale.ROOT), parseFailures[reason.ordinal()].sum());
+        }
+        return failures;
+    }
+
+    @Override
+    public long getTaggedLines() {
+        return taggedLines.sum();
+    }
+
+    @Override
+    public long getUntaggedLines() {
+        return untaggedLines.sum();
+    }
+
+    @Override
+    public int getLookupTableEntries() {
+        return lookupTableEntries;
+    }
+
+    @Override
+    public long getLookupTableVersion() {
+        return lookupTableVersion;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> phases = new LinkedHashMap<>();
+        for (Phase phase : PHASES) {
+            phases.put(phase.name().toLowerCase(Locale.ROOT).replace('_', '-'),
+                    TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()].sum()));
+        }
+        return phases;
+    }
+
+    // Average since processing started; while a run is in progress this only includes flushed counters
+    @Override
+    public double getLinesPerSecond() {
+        return perSecond(getLinesRead());
+    }
+
+    @Override
+    public double getMegabytesPerSecond() {
+        return perSecond(getBytesRead()) / (1024.0 * 1024.0);
+    }
+
+    private double perSecond(long value) {
+        long start = processStartNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = processEndNanos != 0 ? processEndNanos : System.nanoTime();
+        return end > start ? value * 1e9 / (end - start) : 0;
+    }
+
+    public void printSummary(PrintStream out) {
+        out.println("Run summary:");
+        out.printf("  Lines read:      %d (%.1f MB)%n", getLinesRead(), getBytesRead() / (1024.0 * 1024.0));
+        out.printf("  Lines parsed:    %d (tagged %d, untagged %d)%n", getLinesParsed(), getTaggedLines(), getUntaggedLines());
+        if (getLinesFiltered() > 0) {
+            out.printf("  Lines filtered:  %d%n", getLinesFiltered());
+        }
+        StringBuilder failures = new StringBuilder();
+        getParseFailuresByReason().forEach((reason, count) -> {
+            if (count > 0) {
+                failures.append(failures.length() == 0 ? " (" : ", ").append(reason).append(' ').append(count);
+            }
+        });
+        out.printf("  Parse failures:  %d%s%n", getParseFailures(), failures.length() == 0 ? "" : failures + ")");
+        out.printf("  Lookup table:    version %d, %d entries%n", getLookupTableVersion(), getLookupTableEntries());
+        Map<String, Long> phases = getPhaseMillis();
+        out.printf("  Phases (ms):     lookup-load %d, process %d (parse ~%d, aggregate ~%d, summed over workers), write %d%n",
+                phases.get("lookup-load"), phases.get("process"), phases.get("parse"), phases.get("aggregate"),
+                phases.get("write"));
+        out.printf("  Throughput:      %.0f lines/s, %.1f MB/s%n", getLinesPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,35 @@
+package in.anuragbanerjee.metrics;
+
+import java.util.Map;
+
+// Counters of the current (or most recent) run of one FlowLogAnalyzer
+public interface AnalyzerMetricsMXBean {
+    long getRunCount();
+
+    long getLinesRead();
+
+    long getBytesRead();
+
+    long getLinesParsed();
+
+    // Lines skipped because they did not match the filter; they are neither parsed nor failures
+    long getLinesFiltered();
+
+    long getParseFailures();
+
+    Map<String, Long> getParseFailuresByReason();
+
+    long getTaggedLines();
+
+    long getUntaggedLines();
+
+    int getLookupTableEntries();
+
+    long getLookupTableVersion();
+
+    Map<String, Long> getPhaseMillis();
+
+    double getLinesPerSecond();
+
+    double getMegabytesPerSecond();
+}
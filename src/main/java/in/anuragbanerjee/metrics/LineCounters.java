@@ -0,0 +1,89 @@
+package in.anuragbanerjee.metrics;
+
+import in.anuragbanerjee.parser.LogParseException;
+
+import java.util.Arrays;
+
+// Plain counters owned by a single worker. They are added to the shared AnalyzerMetrics every
+// FLUSH_INTERVAL lines and on flush(), so the per-line path never writes to memory shared between
+// threads. Parse and aggregate times are measured on one line in SAMPLE_INTERVAL and scaled up,
+// because reading the clock around every line would cost about as much as parsing it.
+public final class LineCounters {
+    private static final int SAMPLE_INTERVAL = 64;
+    private static final int FLUSH_INTERVAL = 1 << 16;
+
+    private final AnalyzerMetrics metrics;
+    private final long[] parseFailures = new long[LogParseException.Reason.values().length];
+    private long linesRead;
+    private long bytesRead;
+    private long linesParsed;
+    private long linesFiltered;
+    private long taggedLines;
+    private long untaggedLines;
+    private long sampledParseNanos;
+    private long sampledAggregateNanos;
+
+    public LineCounters(AnalyzerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // bytes includes the line terminator
+    public void lineRead(int bytes) {
+        if (linesRead == FLUSH_INTERVAL) {
+            flush();
+        }
+        linesRead++;
+        bytesRead += bytes;
+    }
+
+    // Whether the current line should be timed
+    public boolean isSampled() {
+        return linesRead % SAMPLE_INTERVAL == 1;
+    }
+
+    public void sample(long parseNanos, long aggregateNanos) {
+        sampledParseNanos += parseNanos;
+        sampledAggregateNanos += aggregateNanos;
+    }
+
+    // For lines that are parsed without being tagged, e.g. while loading a FlowRecordStore
+    public void lineParsed() {
+        linesParsed++;
+    }
+
+    public void lineParsed(boolean tagged) {
+        linesParsed++;
+        if (tagged) {
+            taggedLines++;
+        } else {
+            untaggedLines++;
+        }
+    }
+
+    // For lines the filter skipped
+    public void lineFiltered() {
+        linesFiltered++;
+    }
+
+    public void parseFailed(IllegalArgumentException e) {
+        parseFailed(LogParseException.reasonOf(e));
+    }
+
+    public void parseFailed(LogParseException.Reason reason) {
+        parseFailures[reason.ordinal()]++;
+    }
+
+    public void flush() {
+        metrics.addLines(linesRead, bytesRead, linesParsed, linesFiltered, taggedLines, untaggedLines, parseFailures,
+                sampledParseNanos * SAMPLE_INTERVAL, sampledAggregateNanos * SAMPLE_INTERVAL);
+        linesRead = 0;
+        bytesRead = 0;
+        linesParsed = 0;
+        linesFiltered = 0;
+        taggedLines = 0;
+        untaggedLines = 0;
+        sampledParseNanos = 0;
+        sampledAggregateNanos = 0;
+        Arrays.fill(parseFailures, 0);
+    }
+}
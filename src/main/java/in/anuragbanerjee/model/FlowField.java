@@ -0,0 +1,67 @@
+package in.anuragbanerjee.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The fields a VPC flow log line can carry, by the names used in custom log formats and in the header
+// line of flow logs delivered to S3. The first fourteen make up the default version 2 format.
+public enum FlowField {
+    VERSION("version"),
+    ACCOUNT_ID("account-id"),
+    INTERFACE_ID("interface-id"),
+    SOURCE_ADDRESS("srcaddr"),
+    DESTINATION_ADDRESS("dstaddr"),
+    SOURCE_PORT("srcport"),
+    DESTINATION_PORT("dstport"),
+    PROTOCOL("protocol"),
+    PACKETS("packets"),
+    BYTES("bytes"),
+    START("start"),
+    END("end"),
+    ACTION("action"),
+    LOG_STATUS("log-status"),
+    // Version 3
+    VPC_ID("vpc-id"),
+    SUBNET_ID("subnet-id"),
+    INSTANCE_ID("instance-id"),
+    TCP_FLAGS("tcp-flags"),
+    TYPE("type"),
+    PACKET_SOURCE_ADDRESS("pkt-srcaddr"),
+    PACKET_DESTINATION_ADDRESS("pkt-dstaddr"),
+    // Version 4
+    REGION("region"),
+    AZ_ID("az-id"),
+    SUBLOCATION_TYPE("sublocation-type"),
+    SUBLOCATION_ID("sublocation-id"),
+    // Version 5
+    PACKET_SOURCE_AWS_SERVICE("pkt-src-aws-service"),
+    PACKET_DESTINATION_AWS_SERVICE("pkt-dst-aws-service"),
+    FLOW_DIRECTION("flow-direction"),
+    TRAFFIC_PATH("traffic-path");
+
+    private static final Map<String, FlowField> BY_NAME = new HashMap<>();
+
+    static {
+        for (FlowField field : values()) {
+            BY_NAME.put(field.fieldName, field);
+        }
+    }
+
+    private final String fieldName;
+
+    FlowField(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    // Accepts both "dstport" and the "${dstport}" form of a log format string; null for unknown names
+    public static FlowField fromName(String name) {
+        if (name.startsWith("${") && name.endsWith("}")) {
+            name = name.substring(2, name.length() - 1);
+        }
+        return BY_NAME.get(name);
+    }
+}
@@ -0,0 +1,33 @@
+package in.anuragbanerjee.model;
+
+public interface FlowRecord {
+    int getVersion();
+    long getAccountId();
+    String getInterfaceId();
+    String getSourceIp();
+    String getDestinationIp();
+    // Packed IPv4 address as an unsigned value, or Ipv4Addresses.NONE when the field is not a dotted quad
+    long getSourceAddress();
+    long getDestinationAddress();
+    int getSourcePort();
+    int getDestinationPort();
+    int getProtocol();
+    int getPackets();
+    long getBytes();
+    long getStartTime();
+    long getEndTime();
+    String getAction();
+    String getLogStatus();
+
+    default String getProtocolAsString() {
+        return LogEntry.protocolToString(getProtocol());
+    }
+
+    default boolean hasValidBytes() {
+        return getBytes() != -1;
+    }
+
+    default boolean hasValidStartTime() {
+        return getStartTime() != -1;
+    }
+}
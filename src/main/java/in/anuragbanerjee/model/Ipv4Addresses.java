@@ -0,0 +1,73 @@
+package in.anuragbanerjee.model;
+
+// IPv4 addresses packed into the 32 bits of an int. Parsing returns the unsigned value as a long so
+// that NONE (-1) can stand for a missing or non-dotted-quad field.
+public final class Ipv4Addresses {
+    public static final long NONE = -1;
+
+    private Ipv4Addresses() {}
+
+    // Accepts only canonical dotted quads: four decimal octets of 0-255 without leading zeros
+    public static long parse(CharSequence value) {
+        return parse(value, 0, value.length());
+    }
+
+    public static long parse(CharSequence value, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+        while (i < end && octets < 4) {
+            int octetStart = i;
+            int octet = 0;
+            while (i < end && i - octetStart < 3 && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+                octet = octet * 10 + value.charAt(i++) - '0';
+            }
+            if (!isOctet(octet, octetStart, i, value.charAt(octetStart) == '0')) {
+                return NONE;
+            }
+            address = (address << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (i >= end || value.charAt(i) != '.') {
+                    return NONE;
+                }
+                i++;
+            }
+        }
+        return octets == 4 && i == end ? address : NONE;
+    }
+
+    public static long parse(byte[] value, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+        while (i < end && octets < 4) {
+            int octetStart = i;
+            int octet = 0;
+            while (i < end && i - octetStart < 3 && value[i] >= '0' && value[i] <= '9') {
+                octet = octet * 10 + value[i++] - '0';
+            }
+            if (!isOctet(octet, octetStart, i, value[octetStart] == '0')) {
+                return NONE;
+            }
+            address = (address << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (i >= end || value[i] != '.') {
+                    return NONE;
+                }
+                i++;
+            }
+        }
+        return octets == 4 && i == end ? address : NONE;
+    }
+
+    public static String format(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    private static boolean isOctet(int octet, int start, int end, boolean leadingZero) {
+        int digits = end - start;
+        return digits > 0 && octet <= 255 && !(leadingZero && digits > 1);
+    }
+}
@@ -1,11 +1,14 @@
 package in.anuragbanerjee.model;
 
-public class LogEntry {
+public class LogEntry implements FlowRecord {
     private final int version;
     private final long accountId;
     private final String interfaceId;
-    private final String sourceIp;
-    private final String destinationIp;
+    // Dotted-quad addresses are kept packed; the text is only kept for "-" and other values
+    private final long sourceAddress;
+    private final long destinationAddress;
+    private final String sourceIpText;
+    private final String destinationIpText;
     private final int sourcePort;
     private final int destinationPort;
     private final int protocol;
@@ -20,8 +23,10 @@ public class LogEntry {
         this.version = builder.version;
         this.accountId = builder.accountId;
         this.interfaceId = builder.interfaceId;
-        this.sourceIp = builder.sourceIp;
-        this.destinationIp = builder.destinationIp;
+        this.sourceAddress = builder.sourceAddress;
+        this.destinationAddress = builder.destinationAddress;
+        this.sourceIpText = builder.sourceAddress == Ipv4Addresses.NONE ? builder.sourceIp : null;
+        this.destinationIpText = builder.destinationAddress == Ipv4Addresses.NONE ? builder.destinationIp : null;
         this.sourcePort = builder.sourcePort;
         this.destinationPort = builder.destinationPort;
         this.protocol = builder.protocol;
@@ -34,84 +39,34 @@ public class LogEntry {
     }
 
     // Getters remain the same
-    public int getVersion() { return version; }
-    public long getAccountId() { return accountId; }
-    public String getInterfaceId() { return interfaceId; }
-    public String getSourceIp() { return sourceIp; }
-    public String getDestinationIp() { return destinationIp; }
-    public int getDestinationPort() { return destinationPort; }
-    public int getSourcePort() { return sourcePort; }
-    public int getProtocol() { return protocol; }
-    public int getPackets() { return packets; }
-    public long getBytes() { return bytes; }
-    public long getStartTime() { return startTime; }
-    public long getEndTime() { return endTime; }
-    public String getAction() { return action; }
-    public String getLogStatus() { return logStatus; }
+    @Override public int getVersion() { return version; }
+    @Override public long getAccountId() { return accountId; }
+    @Override public String getInterfaceId() { return interfaceId; }
+    @Override public String getSourceIp() { return ipText(sourceAddress, sourceIpText); }
+    @Override public String getDestinationIp() { return ipText(destinationAddress, destinationIpText); }
+    @Override public long getSourceAddress() { return sourceAddress; }
+    @Override public long getDestinationAddress() { return destinationAddress; }
+    @Override public int getDestinationPort() { return destinationPort; }
+    @Override public int getSourcePort() { return sourcePort; }
+    @Override public int getProtocol() { return protocol; }
+    @Override public int getPackets() { return packets; }
+    @Override public long getBytes() { return bytes; }
+    @Override public long getStartTime() { return startTime; }
+    @Override public long getEndTime() { return endTime; }
+    @Override public String getAction() { return action; }
+    @Override public String getLogStatus() { return logStatus; }
 
+    @Override
     public String getProtocolAsString() {
-        return (switch (protocol) {
-            case 0 -> "HOPOPT";
-            case 1 -> "ICMP";
-            case 2 -> "IGMP";
-            case 3 -> "GGP";
-            case 4 -> "IPv4";
-            case 5 -> "ST";
-            case 6 -> "TCP";
-            case 17 -> "UDP";
-            case 18 -> "MUX";
-            case 27 -> "RDP";
-            case 28 -> "IRTP";
-            case 29 -> "ISO-TP4";
-            case 30 -> "NETBLT";
-            case 31 -> "MFE-NSP";
-            case 32 -> "MERIT-INP";
-            case 33 -> "DCCP";
-            case 34 -> "3PC";
-            case 35 -> "IDPR";
-            case 36 -> "XTP";
-            case 37 -> "DDP";
-            case 38 -> "IDPR-CMTP";
-            case 39 -> "TP++";
-            case 40 -> "IL";
-            case 41 -> "IPv6";
-            case 42 -> "SDRP";
-            case 43 -> "IPv6-Route";
-            case 44 -> "IPv6-Frag";
-            case 45 -> "IDRP";
-            case 46 -> "RSVP";
-            case 47 -> "GRE";
-            case 48 -> "DSR";
-            case 49 -> "BNA";
-            case 50 -> "ESP";
-            case 51 -> "AH";
-            case 88 -> "EIGRP";
-            case 89 -> "OSPF";
-            case 103 -> "PIM";
-            case 108 -> "IPComp";
-            case 112 -> "VRRP";
-            case 115 -> "L2TP";
-            case 124 -> "ISIS";
-            case 132 -> "SCTP";
-            case 133 -> "FC";
-            case 135 -> "Mobility-Header";
-            case 136 -> "UDPLite";
-            case 137 -> "MPLS-in-IP";
-            case 138 -> "manet";
-            case 139 -> "HIP";
-            case 140 -> "Shim6";
-            case 141 -> "WESP";
-            case 142 -> "ROHC";
-            default -> String.valueOf(protocol);
-        }).toLowerCase();
+        return protocolToString(protocol);
     }
 
-    public boolean hasValidBytes() {
-        return bytes != -1;
+    private static String ipText(long address, String text) {
+        return address != Ipv4Addresses.NONE ? Ipv4Addresses.format((int) address) : text;
     }
 
-    public boolean hasValidStartTime() {
-        return startTime != -1;
+    public static String protocolToString(int protocol) {
+        return Protocols.toName(protocol);
     }
 
     @Override
@@ -120,7 +75,7 @@ public class LogEntry {
                 "LogEntry{version=%d, accountId=%d, interfaceId='%s', sourceIp='%s', destinationIp='%s', " +
                         "sourcePort=%d, destinationPort=%d, protocol=%d, packets=%d, bytes=%d, startTime=%d, " +
                         "endTime=%d, action='%s', logStatus='%s'}",
-                version, accountId, interfaceId, sourceIp, destinationIp, sourcePort, destinationPort,
+                version, accountId, interfaceId, getSourceIp(), getDestinationIp(), sourcePort, destinationPort,
                 protocol, packets, bytes, startTime, endTime, action, logStatus
         );
     }
@@ -132,6 +87,8 @@ public class LogEntry {
         private String interfaceId;
         private String sourceIp;
         private String destinationIp;
+        private long sourceAddress = Ipv4Addresses.NONE;
+        private long destinationAddress = Ipv4Addresses.NONE;
         private int sourcePort;
         private int destinationPort;
         private int protocol;
@@ -161,11 +118,13 @@ public class LogEntry {
 
         public Builder sourceIp(String sourceIp) {
             this.sourceIp = sourceIp;
+            this.sourceAddress = sourceIp != null ? Ipv4Addresses.parse(sourceIp) : Ipv4Addresses.NONE;
             return this;
         }
 
         public Builder destinationIp(String destinationIp) {
             this.destinationIp = destinationIp;
+            this.destinationAddress = destinationIp != null ? Ipv4Addresses.parse(destinationIp) : Ipv4Addresses.NONE;
             return this;
         }
 
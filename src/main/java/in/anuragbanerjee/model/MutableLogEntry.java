@@ -0,0 +1,172 @@
+package in.anuragbanerjee.model;
+
+import java.nio.charset.StandardCharsets;
+
+// Reusable record filled in place by a parsing strategy. Text fields are kept as offsets into the
+// line buffer and only turned into Strings when read, so the contents are valid until the next parse.
+public class MutableLogEntry implements FlowRecord {
+    private static final int INTERFACE_ID = 0;
+    private static final int SOURCE_IP = 1;
+    private static final int DESTINATION_IP = 2;
+    private static final int ACTION = 3;
+    private static final int LOG_STATUS = 4;
+    private static final int TEXT_FIELDS = 5;
+
+    private int version;
+    private long accountId;
+    private long sourceAddress = Ipv4Addresses.NONE;
+    private long destinationAddress = Ipv4Addresses.NONE;
+    private int sourcePort;
+    private int destinationPort;
+    private int protocol;
+    private int packets;
+    private long bytes;
+    private long startTime;
+    private long endTime;
+
+    private byte[] text;
+    private final int[] tokenStart = new int[TEXT_FIELDS];
+    private final int[] tokenEnd = new int[TEXT_FIELDS];
+    private final String[] textValues = new String[TEXT_FIELDS];
+
+    public MutableLogEntry() {}
+
+    public void resetText(byte[] text) {
+        this.text = text;
+        for (int i = 0; i < TEXT_FIELDS; i++) {
+            tokenStart[i] = -1;
+            textValues[i] = null;
+        }
+    }
+
+    public void copyFrom(FlowRecord record) {
+        resetText(null);
+        version = record.getVersion();
+        accountId = record.getAccountId();
+        sourceAddress = record.getSourceAddress();
+        destinationAddress = record.getDestinationAddress();
+        sourcePort = record.getSourcePort();
+        destinationPort = record.getDestinationPort();
+        protocol = record.getProtocol();
+        packets = record.getPackets();
+        bytes = record.getBytes();
+        startTime = record.getStartTime();
+        endTime = record.getEndTime();
+        textValues[INTERFACE_ID] = record.getInterfaceId();
+        textValues[SOURCE_IP] = record.getSourceIp();
+        textValues[DESTINATION_IP] = record.getDestinationIp();
+        textValues[ACTION] = record.getAction();
+        textValues[LOG_STATUS] = record.getLogStatus();
+    }
+
+    public void setVersion(int version) { this.version = version; }
+    public void setAccountId(long accountId) { this.accountId = accountId; }
+    public void setSourceAddress(long sourceAddress) { this.sourceAddress = sourceAddress; }
+    public void setDestinationAddress(long destinationAddress) { this.destinationAddress = destinationAddress; }
+    public void setSourcePort(int sourcePort) { this.sourcePort = sourcePort; }
+    public void setDestinationPort(int destinationPort) { this.destinationPort = destinationPort; }
+    public void setProtocol(int protocol) { this.protocol = protocol; }
+    public void setPackets(int packets) { this.packets = packets; }
+    public void setBytes(long bytes) { this.bytes = bytes; }
+    public void setStartTime(long startTime) { this.startTime = startTime; }
+    public void setEndTime(long endTime) { this.endTime = endTime; }
+
+    // For a field the line does not carry; reads as if the field held "-"
+    public void setMissing(FlowField field) {
+        switch (field) {
+            case VERSION -> version = -1;
+            case ACCOUNT_ID -> accountId = -1;
+            case INTERFACE_ID -> textValues[INTERFACE_ID] = "-";
+            case SOURCE_ADDRESS -> {
+                sourceAddress = Ipv4Addresses.NONE;
+                textValues[SOURCE_IP] = "-1";
+            }
+            case DESTINATION_ADDRESS -> {
+                destinationAddress = Ipv4Addresses.NONE;
+                textValues[DESTINATION_IP] = "-1";
+            }
+            case SOURCE_PORT -> sourcePort = -1;
+            case DESTINATION_PORT -> destinationPort = -1;
+            case PROTOCOL -> protocol = -1;
+            case PACKETS -> packets = -1;
+            case BYTES -> bytes = -1;
+            case START -> startTime = -1;
+            case END -> endTime = -1;
+            case ACTION -> textValues[ACTION] = "-";
+            case LOG_STATUS -> textValues[LOG_STATUS] = "-";
+            default -> {
+                // Not part of the record
+            }
+        }
+    }
+
+    public void setInterfaceIdToken(int start, int end) { setToken(INTERFACE_ID, start, end); }
+    public void setSourceIpToken(int start, int end) { setToken(SOURCE_IP, start, end); }
+    public void setDestinationIpToken(int start, int end) { setToken(DESTINATION_IP, start, end); }
+    public void setActionToken(int start, int end) { setToken(ACTION, start, end); }
+    public void setLogStatusToken(int start, int end) { setToken(LOG_STATUS, start, end); }
+
+    @Override public int getVersion() { return version; }
+    @Override public long getAccountId() { return accountId; }
+    @Override public String getInterfaceId() { return textValue(INTERFACE_ID); }
+    @Override public String getSourceIp() { return ipValue(SOURCE_IP); }
+    @Override public String getDestinationIp() { return ipValue(DESTINATION_IP); }
+    @Override public long getSourceAddress() { return sourceAddress; }
+    @Override public long getDestinationAddress() { return destinationAddress; }
+    @Override public int getSourcePort() { return sourcePort; }
+    @Override public int getDestinationPort() { return destinationPort; }
+    @Override public int getProtocol() { return protocol; }
+    @Override public int getPackets() { return packets; }
+    @Override public long getBytes() { return bytes; }
+    @Override public long getStartTime() { return startTime; }
+    @Override public long getEndTime() { return endTime; }
+    @Override public String getAction() { return textValue(ACTION); }
+    @Override public String getLogStatus() { return textValue(LOG_STATUS); }
+
+    public LogEntry toLogEntry() {
+        return new LogEntry.Builder()
+                .version(version)
+                .accountId(accountId)
+                .interfaceId(getInterfaceId())
+                .sourceIp(getSourceIp())
+                .destinationIp(getDestinationIp())
+                .sourcePort(sourcePort)
+                .destinationPort(destinationPort)
+                .protocol(protocol)
+                .packets(packets)
+                .bytes(bytes)
+                .startTime(startTime)
+                .endTime(endTime)
+                .action(getAction())
+                .logStatus(getLogStatus())
+                .build();
+    }
+
+    private void setToken(int field, int start, int end) {
+        tokenStart[field] = start;
+        tokenEnd[field] = end;
+        textValues[field] = null;
+    }
+
+    private String textValue(int field) {
+        if (textValues[field] == null && tokenStart[field] >= 0) {
+            int start = tokenStart[field];
+            textValues[field] = new String(text, start, tokenEnd[field] - start, StandardCharsets.ISO_8859_1);
+        }
+        return textValues[field];
+    }
+
+    private String ipValue(int field) {
+        if (textValues[field] == null && tokenStart[field] >= 0) {
+            int start = tokenStart[field];
+            boolean missing = tokenEnd[field] - start == 1 && text[start] == '-';
+            textValues[field] = missing ? "-1" : textValue(field);
+        }
+        return textValues[field];
+    }
+
+    @Override
+    public String toString() {
+        return toLogEntry().toString();
+    }
+}
@@ -2,7 +2,7 @@ package in.anuragbanerjee.model;
 
 import java.util.Objects;
 
-public class PortProtocolKey {
+public class PortProtocolKey implements Comparable<PortProtocolKey> {
     private final int port;
     private final String protocol;
 
@@ -32,6 +32,14 @@ public class PortProtocolKey {
         return Objects.hash(getPort(), getProtocol());
     }
 
+    // Keeps the layout of large HashMap bins independent of identity hash codes, so the output order
+    // only depends on the order in which keys were counted
+    @Override
+    public int compareTo(PortProtocolKey other) {
+        int byPort = Integer.compare(port, other.port);
+        return byPort != 0 ? byPort : protocol.compareTo(other.protocol);
+    }
+
     @Override
     public String toString() {
         return "PortProtocolKey{" +
@@ -0,0 +1,106 @@
+package in.anuragbanerjee.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Lower-case IANA protocol names, precomputed for every protocol number that fits in the IP header
+public final class Protocols {
+    public static final int MAX_PROTOCOL_NUMBER = 255;
+
+    private static final String[] NAMES = new String[MAX_PROTOCOL_NUMBER + 1];
+    private static final Map<String, Integer> NUMBERS_BY_NAME = new HashMap<>();
+
+    static {
+        for (int protocol = 0; protocol <= MAX_PROTOCOL_NUMBER; protocol++) {
+            String name = ianaName(protocol);
+            NAMES[protocol] = name != null ? name.toLowerCase() : String.valueOf(protocol);
+            NUMBERS_BY_NAME.put(NAMES[protocol], protocol);
+        }
+    }
+
+    private Protocols() {}
+
+    public static String toName(int protocol) {
+        if (protocol >= 0 && protocol <= MAX_PROTOCOL_NUMBER) {
+            return NAMES[protocol];
+        }
+        return String.valueOf(protocol);
+    }
+
+    // Inverse of toName: returns the protocol number whose name is the given lower-case name, or -1
+    public static int fromName(String name) {
+        Integer protocol = NUMBERS_BY_NAME.get(name);
+        if (protocol != null) {
+            return protocol;
+        }
+        if (name.isEmpty() || name.length() > 10 || name.charAt(0) == '0') {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value > MAX_PROTOCOL_NUMBER && value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    private static String ianaName(int protocol) {
+        return switch (protocol) {
+            case 0 -> "HOPOPT";
+            case 1 -> "ICMP";
+            case 2 -> "IGMP";
+            case 3 -> "GGP";
+            case 4 -> "IPv4";
+            case 5 -> "ST";
+            case 6 -> "TCP";
+            case 17 -> "UDP";
+            case 18 -> "MUX";
+            case 27 -> "RDP";
+            case 28 -> "IRTP";
+            case 29 -> "ISO-TP4";
+            case 30 -> "NETBLT";
+            case 31 -> "MFE-NSP";
+            case 32 -> "MERIT-INP";
+            case 33 -> "DCCP";
+            case 34 -> "3PC";
+            case 35 -> "IDPR";
+            case 36 -> "XTP";
+            case 37 -> "DDP";
+            case 38 -> "IDPR-CMTP";
+            case 39 -> "TP++";
+            case 40 -> "IL";
+            case 41 -> "IPv6";
+            case 42 -> "SDRP";
+            case 43 -> "IPv6-Route";
+            case 44 -> "IPv6-Frag";
+            case 45 -> "IDRP";
+            case 46 -> "RSVP";
+            case 47 -> "GRE";
+            case 48 -> "DSR";
+            case 49 -> "BNA";
+            case 50 -> "ESP";
+            case 51 -> "AH";
+            case 88 -> "EIGRP";
+            case 89 -> "OSPF";
+            case 103 -> "PIM";
+            case 108 -> "IPComp";
+            case 112 -> "VRRP";
+            case 115 -> "L2TP";
+            case 124 -> "ISIS";
+            case 132 -> "SCTP";
+            case 133 -> "FC";
+            case 135 -> "Mobility-Header";
+            case 136 -> "UDPLite";
+            case 137 -> "MPLS-in-IP";
+            case 138 -> "manet";
+            case 139 -> "HIP";
+            case 140 -> "Shim6";
+            case 141 -> "WESP";
+            case 142 -> "ROHC";
+            default -> null;
+        };
+    }
+}
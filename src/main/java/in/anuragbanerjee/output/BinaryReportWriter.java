@@ -0,0 +1,91 @@
+package in.anuragbanerjee.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Compact encoding for programs that read reports. The stream starts with the magic bytes "FLRP" and a
+// version byte (1), followed by records that each start with a type byte:
+//   'S' section: the title, the column count and the column names
+//   'R' row: one cell per column of the section, each a type byte then the value, 1 for text and 2 for
+//       a number
+//   'E' end of the stream, so a truncated file can be told from a complete one
+// Counts are varints (unsigned LEB128), numbers are zigzag varints, and text is a varint byte length
+// followed by UTF-8 bytes. A section without a title has an empty one.
+final class BinaryReportWriter extends ReportWriter {
+    private static final byte[] MAGIC = {'F', 'L', 'R', 'P', 1};
+    private static final byte SECTION = 'S';
+    private static final byte ROW = 'R';
+    private static final byte END = 'E';
+    private static final byte TEXT = 1;
+    private static final byte NUMBER = 2;
+
+    private boolean rowStarted;
+
+    BinaryReportWriter(OutputStream out) throws IOException {
+        super(out);
+        put(MAGIC);
+    }
+
+    @Override
+    public void beginSection(String title, List<String> columns) throws IOException {
+        put(SECTION);
+        putString(title != null ? title : "");
+        putVarint(columns.size());
+        for (String column : columns) {
+            putString(column);
+        }
+    }
+
+    @Override
+    public void text(String value) throws IOException {
+        startRow();
+        put(TEXT);
+        putString(value);
+    }
+
+    @Override
+    public void number(long value) throws IOException {
+        startRow();
+        put(NUMBER);
+        putVarint((value << 1) ^ (value >> 63));
+    }
+
+    @Override
+    public void endRow() {
+        rowStarted = false;
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        put(END);
+    }
+
+    private void startRow() throws IOException {
+        if (!rowStarted) {
+            put(ROW);
+            rowStarted = true;
+        }
+    }
+
+    private void putString(String value) throws IOException {
+        if (isAscii(value)) {
+            putVarint(value.length());
+            putText(value);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            put(bytes);
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+package in.anuragbanerjee.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+// The original report layout: each section is a "Title:" line, a header line and comma-separated rows,
+// with a blank line between sections. Values are written as they are, without quoting.
+final class CsvReportWriter extends ReportWriter {
+    private boolean firstSection = true;
+    private boolean firstCell = true;
+
+    CsvReportWriter(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void beginSection(String title, List<String> columns) throws IOException {
+        if (!firstSection) {
+            put((byte) '\n');
+        }
+        firstSection = false;
+        if (title != null) {
+            putText(title);
+            put((byte) ':');
+            put((byte) '\n');
+        }
+        putText(String.join(",", columns));
+        put((byte) '\n');
+    }
+
+    @Override
+    public void text(String value) throws IOException {
+        separate();
+        putText(value);
+    }
+
+    @Override
+    public void number(long value) throws IOException {
+        separate();
+        putDecimal(value);
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        put((byte) '\n');
+        firstCell = true;
+    }
+
+    private void separate() throws IOException {
+        if (!firstCell) {
+            put((byte) ',');
+        }
+        firstCell = false;
+    }
+}
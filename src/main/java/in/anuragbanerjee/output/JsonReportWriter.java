@@ -0,0 +1,96 @@
+package in.anuragbanerjee.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// JSON lines: one object per row, keyed by the column names, with a "section" member naming the section
+// when it has a title, e.g. {"section":"Tag Counts","Tag":"sv_P2","Count":1}. Numbers are JSON numbers.
+final class JsonReportWriter extends ReportWriter {
+    // '{' plus the section member, and the quoted key and colon of each column, escaped once per section
+    private byte[] rowStart;
+    private byte[][] keys;
+    private int cell;
+
+    JsonReportWriter(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void beginSection(String title, List<String> columns) {
+        rowStart = (title != null ? "{\"section\":" + quote(title) + "," : "{").getBytes(StandardCharsets.UTF_8);
+        keys = new byte[columns.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (quote(columns.get(i)) + ":").getBytes(StandardCharsets.UTF_8);
+        }
+        cell = 0;
+    }
+
+    @Override
+    public void text(String value) throws IOException {
+        key();
+        put((byte) '"');
+        if (needsEscaping(value)) {
+            String quoted = quote(value);
+            putText(quoted.substring(1, quoted.length() - 1));
+        } else {
+            putText(value);
+        }
+        put((byte) '"');
+    }
+
+    @Override
+    public void number(long value) throws IOException {
+        key();
+        putDecimal(value);
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        put((byte) '}');
+        put((byte) '\n');
+        cell = 0;
+    }
+
+    private void key() throws IOException {
+        if (cell == 0) {
+            put(rowStart);
+        } else {
+            put((byte) ',');
+        }
+        put(keys[cell++]);
+    }
+
+    private static boolean needsEscaping(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
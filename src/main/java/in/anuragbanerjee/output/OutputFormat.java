@@ -0,0 +1,38 @@
+package in.anuragbanerjee.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+// How reports are encoded. CSV is the original layout and the default; see the ReportWriter of each format.
+public enum OutputFormat {
+    CSV("text/csv; charset=utf-8"),
+    JSON("application/x-ndjson; charset=utf-8"),
+    BINARY("application/octet-stream");
+
+    private final String contentType;
+
+    OutputFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ReportWriter open(OutputStream out) throws IOException {
+        return switch (this) {
+            case CSV -> new CsvReportWriter(out);
+            case JSON -> new JsonReportWriter(out);
+            case BINARY -> new BinaryReportWriter(out);
+        };
+    }
+
+    public static OutputFormat fromName(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid output format: " + name);
+        }
+    }
+}
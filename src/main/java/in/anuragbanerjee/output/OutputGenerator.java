@@ -2,29 +2,132 @@ package in.anuragbanerjee.output;
 
 import in.anuragbanerjee.model.PortProtocolKey;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
+// Writes reports in one format and row order. With a limit, the count sections only keep the rows with
+// the highest counts, picked without sorting the rest. The defaults write the original CSV report.
 public class OutputGenerator {
+    private final OutputFormat format;
+    private final OutputOrder order;
+    private final int limit;
 
-    public void writeOutput(Map<String, Integer> tagCounts, Map<PortProtocolKey, Integer> portProtocolCounts, String outputFilePath) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))) {
-            writer.write("Tag Counts:\n");
-            writer.write("Tag,Count\n");
-            for (Map.Entry<String, Integer> entry : tagCounts.entrySet()) {
-                writer.write(entry.getKey() + "," + entry.getValue() + "\n");
+    public OutputGenerator() {
+        this(OutputFormat.CSV, OutputOrder.UNSORTED, 0);
+    }
+
+    // limit is the number of rows kept per count section, 0 for all; limited UNSORTED rows come highest
+    // count first
+    public OutputGenerator(OutputFormat format, OutputOrder order, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Output row limit must not be negative but got " + limit);
+        }
+        this.format = format;
+        this.order = order;
+        this.limit = limit;
+    }
+
+    public OutputFormat getFormat() { return format; }
+    public OutputOrder getOrder() { return order; }
+    public int getLimit() { return limit; }
+
+    public void writeOutput(Map<String, Long> tagCounts, Map<PortProtocolKey, Long> portProtocolCounts, String outputFilePath) {
+        writeOutput(tagCounts, portProtocolCounts, List.of(), outputFilePath);
+    }
+
+    public void writeOutput(Map<String, Long> tagCounts, Map<PortProtocolKey, Long> portProtocolCounts,
+                            List<OutputSection> sections, String outputFilePath) {
+        try (ReportWriter writer = open(outputFilePath)) {
+            write(tagCounts, portProtocolCounts, sections, writer);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing output file: " + outputFilePath, e);
+        }
+    }
+
+    // Writes the same report to an open stream, e.g. the body of a query response, and closes it
+    public void writeOutput(Map<String, Long> tagCounts, Map<PortProtocolKey, Long> portProtocolCounts,
+                            List<OutputSection> sections, OutputStream out) throws IOException {
+        try (ReportWriter writer = format.open(out)) {
+            write(tagCounts, portProtocolCounts, sections, writer);
+        }
+    }
+
+    public ReportWriter open(String outputFilePath) throws IOException {
+        // The writer buffers on its own
+        return format.open(new FileOutputStream(outputFilePath));
+    }
+
+    // The counts in output order, cut to the limit. Sections that follow the counts should iterate the
+    // keys of the arranged map, so their rows line up with the counts.
+    public <K extends Comparable<K>> Map<K, Long> arrange(Map<K, Long> counts) {
+        boolean limited = limit > 0 && counts.size() > limit;
+        if (order == OutputOrder.UNSORTED && !limited) {
+            return counts;
+        }
+        Comparator<Map.Entry<K, Long>> byKey = Map.Entry.comparingByKey();
+        Comparator<Map.Entry<K, Long>> byCount = Map.Entry.<K, Long>comparingByValue().reversed().thenComparing(byKey);
+        List<Map.Entry<K, Long>> entries = limited ? top(counts, byCount) : new ArrayList<>(counts.entrySet());
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Map.Entry<K, Long>[] sorted = entries.toArray(Map.Entry[]::new);
+        // Sorts in parallel once there are enough rows to make it pay
+        Arrays.parallelSort(sorted, order == OutputOrder.KEY ? byKey : byCount);
+        Map<K, Long> arranged = new LinkedHashMap<>();
+        for (Map.Entry<K, Long> entry : sorted) {
+            arranged.put(entry.getKey(), entry.getValue());
+        }
+        return arranged;
+    }
+
+    // The limit highest-count entries, kept in a heap whose head is the first to go
+    private <K> List<Map.Entry<K, Long>> top(Map<K, Long> counts, Comparator<Map.Entry<K, Long>> byCount) {
+        PriorityQueue<Map.Entry<K, Long>> kept = new PriorityQueue<>(limit + 1, byCount.reversed());
+        for (Map.Entry<K, Long> entry : counts.entrySet()) {
+            if (kept.size() < limit) {
+                kept.add(entry);
+            } else if (byCount.compare(entry, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(entry);
             }
+        }
+        return new ArrayList<>(kept);
+    }
 
-            writer.write("\nPort/Protocol Combination Counts:\n");
-            writer.write("Port,Protocol,Count\n");
-            for (Map.Entry<PortProtocolKey, Integer> entry : portProtocolCounts.entrySet()) {
-                PortProtocolKey key = entry.getKey();
-                writer.write(key.getPort() + "," + key.getProtocol() + "," + entry.getValue() + "\n");
+    private void write(Map<String, Long> tagCounts, Map<PortProtocolKey, Long> portProtocolCounts,
+                       List<OutputSection> sections, ReportWriter writer) throws IOException {
+        writer.beginSection("Tag Counts", List.of("Tag", "Count"));
+        for (Map.Entry<String, Long> entry : arrange(tagCounts).entrySet()) {
+            writer.text(entry.getKey());
+            writer.number(entry.getValue());
+            writer.endRow();
+        }
+
+        writer.beginSection("Port/Protocol Combination Counts", List.of("Port", "Protocol", "Count"));
+        for (Map.Entry<PortProtocolKey, Long> entry : arrange(portProtocolCounts).entrySet()) {
+            PortProtocolKey key = entry.getKey();
+            writer.number(key.getPort());
+            writer.text(key.getProtocol());
+            writer.number(entry.getValue());
+            writer.endRow();
+        }
+
+        appendSections(sections, writer);
+    }
+
+    // Writes the sections to an open writer, e.g. one that output is streamed to
+    public void appendSections(List<OutputSection> sections, ReportWriter writer) throws IOException {
+        for (OutputSection section : sections) {
+            writer.beginSection(section.getTitle(), section.getColumns());
+            for (Object[] row : section.getRows()) {
+                writer.row(row);
             }
-        } catch (IOException e) {
-            // Handle exception
         }
     }
 
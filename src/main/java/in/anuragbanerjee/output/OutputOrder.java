@@ -0,0 +1,19 @@
+package in.anuragbanerjee.output;
+
+import java.util.Locale;
+
+// Row order of the count sections. UNSORTED keeps the order the counts come in, as reports always had.
+public enum OutputOrder {
+    UNSORTED,
+    // Highest count first, equal counts by key
+    COUNT,
+    KEY;
+
+    public static OutputOrder fromName(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid output order: " + name);
+        }
+    }
+}
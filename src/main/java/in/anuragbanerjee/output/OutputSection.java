@@ -0,0 +1,21 @@
+package in.anuragbanerjee.output;
+
+import java.util.List;
+
+// A section written after the tag and port/protocol counts: a title, column names and rows whose cells
+// are numbers or text
+public final class OutputSection {
+    private final String title;
+    private final List<String> columns;
+    private final List<Object[]> rows;
+
+    public OutputSection(String title, List<String> columns, List<Object[]> rows) {
+        this.title = title;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    public String getTitle() { return title; }
+    public List<String> getColumns() { return columns; }
+    public List<Object[]> getRows() { return rows; }
+}
@@ -0,0 +1,150 @@
+package in.anuragbanerjee.output;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Streams report sections to an output stream through one large buffer. Numbers and ASCII text are
+// encoded straight into the buffer, so writing a row builds no strings. Buffers are pooled and reused
+// by the next writer. Subclasses lay out sections, rows and cells. Not thread-safe.
+public abstract class ReportWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final BlockingQueue<byte[]> IDLE_BUFFERS = new ArrayBlockingQueue<>(4);
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int position;
+    private final byte[] digits = new byte[20];
+
+    protected ReportWriter(OutputStream out) {
+        this.out = out;
+        byte[] idle = IDLE_BUFFERS.poll();
+        this.buffer = idle != null ? idle : new byte[BUFFER_SIZE];
+    }
+
+    // Starts a table with these column names; the title is null for a file that holds a single table
+    public abstract void beginSection(String title, List<String> columns) throws IOException;
+
+    public abstract void text(String value) throws IOException;
+
+    public abstract void number(long value) throws IOException;
+
+    public abstract void endRow() throws IOException;
+
+    // Cells are numbers or text
+    public void row(Object... cells) throws IOException {
+        for (Object cell : cells) {
+            if (cell instanceof Number) {
+                number(((Number) cell).longValue());
+            } else {
+                text(String.valueOf(cell));
+            }
+        }
+        endRow();
+    }
+
+    // Called before the buffer is flushed for the last time
+    protected void finish() throws IOException {}
+
+    // Hands everything written so far to the stream, e.g. to make appended sections visible to readers
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    // The stream is closed even when finishing fails
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            finish();
+            drain();
+        } finally {
+            if (buffer != null) {
+                IDLE_BUFFERS.offer(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    protected final void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = b;
+    }
+
+    protected final void put(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            drain();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // UTF-8, with a fast path for the ASCII strings nearly every report consists of
+    protected final void putText(String value) throws IOException {
+        int length = value.length();
+        if (length > buffer.length - position) {
+            drain();
+        }
+        if (length <= buffer.length - position) {
+            int start = position;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    position = start;
+                    put(value.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buffer[position++] = (byte) c;
+            }
+            return;
+        }
+        put(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected final void putDecimal(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            putText(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (digits.length - start > buffer.length - position) {
+            drain();
+        }
+        System.arraycopy(digits, start, buffer, position, digits.length - start);
+        position += digits.length - start;
+    }
+
+    // Unsigned LEB128
+    protected final void putVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        put((byte) value);
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
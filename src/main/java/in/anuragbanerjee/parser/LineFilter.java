@@ -0,0 +1,273 @@
+package in.anuragbanerjee.parser;
+
+import in.anuragbanerjee.mapper.Ipv4Prefix;
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.model.FlowRecord;
+import in.anuragbanerjee.model.Ipv4Addresses;
+import in.anuragbanerjee.model.Protocols;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A condition on the raw fields of a line, such as "action=REJECT and start>=1620140000 and dstport=22|3389".
+// Clauses are joined by "and"; each compares one field with =, !=, <, <=, > or >=. = and != take one or
+// more values separated by '|', and "-" stands for a field the line does not carry. Numeric fields
+// compare as numbers and the protocol also by name, addresses match CIDR blocks such as 10.0.0.0/8, and
+// the other fields compare as text. The byte-scanning strategies test a line's tokens before decoding
+// anything else, so lines that do not match cost little more than finding their fields; a token that
+// is not a valid value never matches. Immutable, so one filter can be shared by every parser of a run.
+public final class LineFilter {
+    private static final Pattern CLAUSE = Pattern.compile("\\s*([a-z0-9${}-]+)\\s*(!=|<=|>=|=|<|>)\\s*(\\S+)\\s*");
+    private static final Pattern AND = Pattern.compile("\\s+(?i:and)\\s+");
+    private static final byte[] PLACEHOLDER = {'-'};
+
+    private enum Kind { NUMBER, ADDRESS, TEXT }
+
+    private final String expression;
+    private final FlowField[] fields;
+    private final Clause[] clauses;
+
+    private LineFilter(String expression, List<FlowField> fields, List<Clause> clauses) {
+        this.expression = expression;
+        this.fields = fields.toArray(new FlowField[0]);
+        this.clauses = clauses.toArray(new Clause[0]);
+    }
+
+    public static LineFilter parse(String expression) {
+        if (expression.isBlank()) {
+            throw new IllegalArgumentException("Empty filter expression");
+        }
+        List<FlowField> fields = new ArrayList<>();
+        List<Clause> clauses = new ArrayList<>();
+        for (String text : AND.split(expression.trim())) {
+            Matcher matcher = CLAUSE.matcher(text);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Invalid filter clause: " + text);
+            }
+            FlowField field = FlowField.fromName(matcher.group(1));
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown filter field: " + matcher.group(1));
+            }
+            fields.add(field);
+            clauses.add(new Clause(field, matcher.group(2), matcher.group(3)));
+        }
+        return new LineFilter(expression, fields, clauses);
+    }
+
+    public int size() {
+        return clauses.length;
+    }
+
+    public FlowField field(int clause) {
+        return fields[clause];
+    }
+
+    // Whether the token line[start, end) of the clause's field passes the clause
+    public boolean matches(int clause, byte[] line, int start, int end) {
+        return clauses[clause].matches(line, start, end);
+    }
+
+    // For a line that lacks the clause's field
+    public boolean matchesAbsent(int clause) {
+        return clauses[clause].matches(PLACEHOLDER, 0, 1);
+    }
+
+    // Tests the fields of an already parsed record, for strategies that cannot test tokens. Fields the
+    // record does not carry read as "-".
+    public boolean matches(FlowRecord record) {
+        for (int i = 0; i < clauses.length; i++) {
+            String text = textOf(record, fields[i]);
+            byte[] token = (text != null ? text : "-").getBytes(StandardCharsets.ISO_8859_1);
+            if (!clauses[i].matches(token, 0, token.length)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static String textOf(FlowRecord record, FlowField field) {
+        return switch (field) {
+            case VERSION -> Integer.toString(record.getVersion());
+            case ACCOUNT_ID -> optional(record.getAccountId());
+            case INTERFACE_ID -> record.getInterfaceId();
+            case SOURCE_ADDRESS -> record.getSourceIp();
+            case DESTINATION_ADDRESS -> record.getDestinationIp();
+            case SOURCE_PORT -> optional(record.getSourcePort());
+            case DESTINATION_PORT -> Integer.toString(record.getDestinationPort());
+            case PROTOCOL -> Integer.toString(record.getProtocol());
+            case PACKETS -> optional(record.getPackets());
+            case BYTES -> optional(record.getBytes());
+            case START -> optional(record.getStartTime());
+            case END -> optional(record.getEndTime());
+            case ACTION -> record.getAction();
+            case LOG_STATUS -> record.getLogStatus();
+            default -> "-";
+        };
+    }
+
+    // Optional numbers are parsed from "-" as -1
+    private static String optional(long value) {
+        return value == -1 ? "-" : Long.toString(value);
+    }
+
+    private static Kind kindOf(FlowField field) {
+        return switch (field) {
+            case VERSION, ACCOUNT_ID, SOURCE_PORT, DESTINATION_PORT, PROTOCOL, PACKETS, BYTES, START, END, TCP_FLAGS -> Kind.NUMBER;
+            case SOURCE_ADDRESS, DESTINATION_ADDRESS, PACKET_SOURCE_ADDRESS, PACKET_DESTINATION_ADDRESS -> Kind.ADDRESS;
+            default -> Kind.TEXT;
+        };
+    }
+
+    private static final class Clause {
+        private final Kind kind;
+        private final boolean negated;
+        // Whether "-" is one of the values
+        private final boolean placeholder;
+        // Values of = and != for numbers; null for a range
+        private final long[] numbers;
+        // Inclusive range of <, <=, > and >=
+        private final long min;
+        private final long max;
+        private final Ipv4Prefix[] prefixes;
+        private final byte[][] texts;
+
+        Clause(FlowField field, String operator, String value) {
+            this.kind = kindOf(field);
+            this.negated = operator.equals("!=");
+            String name = field.getFieldName();
+            if (!operator.equals("=") && !operator.equals("!=")) {
+                if (kind != Kind.NUMBER) {
+                    throw new IllegalArgumentException("Filter operator " + operator + " needs a numeric field but got " + name);
+                }
+                long bound = number(field, value);
+                this.min = switch (operator) {
+                    case ">" -> bound == Long.MAX_VALUE ? Long.MAX_VALUE : bound + 1;
+                    case ">=" -> bound;
+                    default -> Long.MIN_VALUE;
+                };
+                this.max = switch (operator) {
+                    case "<" -> bound == Long.MIN_VALUE ? Long.MIN_VALUE : bound - 1;
+                    case "<=" -> bound;
+                    default -> Long.MAX_VALUE;
+                };
+                this.placeholder = false;
+                this.numbers = null;
+                this.prefixes = null;
+                this.texts = null;
+                return;
+            }
+            this.min = 0;
+            this.max = 0;
+            List<String> values = new ArrayList<>();
+            boolean hasPlaceholder = false;
+            for (String alternative : value.split("\\|")) {
+                if (alternative.equals("-")) {
+                    hasPlaceholder = true;
+                } else if (!alternative.isEmpty()) {
+                    values.add(alternative);
+                }
+            }
+            this.placeholder = hasPlaceholder;
+            this.numbers = kind == Kind.NUMBER ? new long[values.size()] : null;
+            this.prefixes = kind == Kind.ADDRESS ? new Ipv4Prefix[values.size()] : null;
+            this.texts = kind == Kind.TEXT ? new byte[values.size()][] : null;
+            for (int i = 0; i < values.size(); i++) {
+                switch (kind) {
+                    case NUMBER -> numbers[i] = number(field, values.get(i));
+                    case ADDRESS -> prefixes[i] = Ipv4Prefix.parse(values.get(i));
+                    case TEXT -> texts[i] = values.get(i).getBytes(StandardCharsets.ISO_8859_1);
+                }
+            }
+        }
+
+        private static long number(FlowField field, String value) {
+            if (field == FlowField.PROTOCOL) {
+                int protocol = Protocols.fromName(value.toLowerCase(Locale.ROOT));
+                if (protocol < 0) {
+                    throw new IllegalArgumentException("Invalid protocol in filter: " + value);
+                }
+                return protocol;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in filter for " + field.getFieldName() + ": " + value);
+            }
+        }
+
+        boolean matches(byte[] line, int start, int end) {
+            return matchesValue(line, start, end) != negated;
+        }
+
+        private boolean matchesValue(byte[] line, int start, int end) {
+            if (end - start == 1 && line[start] == '-') {
+                return placeholder;
+            }
+            switch (kind) {
+                case NUMBER -> {
+                    return matchesNumber(line, start, end);
+                }
+                case ADDRESS -> {
+                    long address = Ipv4Addresses.parse(line, start, end);
+                    for (Ipv4Prefix prefix : prefixes) {
+                        if (prefix.contains(address)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                default -> {
+                    for (byte[] text : texts) {
+                        if (text.length == end - start && Arrays.equals(text, 0, text.length, line, start, end)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            }
+        }
+
+        // Same digits as Long.parseLong accepts; a token that is not a number matches nothing
+        private boolean matchesNumber(byte[] line, int start, int end) {
+            int i = start;
+            boolean negative = false;
+            if (i < end && (line[i] == '-' || line[i] == '+')) {
+                negative = line[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return false;
+            }
+            long value = 0;
+            while (i < end) {
+                int digit = line[i++] - '0';
+                if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                    return false;
+                }
+                value = value * 10 + digit;
+            }
+            if (negative) {
+                value = -value;
+            }
+            if (numbers == null) {
+                return value >= min && value <= max;
+            }
+            for (long number : numbers) {
+                if (number == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package in.anuragbanerjee.parser;
+
+// Thrown by the parsing strategies for lines they reject. The reason lets callers count failures
+// without matching on messages.
+public class LogParseException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        FIELD_COUNT,
+        UNSUPPORTED_VERSION,
+        INVALID_IP_ADDRESS,
+        INVALID_PORT,
+        INVALID_PROTOCOL,
+        INVALID_NUMBER,
+        OTHER
+    }
+
+    private final Reason reason;
+
+    public LogParseException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    // Wraps a failure from a single field; the reason is taken from the cause
+    public LogParseException(String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reasonOf(cause);
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public static Reason reasonOf(Throwable e) {
+        if (e instanceof LogParseException) {
+            return ((LogParseException) e).getReason();
+        }
+        if (e instanceof NumberFormatException) {
+            return Reason.INVALID_NUMBER;
+        }
+        return Reason.OTHER;
+    }
+}
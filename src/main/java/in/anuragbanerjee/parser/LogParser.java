@@ -1,10 +1,17 @@
 package in.anuragbanerjee.parser;
 
+import in.anuragbanerjee.model.FlowField;
 import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.model.MutableLogEntry;
 import in.anuragbanerjee.parser.strategy.LogParsingStrategy;
 
+import java.util.Set;
+
 public class LogParser {
     private LogParsingStrategy strategy;
+    private LineFilter filter;
+    // The filter when the strategy leaves it to the parsed records
+    private LineFilter recordFilter;
 
     public LogParser(LogParsingStrategy strategy) {
         this.strategy = strategy;
@@ -12,9 +19,53 @@ public class LogParser {
 
     public void setStrategy(LogParsingStrategy strategy) {
         this.strategy = strategy;
+        filter(filter);
     }
 
     public LogEntry parseLogEntry(String logLine) {
         return strategy.parse(logLine);
     }
+
+    public void parseLogEntry(String logLine, MutableLogEntry target) {
+        strategy.parse(logLine, target);
+    }
+
+    public void parseLogEntry(byte[] line, int offset, int length, MutableLogEntry target) {
+        strategy.parse(line, offset, length, target);
+    }
+
+    // Whether the line was parsed, skipped by the filter or rejected, and why. The parse methods above
+    // do not filter.
+    public ParseResult tryParseLogEntry(String logLine, MutableLogEntry target) {
+        return filtered(strategy.tryParse(logLine, target), target);
+    }
+
+    public ParseResult tryParseLogEntry(byte[] line, int offset, int length, MutableLogEntry target) {
+        return filtered(strategy.tryParse(line, offset, length, target), target);
+    }
+
+    // Only lines that match the filter are parsed; null parses every line
+    public void filter(LineFilter filter) {
+        this.filter = filter;
+        this.recordFilter = strategy.filter(filter) ? null : filter;
+    }
+
+    public void project(Set<FlowField> fields) {
+        strategy.project(fields);
+    }
+
+    public boolean acceptHeader(String line) {
+        return strategy.acceptHeader(line);
+    }
+
+    public boolean acceptHeader(byte[] line, int offset, int length) {
+        return strategy.acceptHeader(line, offset, length);
+    }
+
+    private ParseResult filtered(ParseResult result, MutableLogEntry target) {
+        if (result == ParseResult.PARSED && recordFilter != null && !recordFilter.matches(target)) {
+            return ParseResult.FILTERED;
+        }
+        return result;
+    }
 }
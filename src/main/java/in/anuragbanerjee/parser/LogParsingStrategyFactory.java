@@ -1,12 +1,20 @@
 package in.anuragbanerjee.parser;
 
+import in.anuragbanerjee.parser.strategy.CustomFormatFlowLogStrategy;
 import in.anuragbanerjee.parser.strategy.DefaultVPCFlowLogStrategy;
+import in.anuragbanerjee.parser.strategy.FastVPCFlowLogStrategy;
 import in.anuragbanerjee.parser.strategy.LogParsingStrategy;
 
 public class LogParsingStrategyFactory {
+    // "custom" takes the field order from the log's header line, "custom:<fields>" names it up front
     public static LogParsingStrategy createStrategy(String logFormat) {
+        if (logFormat.toLowerCase().startsWith("custom:")) {
+            return new CustomFormatFlowLogStrategy(logFormat.substring("custom:".length()));
+        }
         return switch (logFormat.toLowerCase()) {
             case "default" -> new DefaultVPCFlowLogStrategy();
+            case "fast-v2" -> new FastVPCFlowLogStrategy();
+            case "custom" -> new CustomFormatFlowLogStrategy();
             default -> throw new IllegalArgumentException("Unsupported log format: " + logFormat);
         };
     }
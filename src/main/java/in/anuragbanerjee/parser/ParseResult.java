@@ -0,0 +1,40 @@
+package in.anuragbanerjee.parser;
+
+// What tryParse made of a line: parsed, skipped because it did not match the parser's LineFilter, or
+// rejected for a reason. Every result is a shared constant, so returning one allocates nothing.
+public final class ParseResult {
+    public static final ParseResult PARSED = new ParseResult(null);
+    public static final ParseResult FILTERED = new ParseResult(null);
+
+    private static final ParseResult[] FAILURES = new ParseResult[LogParseException.Reason.values().length];
+
+    static {
+        for (LogParseException.Reason reason : LogParseException.Reason.values()) {
+            FAILURES[reason.ordinal()] = new ParseResult(reason);
+        }
+    }
+
+    private final LogParseException.Reason reason;
+
+    private ParseResult(LogParseException.Reason reason) {
+        this.reason = reason;
+    }
+
+    public static ParseResult failed(LogParseException.Reason reason) {
+        return FAILURES[reason.ordinal()];
+    }
+
+    // PARSED for a null reason, otherwise the failure
+    public static ParseResult of(LogParseException.Reason failure) {
+        return failure == null ? PARSED : failed(failure);
+    }
+
+    public boolean isFailure() {
+        return reason != null;
+    }
+
+    // null unless the line was rejected
+    public LogParseException.Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,219 @@
+package in.anuragbanerjee.parser.strategy;
+
+import in.anuragbanerjee.model.Ipv4Addresses;
+import in.anuragbanerjee.parser.LineFilter;
+import in.anuragbanerjee.parser.LogParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Whitespace-separated tokens of an ASCII line, located in place, and the field rules the byte-scanning
+// strategies share with DefaultVPCFlowLogStrategy. A field that breaks a rule does not throw: the first
+// failure of the line is recorded and the parse methods return a harmless value, so rejecting a line
+// costs no more than accepting it. failureException() builds the exception DefaultVPCFlowLogStrategy
+// would have thrown, for callers that want one. Reused from line to line; not thread-safe.
+final class AsciiTokens {
+    private int[] start;
+    private int[] end;
+    private int count;
+    private byte[] line;
+    // First failure of the line, with its field and the value the message shows
+    private LogParseException.Reason failure;
+    private int failedField;
+    private long failedValue;
+
+    AsciiTokens(int capacity) {
+        start = new int[capacity];
+        end = new int[capacity];
+    }
+
+    // Same as trim() followed by split("\\s+"): records the first `capacity` tokens and counts them all
+    void split(byte[] line, int offset, int length) {
+        this.line = line;
+        failure = null;
+        // Same as String.trim(): strip everything up to and including ' ' from both ends
+        int first = offset;
+        int last = offset + length;
+        while (first < last && (line[first] & 0xff) <= ' ') first++;
+        while (last > first && (line[last - 1] & 0xff) <= ' ') last--;
+
+        int tokens = 0;
+        int i = first;
+        while (i < last) {
+            int tokenBegin = i;
+            while (i < last && !isWhitespace(line[i])) i++;
+            if (tokens < start.length) {
+                start[tokens] = tokenBegin;
+                end[tokens] = i;
+            }
+            tokens++;
+            while (i < last && isWhitespace(line[i])) i++;
+        }
+        // An empty line splits into one empty token
+        count = first == last ? 1 : tokens;
+    }
+
+    // Room for at least this many tokens; earlier ones are kept
+    void ensureCapacity(int capacity) {
+        if (start.length < capacity) {
+            start = Arrays.copyOf(start, capacity);
+            end = Arrays.copyOf(end, capacity);
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    // null while every field read so far was valid
+    LogParseException.Reason failure() {
+        return failure;
+    }
+
+    // Records a failure unless the line already failed on an earlier field
+    void fail(LogParseException.Reason reason, int field, long value) {
+        if (failure == null) {
+            failure = reason;
+            failedField = field;
+            failedValue = value;
+        }
+    }
+
+    // The exception for the recorded failure, worded as DefaultVPCFlowLogStrategy words it
+    LogParseException failureException(String lineText) {
+        RuntimeException cause = switch (failure) {
+            case INVALID_NUMBER -> new NumberFormatException("For input string: \"" + token(failedField) + "\"");
+            case INVALID_IP_ADDRESS -> new LogParseException(failure, "Invalid IP address format: " + token(failedField));
+            case INVALID_PORT -> new LogParseException(failure, "Invalid port number: " + failedValue);
+            case INVALID_PROTOCOL -> new LogParseException(failure, "Invalid protocol number: " + failedValue);
+            case UNSUPPORTED_VERSION -> new LogParseException(failure, "Unsupported version: " + failedValue);
+            default -> new LogParseException(failure, "Invalid field: " + token(failedField));
+        };
+        return new LogParseException("Error parsing log line: " + lineText, cause);
+    }
+
+    int start(int field) {
+        return start[field];
+    }
+
+    int end(int field) {
+        return end[field];
+    }
+
+    // Whether the tokens pass every clause of the filter; columns[i] is the token of clause i, or -1 if
+    // the line has no such field
+    boolean matches(LineFilter filter, int[] columns) {
+        for (int i = 0; i < columns.length; i++) {
+            int column = columns[i];
+            if (column < 0 ? !filter.matchesAbsent(i) : !filter.matches(i, line, start[column], end[column])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isPlaceholder(int field) {
+        return end[field] - start[field] == 1 && line[start[field]] == '-';
+    }
+
+    // Same as value.split("\\.").length == 4, which ignores trailing empty segments
+    void validateIpAddress(int field) {
+        if (isPlaceholder(field)) return;
+
+        int first = start[field];
+        int last = end[field];
+        while (last > first && line[last - 1] == '.') last--;
+        int segments = 0;
+        if (last > first) {
+            segments = 1;
+            for (int i = first; i < last; i++) {
+                if (line[i] == '.') segments++;
+            }
+        }
+        if (segments != 4) {
+            fail(LogParseException.Reason.INVALID_IP_ADDRESS, field, 0);
+        }
+    }
+
+    long parseAddress(int field) {
+        return isPlaceholder(field) ? Ipv4Addresses.NONE : Ipv4Addresses.parse(line, start[field], end[field]);
+    }
+
+    int parsePort(int field) {
+        int port = (int) parseNumber(field, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (port < 0 || port > 65535) {
+            fail(LogParseException.Reason.INVALID_PORT, field, port);
+        }
+        return port;
+    }
+
+    int parseProtocol(int field) {
+        int protocol = (int) parseNumber(field, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (protocol < 0) {
+            fail(LogParseException.Reason.INVALID_PROTOCOL, field, protocol);
+        }
+        return protocol;
+    }
+
+    long parseOptionalNumber(int field, long min, long max) {
+        return isPlaceholder(field) ? -1 : parseNumber(field, min, max);
+    }
+
+    // Same rules as Integer.parseInt / Long.parseLong for ASCII input; 0 for an invalid number
+    long parseNumber(int field, long min, long max) {
+        int i = start[field];
+        int last = end[field];
+        boolean negative = false;
+        long limit = -Long.MAX_VALUE;
+
+        byte first = line[i];
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = Long.MIN_VALUE;
+            } else if (first != '+') {
+                return invalidNumber(field);
+            }
+            if (last - i == 1) {
+                return invalidNumber(field);
+            }
+            i++;
+        }
+
+        long multiplyMin = limit / 10;
+        long result = 0;
+        while (i < last) {
+            int digit = line[i++] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin) {
+                return invalidNumber(field);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return invalidNumber(field);
+            }
+            result -= digit;
+        }
+        long value = negative ? result : -result;
+        if (value < min || value > max) {
+            return invalidNumber(field);
+        }
+        return value;
+    }
+
+    String token(int field) {
+        return text(line, start[field], end[field] - start[field]);
+    }
+
+    private long invalidNumber(int field) {
+        fail(LogParseException.Reason.INVALID_NUMBER, field, 0);
+        return 0;
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    static String text(byte[] line, int offset, int length) {
+        return new String(line, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,244 @@
+package in.anuragbanerjee.parser.strategy;
+
+import in.anuragbanerjee.model.FlowField;
+import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.model.MutableLogEntry;
+import in.anuragbanerjee.parser.LineFilter;
+import in.anuragbanerjee.parser.LogParseException;
+import in.anuragbanerjee.parser.ParseResult;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// Parses flow logs in a custom format (versions 2 to 5). The field order comes from a format string such
+// as "${version} ${vpc-id} ${srcaddr} ...", or from the header line that starts flow logs delivered to
+// S3; until either is known the default version 2 order is assumed. Only the projected fields are
+// decoded and validated, the others are just counted, so a wide format parses about as fast as a narrow
+// one. Fields outside the projection are left as they were; projected fields the format lacks read as
+// "-", except that the destination port and protocol are required. Columns with unknown names are
+// skipped. Keeps per-line state, so an instance must not be shared between threads.
+public class CustomFormatFlowLogStrategy implements LogParsingStrategy {
+    private static final List<FlowField> DEFAULT_LAYOUT = Arrays.asList(FlowField.values()).subList(0, 14);
+    private static final Set<FlowField> REQUIRED = EnumSet.of(FlowField.DESTINATION_PORT, FlowField.PROTOCOL);
+
+    private final MutableLogEntry scratchEntry = new MutableLogEntry();
+    private final AsciiTokens tokens = new AsciiTokens(DEFAULT_LAYOUT.size());
+    private Set<FlowField> projection = EnumSet.allOf(FlowField.class);
+    // Field of each column, null for columns with unknown names
+    private List<FlowField> layout;
+
+    // Columns to decode and their fields, in line order
+    private int[] decodedColumns;
+    private FlowField[] decodedFields;
+    // Projected fields the layout lacks
+    private FlowField[] absentFields;
+    private String missingRequired;
+    private LineFilter filter;
+    // Column of each filter clause, -1 for fields the layout lacks
+    private int[] filterColumns;
+
+    public CustomFormatFlowLogStrategy() {
+        setLayout(DEFAULT_LAYOUT);
+    }
+
+    public CustomFormatFlowLogStrategy(String format) {
+        List<FlowField> fields = new ArrayList<>();
+        for (String name : format.trim().split("\\s+")) {
+            FlowField field = FlowField.fromName(name);
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown flow log field: " + name);
+            }
+            fields.add(field);
+        }
+        setLayout(fields);
+    }
+
+    @Override
+    public void project(Set<FlowField> fields) {
+        projection = EnumSet.copyOf(fields);
+        plan();
+    }
+
+    @Override
+    public boolean filter(LineFilter filter) {
+        this.filter = filter;
+        plan();
+        return true;
+    }
+
+    // A line is a header if its first token names a field
+    @Override
+    public boolean acceptHeader(byte[] line, int offset, int length) {
+        int first = offset;
+        int last = offset + length;
+        while (first < last && AsciiTokens.isWhitespace(line[first])) first++;
+        int end = first;
+        // Field names are lower case letters and dashes, which rules out data lines cheaply
+        while (end < last && (line[end] >= 'a' && line[end] <= 'z' || line[end] == '-')) end++;
+        if (end == first || end < last && !AsciiTokens.isWhitespace(line[end])
+                || FlowField.fromName(AsciiTokens.text(line, first, end - first)) == null) {
+            return false;
+        }
+
+        List<FlowField> fields = new ArrayList<>();
+        for (String name : AsciiTokens.text(line, offset, length).trim().split("\\s+")) {
+            fields.add(FlowField.fromName(name));
+        }
+        setLayout(fields);
+        return true;
+    }
+
+    @Override
+    public boolean acceptHeader(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.charAt(0) < 'a' || trimmed.charAt(0) > 'z') {
+            return false;
+        }
+        byte[] bytes = line.getBytes(Charset.defaultCharset());
+        return acceptHeader(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public LogEntry parse(String logLine) {
+        parse(logLine, scratchEntry);
+        return scratchEntry.toLogEntry();
+    }
+
+    @Override
+    public void parse(String logLine, MutableLogEntry target) {
+        byte[] line = logLine.getBytes(Charset.defaultCharset());
+        parse(line, 0, line.length, target);
+    }
+
+    @Override
+    public void parse(byte[] line, int offset, int length, MutableLogEntry target) {
+        LogParseException.Reason failure = decode(line, offset, length, target, null).getReason();
+        if (failure == LogParseException.Reason.FIELD_COUNT) {
+            throw new LogParseException(LogParseException.Reason.FIELD_COUNT,
+                    "Invalid number of fields. Expected " + layout.size() +
+                            " but got " + tokens.count() + " in log line: " + AsciiTokens.text(line, offset, length)
+            );
+        }
+        if (failure == LogParseException.Reason.OTHER && missingRequired != null) {
+            throw new LogParseException(LogParseException.Reason.OTHER,
+                    "Log format has no " + missingRequired + " field: " + AsciiTokens.text(line, offset, length));
+        }
+        if (failure != null) {
+            throw tokens.failureException(AsciiTokens.text(line, offset, length));
+        }
+    }
+
+    @Override
+    public ParseResult tryParse(String logLine, MutableLogEntry target) {
+        byte[] line = logLine.getBytes(Charset.defaultCharset());
+        return tryParse(line, 0, line.length, target);
+    }
+
+    @Override
+    public ParseResult tryParse(byte[] line, int offset, int length, MutableLogEntry target) {
+        return decode(line, offset, length, target, filter);
+    }
+
+    // A line that does not match the filter is skipped before any field is decoded or validated
+    private ParseResult decode(byte[] line, int offset, int length, MutableLogEntry target, LineFilter filter) {
+        tokens.split(line, offset, length);
+        if (tokens.count() != layout.size()) {
+            return ParseResult.failed(LogParseException.Reason.FIELD_COUNT);
+        }
+        if (missingRequired != null) {
+            return ParseResult.failed(LogParseException.Reason.OTHER);
+        }
+        if (filter != null && !tokens.matches(filter, filterColumns)) {
+            return ParseResult.FILTERED;
+        }
+
+        target.resetText(line);
+        for (int i = 0; i < decodedColumns.length; i++) {
+            decodeField(decodedFields[i], decodedColumns[i], target);
+        }
+        for (FlowField field : absentFields) {
+            target.setMissing(field);
+        }
+        return ParseResult.of(tokens.failure());
+    }
+
+    private void decodeField(FlowField field, int column, MutableLogEntry target) {
+        switch (field) {
+            case VERSION -> target.setVersion(parseVersion(column));
+            case ACCOUNT_ID -> target.setAccountId(tokens.parseOptionalNumber(column, Long.MIN_VALUE, Long.MAX_VALUE));
+            case INTERFACE_ID -> target.setInterfaceIdToken(tokens.start(column), tokens.end(column));
+            case SOURCE_ADDRESS -> {
+                tokens.validateIpAddress(column);
+                target.setSourceIpToken(tokens.start(column), tokens.end(column));
+                target.setSourceAddress(tokens.parseAddress(column));
+            }
+            case DESTINATION_ADDRESS -> {
+                tokens.validateIpAddress(column);
+                target.setDestinationIpToken(tokens.start(column), tokens.end(column));
+                target.setDestinationAddress(tokens.parseAddress(column));
+            }
+            case SOURCE_PORT -> target.setSourcePort(tokens.isPlaceholder(column) ? -1 : tokens.parsePort(column));
+            case DESTINATION_PORT -> target.setDestinationPort(tokens.parsePort(column));
+            case PROTOCOL -> target.setProtocol(tokens.parseProtocol(column));
+            case PACKETS -> target.setPackets((int) tokens.parseOptionalNumber(column, Integer.MIN_VALUE, Integer.MAX_VALUE));
+            case BYTES -> target.setBytes(tokens.parseOptionalNumber(column, Long.MIN_VALUE, Long.MAX_VALUE));
+            case START -> target.setStartTime(tokens.parseOptionalNumber(column, Long.MIN_VALUE, Long.MAX_VALUE));
+            case END -> target.setEndTime(tokens.parseOptionalNumber(column, Long.MIN_VALUE, Long.MAX_VALUE));
+            case ACTION -> target.setActionToken(tokens.start(column), tokens.end(column));
+            case LOG_STATUS -> target.setLogStatusToken(tokens.start(column), tokens.end(column));
+            default -> {
+                // Not part of the record, never planned
+            }
+        }
+    }
+
+    private int parseVersion(int column) {
+        int version = (int) tokens.parseNumber(column, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (version < 2 || version > 5) {
+            tokens.fail(LogParseException.Reason.UNSUPPORTED_VERSION, column, version);
+        }
+        return version;
+    }
+
+    private void setLayout(List<FlowField> fields) {
+        layout = fields;
+        tokens.ensureCapacity(fields.size());
+        plan();
+    }
+
+    private void plan() {
+        Set<FlowField> recordFields = EnumSet.copyOf(DEFAULT_LAYOUT);
+        recordFields.retainAll(projection);
+        List<Integer> columns = new ArrayList<>();
+        List<FlowField> fields = new ArrayList<>();
+        for (int column = 0; column < layout.size(); column++) {
+            FlowField field = layout.get(column);
+            if (field != null && recordFields.remove(field)) {
+                columns.add(column);
+                fields.add(field);
+            }
+        }
+        decodedColumns = columns.stream().mapToInt(Integer::intValue).toArray();
+        decodedFields = fields.toArray(new FlowField[0]);
+        absentFields = recordFields.toArray(new FlowField[0]);
+
+        missingRequired = null;
+        for (FlowField field : REQUIRED) {
+            if (!layout.contains(field)) {
+                missingRequired = field.getFieldName();
+                break;
+            }
+        }
+
+        if (filter != null) {
+            filterColumns = new int[filter.size()];
+            for (int i = 0; i < filterColumns.length; i++) {
+                filterColumns[i] = layout.indexOf(filter.field(i));
+            }
+        }
+    }
+}
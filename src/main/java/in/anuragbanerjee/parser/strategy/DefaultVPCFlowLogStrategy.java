@@ -1,6 +1,7 @@
 package in.anuragbanerjee.parser.strategy;
 
 import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.parser.LogParseException;
 
 public class DefaultVPCFlowLogStrategy implements LogParsingStrategy {
     private static final int EXPECTED_FIELDS = 14;
@@ -10,7 +11,7 @@ public class DefaultVPCFlowLogStrategy implements LogParsingStrategy {
         String[] fields = logLine.trim().split("\\s+");
 
         if (fields.length != EXPECTED_FIELDS) {
-            throw new IllegalArgumentException(
+            throw new LogParseException(LogParseException.Reason.FIELD_COUNT,
                     "Invalid number of fields. Expected " + EXPECTED_FIELDS +
                             " but got " + fields.length + " in log line: " + logLine
             );
@@ -34,14 +35,14 @@ public class DefaultVPCFlowLogStrategy implements LogParsingStrategy {
                     .logStatus(fields[13])
                     .build();
         } catch (Exception e) {
-            throw new IllegalArgumentException("Error parsing log line: " + logLine, e);
+            throw new LogParseException("Error parsing log line: " + logLine, e);
         }
     }
 
     private int parseVersion(String value) {
         int version = Integer.parseInt(value);
         if (version != 2) {
-            throw new IllegalArgumentException("Unsupported version: " + version);
+            throw new LogParseException(LogParseException.Reason.UNSUPPORTED_VERSION, "Unsupported version: " + version);
         }
         return version;
     }
@@ -51,7 +52,7 @@ public class DefaultVPCFlowLogStrategy implements LogParsingStrategy {
 
         String[] octets = value.split("\\.");
         if (octets.length != 4) {
-            throw new IllegalArgumentException("Invalid IP address format: " + value);
+            throw new LogParseException(LogParseException.Reason.INVALID_IP_ADDRESS, "Invalid IP address format: " + value);
         }
         return value;
     }
@@ -60,7 +61,7 @@ public class DefaultVPCFlowLogStrategy implements LogParsingStrategy {
         if (value.equals("-")) return -1;
         int port = Integer.parseInt(value);
         if (port < 0 || port > 65535) {
-            throw new IllegalArgumentException("Invalid port number: " + port);
+            throw new LogParseException(LogParseException.Reason.INVALID_PORT, "Invalid port number: " + port);
         }
         return port;
     }
@@ -68,7 +69,7 @@ public class DefaultVPCFlowLogStrategy implements LogParsingStrategy {
     private int parseDesPort(String value) {
         int port = Integer.parseInt(value);
         if (port < 0 || port > 65535) {
-            throw new IllegalArgumentException("Invalid port number: " + port);
+            throw new LogParseException(LogParseException.Reason.INVALID_PORT, "Invalid port number: " + port);
         }
         return port;
     }
@@ -76,7 +77,7 @@ public class DefaultVPCFlowLogStrategy implements LogParsingStrategy {
     private int parseProtocol(String value) {
         int protocol = Integer.parseInt(value);
         if (protocol < 0) {
-            throw new IllegalArgumentException("Invalid protocol number: " + protocol);
+            throw new LogParseException(LogParseException.Reason.INVALID_PROTOCOL, "Invalid protocol number: " + protocol);
         }
         return protocol;
     }
@@ -0,0 +1,163 @@
+package in.anuragbanerjee.parser.strategy;
+
+import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.model.MutableLogEntry;
+import in.anuragbanerjee.parser.LineFilter;
+import in.anuragbanerjee.parser.LogParseException;
+import in.anuragbanerjee.parser.ParseResult;
+
+import java.nio.charset.Charset;
+
+// Scans the line in place instead of trimming and splitting it with regular expressions. Accepts and
+// rejects the same lines as DefaultVPCFlowLogStrategy; lines with non-ASCII characters are handed to
+// it directly. Keeps a reusable line buffer, so an instance must not be shared between threads.
+public class FastVPCFlowLogStrategy implements LogParsingStrategy {
+    private static final int EXPECTED_FIELDS = 14;
+
+    private final DefaultVPCFlowLogStrategy fallbackStrategy = new DefaultVPCFlowLogStrategy();
+    private final MutableLogEntry scratchEntry = new MutableLogEntry();
+    private final AsciiTokens tokens = new AsciiTokens(EXPECTED_FIELDS);
+    private byte[] lineBuffer = new byte[256];
+    private LineFilter filter;
+    // Token of each filter clause: the field's position in the version 2 format, or -1
+    private int[] filterColumns;
+
+    @Override
+    public LogEntry parse(String logLine) {
+        parse(logLine, scratchEntry);
+        return scratchEntry.toLogEntry();
+    }
+
+    @Override
+    public void parse(String logLine, MutableLogEntry target) {
+        if (!toAscii(logLine)) {
+            fallbackStrategy.parse(logLine, target);
+            return;
+        }
+        parseAscii(lineBuffer, 0, logLine.length(), target);
+    }
+
+    @Override
+    public void parse(byte[] line, int offset, int length, MutableLogEntry target) {
+        if (!isAscii(line, offset, length)) {
+            fallbackStrategy.parse(new String(line, offset, length, Charset.defaultCharset()), target);
+            return;
+        }
+        parseAscii(line, offset, length, target);
+    }
+
+    @Override
+    public ParseResult tryParse(String logLine, MutableLogEntry target) {
+        if (!toAscii(logLine)) {
+            return filterRecord(fallbackStrategy.tryParse(logLine, target), target);
+        }
+        return decode(lineBuffer, 0, logLine.length(), target, filter);
+    }
+
+    @Override
+    public ParseResult tryParse(byte[] line, int offset, int length, MutableLogEntry target) {
+        if (!isAscii(line, offset, length)) {
+            return filterRecord(fallbackStrategy.tryParse(line, offset, length, target), target);
+        }
+        return decode(line, offset, length, target, filter);
+    }
+
+    @Override
+    public boolean filter(LineFilter filter) {
+        this.filter = filter;
+        if (filter != null) {
+            filterColumns = new int[filter.size()];
+            for (int i = 0; i < filterColumns.length; i++) {
+                int ordinal = filter.field(i).ordinal();
+                filterColumns[i] = ordinal < EXPECTED_FIELDS ? ordinal : -1;
+            }
+        }
+        return true;
+    }
+
+    // Lines the fallback parsed can only be tested as records
+    private ParseResult filterRecord(ParseResult result, MutableLogEntry target) {
+        if (result == ParseResult.PARSED && filter != null && !filter.matches(target)) {
+            return ParseResult.FILTERED;
+        }
+        return result;
+    }
+
+    // Copies the line into lineBuffer unless it has non-ASCII characters
+    private boolean toAscii(String logLine) {
+        int length = logLine.length();
+        if (lineBuffer.length < length) {
+            lineBuffer = new byte[Math.max(length, lineBuffer.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = logLine.charAt(i);
+            if (c >= 0x80) {
+                return false;
+            }
+            lineBuffer[i] = (byte) c;
+        }
+        return true;
+    }
+
+    private static boolean isAscii(byte[] line, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (line[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseAscii(byte[] line, int offset, int length, MutableLogEntry target) {
+        ParseResult result = decode(line, offset, length, target, null);
+        if (result.getReason() == LogParseException.Reason.FIELD_COUNT) {
+            throw new LogParseException(LogParseException.Reason.FIELD_COUNT,
+                    "Invalid number of fields. Expected " + EXPECTED_FIELDS +
+                            " but got " + tokens.count() + " in log line: " + AsciiTokens.text(line, offset, length)
+            );
+        }
+        if (result.isFailure()) {
+            throw tokens.failureException(AsciiTokens.text(line, offset, length));
+        }
+    }
+
+    // A line that does not match the filter is skipped before any field is decoded or validated
+    private ParseResult decode(byte[] line, int offset, int length, MutableLogEntry target, LineFilter filter) {
+        tokens.split(line, offset, length);
+        if (tokens.count() != EXPECTED_FIELDS) {
+            return ParseResult.failed(LogParseException.Reason.FIELD_COUNT);
+        }
+        if (filter != null && !tokens.matches(filter, filterColumns)) {
+            return ParseResult.FILTERED;
+        }
+
+        target.resetText(line);
+        target.setVersion(parseVersion(0));
+        target.setAccountId(tokens.parseOptionalNumber(1, Long.MIN_VALUE, Long.MAX_VALUE));
+        target.setInterfaceIdToken(tokens.start(2), tokens.end(2));
+        tokens.validateIpAddress(3);
+        target.setSourceIpToken(tokens.start(3), tokens.end(3));
+        target.setSourceAddress(tokens.parseAddress(3));
+        tokens.validateIpAddress(4);
+        target.setDestinationIpToken(tokens.start(4), tokens.end(4));
+        target.setDestinationAddress(tokens.parseAddress(4));
+        target.setSourcePort(tokens.isPlaceholder(5) ? -1 : tokens.parsePort(5));
+        target.setDestinationPort(tokens.parsePort(6));
+        target.setProtocol(tokens.parseProtocol(7));
+        target.setPackets((int) tokens.parseOptionalNumber(8, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        target.setBytes(tokens.parseOptionalNumber(9, Long.MIN_VALUE, Long.MAX_VALUE));
+        target.setStartTime(tokens.parseOptionalNumber(10, Long.MIN_VALUE, Long.MAX_VALUE));
+        target.setEndTime(tokens.parseOptionalNumber(11, Long.MIN_VALUE, Long.MAX_VALUE));
+        target.setActionToken(tokens.start(12), tokens.end(12));
+        target.setLogStatusToken(tokens.start(13), tokens.end(13));
+        return ParseResult.of(tokens.failure());
+    }
+
+    private int parseVersion(int field) {
+        int version = (int) tokens.parseNumber(field, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (version != 2) {
+            tokens.fail(LogParseException.Reason.UNSUPPORTED_VERSION, field, version);
+        }
+        return version;
+    }
+}
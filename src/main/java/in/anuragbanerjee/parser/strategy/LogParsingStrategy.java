@@ -1,7 +1,63 @@
 package in.anuragbanerjee.parser.strategy;
 
+import in.anuragbanerjee.model.FlowField;
 import in.anuragbanerjee.model.LogEntry;
+import in.anuragbanerjee.model.MutableLogEntry;
+import in.anuragbanerjee.parser.LineFilter;
+import in.anuragbanerjee.parser.LogParseException;
+import in.anuragbanerjee.parser.ParseResult;
+
+import java.nio.charset.Charset;
+import java.util.Set;
 
 public interface LogParsingStrategy {
     LogEntry parse(String logLine);
+
+    default void parse(String logLine, MutableLogEntry target) {
+        target.copyFrom(parse(logLine));
+    }
+
+    default void parse(byte[] line, int offset, int length, MutableLogEntry target) {
+        parse(new String(line, offset, length, Charset.defaultCharset()), target);
+    }
+
+    // Parses like parse() but returns why a line is rejected instead of throwing. Strategies that
+    // override it reject a line without building an exception or a message.
+    default ParseResult tryParse(String logLine, MutableLogEntry target) {
+        try {
+            parse(logLine, target);
+            return ParseResult.PARSED;
+        } catch (IllegalArgumentException e) {
+            return ParseResult.failed(LogParseException.reasonOf(e));
+        }
+    }
+
+    default ParseResult tryParse(byte[] line, int offset, int length, MutableLogEntry target) {
+        try {
+            parse(line, offset, length, target);
+            return ParseResult.PARSED;
+        } catch (IllegalArgumentException e) {
+            return ParseResult.failed(LogParseException.reasonOf(e));
+        }
+    }
+
+    // The fields the caller reads from parsed records; a strategy may skip decoding the others
+    default void project(Set<FlowField> fields) {}
+
+    // Makes tryParse() skip lines that do not match the filter with ParseResult.FILTERED, testing their raw
+    // fields before decoding the rest. Returns false if the strategy cannot, in which case LogParser
+    // tests the parsed records instead. null removes the filter.
+    default boolean filter(LineFilter filter) {
+        return false;
+    }
+
+    // Whether the line is a header naming the fields of the lines after it; a strategy that takes its
+    // field order from the header returns true and parses the following lines by it
+    default boolean acceptHeader(byte[] line, int offset, int length) {
+        return false;
+    }
+
+    default boolean acceptHeader(String line) {
+        return false;
+    }
 }
@@ -0,0 +1,81 @@
+package in.anuragbanerjee.sketch;
+
+import in.anuragbanerjee.model.FlowRecord;
+import in.anuragbanerjee.model.Ipv4Addresses;
+
+// Top talkers of a run in fixed memory: one Space-Saving summary each for source addresses,
+// destination addresses and conversations (source, destination, destination port), weighted by
+// flow count or by bytes. Records whose address is not a dotted quad are left out of the summaries
+// that need it.
+public final class HeavyHitters {
+    public enum Metric { FLOWS, BYTES }
+
+    public enum Key { SOURCE_IP, DESTINATION_IP, CONVERSATION }
+
+    private final Metric metric;
+    private final SpaceSaving[] summaries = new SpaceSaving[Key.values().length];
+
+    // capacity is the number of keys each summary monitors; it bounds both memory and the error
+    public HeavyHitters(Metric metric, int capacity) {
+        this.metric = metric;
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = new SpaceSaving(capacity);
+        }
+    }
+
+    public void add(FlowRecord record) {
+        long weight = metric == Metric.FLOWS ? 1 : record.getBytes();
+        if (weight <= 0) {
+            // Includes flows without a byte count
+            return;
+        }
+        long source = record.getSourceAddress();
+        long destination = record.getDestinationAddress();
+        if (source != Ipv4Addresses.NONE) {
+            summaries[Key.SOURCE_IP.ordinal()].add(source, 0, weight);
+        }
+        if (destination != Ipv4Addresses.NONE) {
+            summaries[Key.DESTINATION_IP.ordinal()].add(destination, 0, weight);
+            if (source != Ipv4Addresses.NONE) {
+                summaries[Key.CONVERSATION.ordinal()].add(source << 32 | destination, record.getDestinationPort(), weight);
+            }
+        }
+    }
+
+    public void merge(HeavyHitters other) {
+        if (other.metric != metric) {
+            throw new IllegalArgumentException("Cannot merge heavy hitters by " + other.metric + " into heavy hitters by " + metric);
+        }
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i].merge(other.summaries[i]);
+        }
+    }
+
+    public void clear() {
+        for (SpaceSaving summary : summaries) {
+            summary.clear();
+        }
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    public int getCapacity() {
+        return summaries[0].getCapacity();
+    }
+
+    public SpaceSaving getSummary(Key key) {
+        return summaries[key.ordinal()];
+    }
+
+    // The key of an entry as report columns: the address, or source, destination and port for a
+    // conversation
+    public static Object[] keyColumns(Key key, SpaceSaving.Entry entry) {
+        if (key != Key.CONVERSATION) {
+            return new Object[]{Ipv4Addresses.format((int) entry.getKey())};
+        }
+        return new Object[]{Ipv4Addresses.format((int) (entry.getKey() >>> 32)), Ipv4Addresses.format((int) entry.getKey()),
+                entry.getSubKey()};
+    }
+}
@@ -0,0 +1,229 @@
+package in.anuragbanerjee.sketch;
+
+// HyperLogLog estimate of the number of distinct values added, e.g. distinct source IPs. The hash of
+// each value picks one of 2^precision registers, which keeps the longest run of leading zeros seen in
+// the rest of the hash. The relative standard error is about 1.04 / sqrt(2^precision): 1.6% at the
+// default precision of 12. Two sketches of the same precision merge by taking the larger register, so
+// the merge of per-chunk or per-run sketches is the sketch of all their values.
+//
+// Most keys see few distinct values, so a sketch starts sparse: a small hash table of the registers
+// that are set. It switches to one byte per register once the table would take as much memory.
+// Not thread-safe.
+public final class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final int registerCount;
+
+    // Sparse registers as (index << 8 | value) entries with linear probing, 0 marks an empty bucket;
+    // null once the sketch is dense
+    private int[] sparse = new int[8];
+    private int sparseSize;
+    private byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION + " but got " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+    }
+
+    // Murmur3 finalizer; spreads consecutive addresses over the whole hash
+    public static long hash(long value) {
+        long hash = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    public static long hash(CharSequence value) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash(hash);
+    }
+
+    // Adds a value by its 64-bit hash (see hash())
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Leading zeros of the remaining bits plus one; the sentinel bit caps it at 64 - precision + 1
+        int value = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        setRegister(index, value);
+    }
+
+    // Raises a register to at least the given value
+    public void setRegister(int index, int value) {
+        if (registers != null) {
+            if (registers[index] < value) {
+                registers[index] = (byte) value;
+            }
+            return;
+        }
+        int mask = sparse.length - 1;
+        for (int bucket = sparseBucket(index, mask); ; bucket = (bucket + 1) & mask) {
+            int entry = sparse[bucket];
+            if (entry == 0) {
+                sparse[bucket] = index << 8 | value;
+                sparseSize++;
+                if (sparseSize * 2 > sparse.length) {
+                    growSparse();
+                }
+                return;
+            }
+            if (entry >>> 8 == index) {
+                if ((entry & 0xFF) < value) {
+                    sparse[bucket] = index << 8 | value;
+                }
+                return;
+            }
+        }
+    }
+
+    public int getRegister(int index) {
+        if (registers != null) {
+            return registers[index];
+        }
+        int mask = sparse.length - 1;
+        for (int bucket = sparseBucket(index, mask); sparse[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (sparse[bucket] >>> 8 == index) {
+                return sparse[bucket] & 0xFF;
+            }
+        }
+        return 0;
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge a sketch of precision " + other.precision
+                    + " into one of precision " + precision);
+        }
+        other.forEachRegister(this::setRegister);
+    }
+
+    // Visits the registers that are set, in no particular order
+    public void forEachRegister(RegisterConsumer consumer) {
+        if (registers != null) {
+            for (int index = 0; index < registerCount; index++) {
+                if (registers[index] != 0) {
+                    consumer.accept(index, registers[index]);
+                }
+            }
+        } else {
+            for (int entry : sparse) {
+                if (entry != 0) {
+                    consumer.accept(entry >>> 8, entry & 0xFF);
+                }
+            }
+        }
+    }
+
+    // Number of registers that are set
+    public int getRegistersSet() {
+        if (registers == null) {
+            return sparseSize;
+        }
+        int set = 0;
+        for (byte register : registers) {
+            set += register != 0 ? 1 : 0;
+        }
+        return set;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void clear() {
+        sparse = new int[8];
+        sparseSize = 0;
+        registers = null;
+    }
+
+    // Ertl's improved estimator ("New cardinality estimation algorithms for HyperLogLog sketches",
+    // 2017), which is unbiased over the whole range without the empirical bias tables of HLL++ or a
+    // switch to linear counting for small cardinalities
+    public long estimate() {
+        int maxValue = 64 - precision + 1;
+        int[] histogram = new int[maxValue + 1];
+        histogram[0] = registerCount - getRegistersSet();
+        forEachRegister((index, value) -> histogram[value]++);
+
+        double m = registerCount;
+        double z = m * tau(1 - histogram[maxValue] / m);
+        for (int k = maxValue - 1; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += m * sigma(histogram[0] / m);
+        return Math.round(m * m / (2 * Math.log(2) * z));
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    private void growSparse() {
+        int[] entries = sparse;
+        if (entries.length * 2 * Integer.BYTES > registerCount) {
+            // The table would outgrow one byte per register
+            registers = new byte[registerCount];
+            sparse = null;
+            sparseSize = 0;
+            for (int entry : entries) {
+                if (entry != 0) {
+                    registers[entry >>> 8] = (byte) (entry & 0xFF);
+                }
+            }
+            return;
+        }
+        sparse = new int[entries.length * 2];
+        int mask = sparse.length - 1;
+        for (int entry : entries) {
+            if (entry != 0) {
+                int bucket = sparseBucket(entry >>> 8, mask);
+                while (sparse[bucket] != 0) {
+                    bucket = (bucket + 1) & mask;
+                }
+                sparse[bucket] = entry;
+            }
+        }
+    }
+
+    private static int sparseBucket(int index, int mask) {
+        return (index * 0x9E3779B9 >>> 16) & mask;
+    }
+
+    public interface RegisterConsumer {
+        void accept(int index, int value);
+    }
+}
@@ -0,0 +1,284 @@
+package in.anuragbanerjee.sketch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Space-Saving summary (Metwally et al.) of the heaviest keys of a weighted stream in fixed memory.
+// At most `capacity` keys are monitored; when a new key arrives while the summary is full, it replaces
+// the key with the smallest count and inherits that count as its possible overcount. Every key whose
+// true total is above totalWeight / capacity is guaranteed to be monitored, and no reported count is
+// more than its error above the true total. A key is a long plus an int, e.g. an address pair and a
+// port. The arrays grow with the number of keys up to the capacity. Not thread-safe.
+public final class SpaceSaving {
+    private static final int INITIAL_SLOTS = 64;
+
+    private final int capacity;
+    private long[] keys;
+    private int[] subKeys;
+    private long[] counts;
+    private long[] errors;
+    private int size;
+    private long totalWeight;
+
+    // Min-heap of slots ordered by count, and the heap position of every slot
+    private int[] heap;
+    private int[] heapPositions;
+
+    // Open addressing with linear probing from key to slot + 1; 0 marks an empty bucket
+    private int[] table;
+    private int tableMask;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive but got " + capacity);
+        }
+        this.capacity = capacity;
+        allocate(Math.min(capacity, INITIAL_SLOTS));
+    }
+
+    public void add(long key, int subKey, long weight) {
+        totalWeight += weight;
+        int slot = find(key, subKey);
+        if (slot >= 0) {
+            counts[slot] += weight;
+            siftDown(heapPositions[slot]);
+        } else if (size < capacity) {
+            insert(key, subKey, weight, 0);
+        } else {
+            // Replace the minimum; the newcomer may have occurred up to that many times before
+            slot = heap[0];
+            long minimum = counts[slot];
+            removeFromTable(slot);
+            keys[slot] = key;
+            subKeys[slot] = subKey;
+            counts[slot] = minimum + weight;
+            errors[slot] = minimum;
+            addToTable(slot);
+            siftDown(0);
+        }
+    }
+
+    // Combines two summaries as if both streams had been added to one (Agarwal et al., "Mergeable
+    // Summaries"). Counts of keys monitored by both are summed. A key missing from a full summary may
+    // have occurred there up to that summary's minimum count, so the minimum is added to its count and
+    // error. The largest `capacity` results are kept. Merging summaries that never evicted a key is exact.
+    public void merge(SpaceSaving other) {
+        long minimum = getMinimum();
+        long otherMinimum = other.getMinimum();
+        List<Entry> combined = new ArrayList<>(size + other.size);
+        for (int slot = 0; slot < size; slot++) {
+            int otherSlot = other.find(keys[slot], subKeys[slot]);
+            long count = counts[slot] + (otherSlot >= 0 ? other.counts[otherSlot] : otherMinimum);
+            long error = errors[slot] + (otherSlot >= 0 ? other.errors[otherSlot] : otherMinimum);
+            combined.add(new Entry(keys[slot], subKeys[slot], count, error));
+        }
+        for (int slot = 0; slot < other.size; slot++) {
+            if (find(other.keys[slot], other.subKeys[slot]) < 0) {
+                combined.add(new Entry(other.keys[slot], other.subKeys[slot],
+                        other.counts[slot] + minimum, other.errors[slot] + minimum));
+            }
+        }
+        combined.sort(Entry.ORDER);
+
+        long weight = totalWeight + other.totalWeight;
+        clear();
+        totalWeight = weight;
+        for (int i = 0; i < Math.min(capacity, combined.size()); i++) {
+            Entry entry = combined.get(i);
+            insert(entry.key, entry.subKey, entry.count, entry.error);
+        }
+    }
+
+    // Restores an entry of a saved summary into an empty or partially restored one
+    public void restore(long key, int subKey, long count, long error) {
+        if (size == capacity || find(key, subKey) >= 0) {
+            throw new IllegalArgumentException("Cannot restore entry into a full summary or twice");
+        }
+        insert(key, subKey, count, error);
+    }
+
+    // Restores the total weight of a saved summary after its entries
+    public void restoreTotalWeight(long totalWeight) {
+        this.totalWeight = totalWeight;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        totalWeight = 0;
+    }
+
+    // The n keys with the largest counts, largest first; ties are ordered by key
+    public List<Entry> top(int n) {
+        List<Entry> entries = entries();
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    // Every monitored key, largest count first
+    public List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int slot = 0; slot < size; slot++) {
+            entries.add(new Entry(keys[slot], subKeys[slot], counts[slot], errors[slot]));
+        }
+        entries.sort(Entry.ORDER);
+        return entries;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    // Smallest monitored count once the summary is full, otherwise 0
+    private long getMinimum() {
+        return size == capacity ? counts[heap[0]] : 0;
+    }
+
+    private void insert(long key, int subKey, long count, long error) {
+        if (size == keys.length) {
+            allocate((int) Math.min(capacity, 2L * size));
+        }
+        int slot = size++;
+        keys[slot] = key;
+        subKeys[slot] = subKey;
+        counts[slot] = count;
+        errors[slot] = error;
+        heap[slot] = slot;
+        heapPositions[slot] = slot;
+        siftUp(slot);
+        addToTable(slot);
+    }
+
+    // Grows the slot arrays and rebuilds the table at no more than half full
+    private void allocate(int slots) {
+        keys = keys == null ? new long[slots] : Arrays.copyOf(keys, slots);
+        subKeys = subKeys == null ? new int[slots] : Arrays.copyOf(subKeys, slots);
+        counts = counts == null ? new long[slots] : Arrays.copyOf(counts, slots);
+        errors = errors == null ? new long[slots] : Arrays.copyOf(errors, slots);
+        heap = heap == null ? new int[slots] : Arrays.copyOf(heap, slots);
+        heapPositions = heapPositions == null ? new int[slots] : Arrays.copyOf(heapPositions, slots);
+        int tableSize = Integer.highestOneBit(slots * 2 - 1) << 1;
+        table = new int[tableSize];
+        tableMask = tableSize - 1;
+        for (int slot = 0; slot < size; slot++) {
+            addToTable(slot);
+        }
+    }
+
+    private int find(long key, int subKey) {
+        for (int bucket = bucket(key, subKey); table[bucket] != 0; bucket = (bucket + 1) & tableMask) {
+            int slot = table[bucket] - 1;
+            if (keys[slot] == key && subKeys[slot] == subKey) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void addToTable(int slot) {
+        int bucket = bucket(keys[slot], subKeys[slot]);
+        while (table[bucket] != 0) {
+            bucket = (bucket + 1) & tableMask;
+        }
+        table[bucket] = slot + 1;
+    }
+
+    // Backward-shift deletion keeps every remaining key reachable from its home bucket without tombstones
+    private void removeFromTable(int slot) {
+        int hole = bucket(keys[slot], subKeys[slot]);
+        while (table[hole] != slot + 1) {
+            hole = (hole + 1) & tableMask;
+        }
+        table[hole] = 0;
+        for (int bucket = (hole + 1) & tableMask; table[bucket] != 0; bucket = (bucket + 1) & tableMask) {
+            int moved = table[bucket] - 1;
+            int home = bucket(keys[moved], subKeys[moved]);
+            // Move the entry into the hole unless its home lies cyclically in (hole, bucket]
+            boolean stays = hole <= bucket ? home > hole && home <= bucket : home > hole || home <= bucket;
+            if (!stays) {
+                table[hole] = table[bucket];
+                table[bucket] = 0;
+                hole = bucket;
+            }
+        }
+    }
+
+    private int bucket(long key, int subKey) {
+        // Murmur3 finalizer
+        long hash = key ^ subKey * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (hash ^ (hash >>> 33)) & tableMask;
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(slot, position);
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[slot]) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(slot, position);
+    }
+
+    private void place(int slot, int position) {
+        heap[position] = slot;
+        heapPositions[slot] = position;
+    }
+
+    public static final class Entry {
+        static final Comparator<Entry> ORDER = Comparator.comparingLong((Entry entry) -> entry.count).reversed()
+                .thenComparing(entry -> entry.key, Long::compareUnsigned)
+                .thenComparingInt(entry -> entry.subKey);
+
+        private final long key;
+        private final int subKey;
+        private final long count;
+        private final long error;
+
+        Entry(long key, int subKey, long count, long error) {
+            this.key = key;
+            this.subKey = subKey;
+            this.count = count;
+            this.error = error;
+        }
+
+        public long getKey() { return key; }
+        public int getSubKey() { return subKey; }
+        // Upper bound of the key's true total
+        public long getCount() { return count; }
+        // How far the count may be above the true total
+        public long getError() { return error; }
+    }
+}
@@ -0,0 +1,408 @@
+package in.anuragbanerjee.snapshot;
+
+import in.anuragbanerjee.analyzer.FlowLogAggregator;
+import in.anuragbanerjee.sketch.HeavyHitters;
+import in.anuragbanerjee.sketch.HyperLogLog;
+import in.anuragbanerjee.sketch.SpaceSaving;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compact binary form of the aggregate counters, written after a run and merged across runs.
+//
+// Layout: magic "FLAS", format version (unsigned short), then sections until END. Each section is
+// [id byte][payload length varint][payload], so readers skip sections they do not know. Counts,
+// ports and protocols are unsigned LEB128 varints and keys are stored in first-seen order.
+//   METADATA             n, then n x (key UTF, value UTF)
+//   TAG_COUNTS           n, then n x (tag UTF, count)
+//   PORT_PROTOCOL_COUNTS n, then n x (protocol, port, count)
+//   TAG_VOLUMES           n, then n x (tag UTF, bytes, packets)
+//   PORT_PROTOCOL_VOLUMES n, then n x (protocol, port, bytes, packets)
+//   HEAVY_HITTERS         metric, capacity, then per key kind: total weight, n, n x (key, sub key, count, error)
+//   DISTINCT_SOURCES      precision byte, n, n x (tag UTF, sketch), n, n x (protocol, port, sketch)
+// A sketch is the number of registers set, then either every register as a byte when most are set, or
+// (index, value) for each register set. The sections after the counts are only written when the
+// aggregator keeps them.
+public final class AggregateSnapshot {
+    private static final int MAGIC = 0x464C4153;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int END = 0;
+    private static final int METADATA = 1;
+    private static final int TAG_COUNTS = 2;
+    private static final int PORT_PROTOCOL_COUNTS = 3;
+    private static final int TAG_VOLUMES = 4;
+    private static final int PORT_PROTOCOL_VOLUMES = 5;
+    private static final int HEAVY_HITTERS = 6;
+    private static final int DISTINCT_SOURCES = 7;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private AggregateSnapshot() {}
+
+    public static void write(FlowLogAggregator aggregator, Map<String, String> metadata, Path snapshotFile) {
+        // Write next to the target and rename, so a reader never sees a half-written snapshot
+        Path temporary = snapshotFile.toAbsolutePath().resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                writeSection(out, METADATA, section -> writeMetadata(section, metadata));
+                writeSection(out, TAG_COUNTS, section -> writeTagCounts(section, aggregator));
+                writeSection(out, PORT_PROTOCOL_COUNTS, section -> writePortProtocolCounts(section, aggregator));
+                if (aggregator.isTrackingVolumes()) {
+                    writeSection(out, TAG_VOLUMES, section -> writeTagVolumes(section, aggregator));
+                    writeSection(out, PORT_PROTOCOL_VOLUMES, section -> writePortProtocolVolumes(section, aggregator));
+                }
+                if (aggregator.getHeavyHitters() != null) {
+                    writeSection(out, HEAVY_HITTERS, section -> writeHeavyHitters(section, aggregator.getHeavyHitters()));
+                }
+                if (aggregator.isTrackingDistinctSources()) {
+                    writeSection(out, DISTINCT_SOURCES, section -> writeDistinctSources(section, aggregator));
+                }
+                out.writeByte(END);
+            }
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UncheckedIOException e) {
+            // The section writers fail with UncheckedIOException from inside their lambdas
+            throw new RuntimeException("Error writing snapshot file: " + snapshotFile, e);
+        } finally {
+            try {
+                // Left behind only when the move did not happen
+                Files.deleteIfExists(temporary);
+            } catch (IOException e) {
+                System.err.println("Error deleting temporary snapshot file " + temporary + ": " + e);
+            }
+        }
+    }
+
+    // Adds the snapshot's counts to the aggregator (summing counts, taking the union of keys) and
+    // returns the snapshot's metadata. Volumes, heavy hitters and distinct sources are only read into an
+    // aggregator that keeps them.
+    public static Map<String, String> readInto(Path snapshotFile, FlowLogAggregator aggregator) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a flow log snapshot: " + snapshotFile);
+            }
+            int formatVersion = in.readUnsignedShort();
+            if (formatVersion > FORMAT_VERSION) {
+                throw new IllegalArgumentException(
+                        "Unsupported snapshot version " + formatVersion + " in " + snapshotFile);
+            }
+
+            Map<String, String> metadata = new LinkedHashMap<>();
+            int sectionId;
+            while ((sectionId = in.readUnsignedByte()) != END) {
+                long length = readVarLong(in);
+                switch (sectionId) {
+                    case METADATA -> readMetadata(in, metadata);
+                    case TAG_COUNTS -> readTagCounts(in, aggregator, snapshotFile);
+                    case PORT_PROTOCOL_COUNTS -> readPortProtocolCounts(in, aggregator, snapshotFile);
+                    case TAG_VOLUMES -> readTagVolumes(in, aggregator);
+                    case PORT_PROTOCOL_VOLUMES -> readPortProtocolVolumes(in, aggregator);
+                    case HEAVY_HITTERS -> {
+                        if (aggregator.getHeavyHitters() != null) {
+                            readHeavyHitters(in, aggregator.getHeavyHitters(), snapshotFile);
+                        } else {
+                            in.skipNBytes(length);
+                        }
+                    }
+                    case DISTINCT_SOURCES -> {
+                        if (aggregator.isTrackingDistinctSources()) {
+                            readDistinctSources(in, length, aggregator, snapshotFile);
+                        } else {
+                            in.skipNBytes(length);
+                        }
+                    }
+                    default -> in.skipNBytes(length);
+                }
+            }
+            return metadata;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading snapshot file: " + snapshotFile, e);
+        }
+    }
+
+    private static void writeMetadata(DataOutputStream out, Map<String, String> metadata) throws IOException {
+        writeVarLong(out, metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static void readMetadata(DataInputStream in, Map<String, String> metadata) throws IOException {
+        long entries = readVarLong(in);
+        for (long i = 0; i < entries; i++) {
+            metadata.put(in.readUTF(), in.readUTF());
+        }
+    }
+
+    private static void writeTagCounts(DataOutputStream out, FlowLogAggregator aggregator) throws IOException {
+        writeVarLong(out, aggregator.getTagCountSize());
+        aggregator.forEachTagCount((tag, count) -> {
+            try {
+                out.writeUTF(tag);
+                writeVarLong(out, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void readTagCounts(DataInputStream in, FlowLogAggregator aggregator, Path snapshotFile) throws IOException {
+        long entries = readVarLong(in);
+        for (long i = 0; i < entries; i++) {
+            aggregator.addTagCount(in.readUTF(), readCount(in, snapshotFile));
+        }
+    }
+
+    private static void writePortProtocolCounts(DataOutputStream out, FlowLogAggregator aggregator) throws IOException {
+        writeVarLong(out, aggregator.getPortProtocolCountSize());
+        aggregator.forEachPortProtocolCount((protocol, port, count) -> {
+            try {
+                writeVarLong(out, protocol);
+                writeVarLong(out, port);
+                writeVarLong(out, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void readPortProtocolCounts(DataInputStream in, FlowLogAggregator aggregator, Path snapshotFile)
+            throws IOException {
+        long entries = readVarLong(in);
+        for (long i = 0; i < entries; i++) {
+            int protocol = (int) readVarLong(in);
+            int port = (int) readVarLong(in);
+            aggregator.addPortProtocolCount(protocol, port, readCount(in, snapshotFile));
+        }
+    }
+
+    // Only keys that were counted at least once are written
+    private static long readCount(DataInputStream in, Path snapshotFile) throws IOException {
+        long count = readVarLong(in);
+        if (count <= 0) {
+            throw new IllegalArgumentException("Invalid count " + count + " in " + snapshotFile);
+        }
+        return count;
+    }
+
+    private static void writeTagVolumes(DataOutputStream out, FlowLogAggregator aggregator) throws IOException {
+        writeVarLong(out, aggregator.getTagCountSize());
+        aggregator.forEachTagVolume((tag, bytes, packets) -> {
+            try {
+                out.writeUTF(tag);
+                writeVarLong(out, bytes);
+                writeVarLong(out, packets);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void readTagVolumes(DataInputStream in, FlowLogAggregator aggregator) throws IOException {
+        long entries = readVarLong(in);
+        for (long i = 0; i < entries; i++) {
+            aggregator.addTagVolume(in.readUTF(), readVarLong(in), readVarLong(in));
+        }
+    }
+
+    private static void writePortProtocolVolumes(DataOutputStream out, FlowLogAggregator aggregator) throws IOException {
+        writeVarLong(out, aggregator.getPortProtocolCountSize());
+        aggregator.forEachPortProtocolVolume((protocol, port, bytes, packets) -> {
+            try {
+                writeVarLong(out, protocol);
+                writeVarLong(out, port);
+                writeVarLong(out, bytes);
+                writeVarLong(out, packets);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void readPortProtocolVolumes(DataInputStream in, FlowLogAggregator aggregator) throws IOException {
+        long entries = readVarLong(in);
+        for (long i = 0; i < entries; i++) {
+            int protocol = (int) readVarLong(in);
+            int port = (int) readVarLong(in);
+            aggregator.addPortProtocolVolume(protocol, port, readVarLong(in), readVarLong(in));
+        }
+    }
+
+    private static void writeHeavyHitters(DataOutputStream out, HeavyHitters heavyHitters) throws IOException {
+        writeVarLong(out, heavyHitters.getMetric().ordinal());
+        writeVarLong(out, heavyHitters.getCapacity());
+        for (HeavyHitters.Key key : HeavyHitters.Key.values()) {
+            SpaceSaving summary = heavyHitters.getSummary(key);
+            writeVarLong(out, summary.getTotalWeight());
+            writeVarLong(out, summary.size());
+            for (SpaceSaving.Entry entry : summary.entries()) {
+                writeVarLong(out, entry.getKey());
+                writeVarLong(out, entry.getSubKey());
+                writeVarLong(out, entry.getCount());
+                writeVarLong(out, entry.getError());
+            }
+        }
+    }
+
+    // Merges the saved summaries into the aggregator's; summaries by another metric are skipped
+    private static void readHeavyHitters(DataInputStream in, HeavyHitters heavyHitters, Path snapshotFile) throws IOException {
+        long ordinal = readVarLong(in);
+        if (ordinal < 0 || ordinal >= HeavyHitters.Metric.values().length) {
+            throw new IllegalArgumentException("Unsupported heavy hitter metric " + ordinal + " in " + snapshotFile);
+        }
+        HeavyHitters.Metric metric = HeavyHitters.Metric.values()[(int) ordinal];
+        HeavyHitters saved = new HeavyHitters(metric, (int) readVarLong(in));
+        for (HeavyHitters.Key key : HeavyHitters.Key.values()) {
+            SpaceSaving summary = saved.getSummary(key);
+            long totalWeight = readVarLong(in);
+            long entries = readVarLong(in);
+            for (long i = 0; i < entries; i++) {
+                summary.restore(readVarLong(in), (int) readVarLong(in), readVarLong(in), readVarLong(in));
+            }
+            summary.restoreTotalWeight(totalWeight);
+        }
+        if (metric != heavyHitters.getMetric()) {
+            System.err.println("Ignoring heavy hitters by " + metric + " in " + snapshotFile);
+            return;
+        }
+        heavyHitters.merge(saved);
+    }
+
+    private static void writeDistinctSources(DataOutputStream out, FlowLogAggregator aggregator) throws IOException {
+        out.writeByte(aggregator.getDistinctSourcePrecision());
+        writeVarLong(out, aggregator.getTagCountSize());
+        aggregator.forEachTagDistinctSources((tag, sources) -> {
+            try {
+                out.writeUTF(tag);
+                writeSketch(out, sources);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writeVarLong(out, aggregator.getPortProtocolCountSize());
+        aggregator.forEachPortProtocolDistinctSources((protocol, port, sources) -> {
+            try {
+                writeVarLong(out, protocol);
+                writeVarLong(out, port);
+                writeSketch(out, sources);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Sketches of another precision cannot be merged and are skipped
+    private static void readDistinctSources(DataInputStream in, long length, FlowLogAggregator aggregator,
+                                            Path snapshotFile) throws IOException {
+        int precision = in.readUnsignedByte();
+        if (precision != aggregator.getDistinctSourcePrecision()) {
+            System.err.println("Ignoring distinct sources of precision " + precision + " in " + snapshotFile);
+            in.skipNBytes(length - 1);
+            return;
+        }
+        long tags = readVarLong(in);
+        for (long i = 0; i < tags; i++) {
+            String tag = in.readUTF();
+            aggregator.addTagDistinctSources(tag, readSketch(in, precision));
+        }
+        long portProtocols = readVarLong(in);
+        for (long i = 0; i < portProtocols; i++) {
+            int protocol = (int) readVarLong(in);
+            int port = (int) readVarLong(in);
+            aggregator.addPortProtocolDistinctSources(protocol, port, readSketch(in, precision));
+        }
+    }
+
+    private static void writeSketch(DataOutputStream out, HyperLogLog sketch) throws IOException {
+        int registersSet = sketch.getRegistersSet();
+        writeVarLong(out, registersSet);
+        if (isDense(registersSet, sketch.getPrecision())) {
+            for (int index = 0; index < 1 << sketch.getPrecision(); index++) {
+                out.writeByte(sketch.getRegister(index));
+            }
+            return;
+        }
+        sketch.forEachRegister((index, value) -> {
+            try {
+                writeVarLong(out, index);
+                out.writeByte(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static HyperLogLog readSketch(DataInputStream in, int precision) throws IOException {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        long registersSet = readVarLong(in);
+        if (isDense(registersSet, precision)) {
+            for (int index = 0; index < 1 << precision; index++) {
+                int value = in.readUnsignedByte();
+                if (value != 0) {
+                    sketch.setRegister(index, value);
+                }
+            }
+        } else {
+            for (long i = 0; i < registersSet; i++) {
+                sketch.setRegister((int) readVarLong(in), in.readUnsignedByte());
+            }
+        }
+        return sketch;
+    }
+
+    // An (index, value) pair takes up to four bytes
+    private static boolean isDense(long registersSet, int precision) {
+        return registersSet * 4 > 1 << precision;
+    }
+
+    private static void writeSection(DataOutputStream out, int sectionId, SectionWriter writer) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        writer.write(payloadOut);
+        payloadOut.flush();
+
+        out.writeByte(sectionId);
+        writeVarLong(out, payload.size());
+        payload.writeTo(out);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot");
+    }
+
+    private interface SectionWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,250 @@
+package in.anuragbanerjee.store;
+
+import in.anuragbanerjee.mapper.Ipv4Prefix;
+import in.anuragbanerjee.model.FlowRecord;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Selects rows of a FlowRecordStore and computes results over them. Each condition narrows the
+// selection with one loop over a single column: the first scans the whole column, later ones only
+// the row numbers still selected. The loops write every row number and advance only on a match, so
+// they compile to straight-line code without unpredictable branches. Not thread-safe; start one query
+// per thread.
+public final class FlowQuery {
+    private final FlowRecordStore store;
+    // Selected row numbers in ascending order; null while every row is selected
+    private int[] rows;
+    private int size;
+
+    FlowQuery(FlowRecordStore store) {
+        this.store = store;
+        this.size = store.size;
+    }
+
+    public FlowQuery protocol(int protocol) {
+        return filter(store.protocols, protocol, protocol);
+    }
+
+    public FlowQuery destinationPort(int port) {
+        return filter(store.destinationPorts, port, port);
+    }
+
+    // Both bounds are inclusive, as are those of the other range conditions
+    public FlowQuery destinationPorts(int from, int to) {
+        return filter(store.destinationPorts, from, to);
+    }
+
+    public FlowQuery sourcePorts(int from, int to) {
+        return filter(store.sourcePorts, from, to);
+    }
+
+    public FlowQuery startTimeBetween(long from, long to) {
+        return filter(store.startTimes, from, to);
+    }
+
+    public FlowQuery interfaceId(String interfaceId) {
+        return text(FlowRecordStore.TextColumn.INTERFACE_ID, interfaceId);
+    }
+
+    public FlowQuery action(String action) {
+        return text(FlowRecordStore.TextColumn.ACTION, action);
+    }
+
+    public FlowQuery logStatus(String logStatus) {
+        return text(FlowRecordStore.TextColumn.LOG_STATUS, logStatus);
+    }
+
+    // Compares dictionary codes, so the value is looked up once and never compared as text
+    public FlowQuery text(FlowRecordStore.TextColumn column, String value) {
+        int code = store.dictionary(column).find(value);
+        if (code == StringDictionary.NOT_FOUND) {
+            rows = new int[0];
+            size = 0;
+            return this;
+        }
+        return filter(store.codes(column), code, code);
+    }
+
+    // Rows whose address is not a dotted quad never match
+    public FlowQuery sourceAddress(Ipv4Prefix prefix) {
+        return filter(store.sourceAddresses, store.sourceIpIsText, prefix);
+    }
+
+    public FlowQuery destinationAddress(Ipv4Prefix prefix) {
+        return filter(store.destinationAddresses, store.destinationIpIsText, prefix);
+    }
+
+    public int count() {
+        return size;
+    }
+
+    // Rows without a byte count ("-") are left out
+    public long sumBytes() {
+        long[] bytes = store.bytes;
+        long total = 0;
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                total += Math.max(bytes[row], 0);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                total += Math.max(bytes[rows[i]], 0);
+            }
+        }
+        return total;
+    }
+
+    public long sumPackets() {
+        int[] packets = store.packets;
+        long total = 0;
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                total += Math.max(packets[row], 0);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                total += Math.max(packets[rows[i]], 0);
+            }
+        }
+        return total;
+    }
+
+    // Number of selected rows per value, in the order the values first appeared in the store
+    public Map<String, Long> countBy(FlowRecordStore.TextColumn column) {
+        int[] codes = store.codes(column);
+        long[] counts = new long[store.dictionary(column).size()];
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                counts[codes[row]]++;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                counts[codes[rows[i]]]++;
+            }
+        }
+        return byValue(column, counts);
+    }
+
+    public Map<String, Long> sumBytesBy(FlowRecordStore.TextColumn column) {
+        int[] codes = store.codes(column);
+        long[] bytes = store.bytes;
+        long[] sums = new long[store.dictionary(column).size()];
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                sums[codes[row]] += Math.max(bytes[row], 0);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                int row = rows[i];
+                sums[codes[row]] += Math.max(bytes[row], 0);
+            }
+        }
+        return byValue(column, sums);
+    }
+
+    // Visits the selected rows in store order through one reused cursor; the record is only valid
+    // during the call
+    public void forEach(Consumer<FlowRecord> consumer) {
+        FlowRecordStore.Cursor cursor = store.cursor();
+        for (int i = 0; i < size; i++) {
+            consumer.accept(cursor.moveTo(rows == null ? i : rows[i]));
+        }
+    }
+
+    public int[] rows() {
+        int[] selected = new int[size];
+        for (int i = 0; i < size; i++) {
+            selected[i] = rows == null ? i : rows[i];
+        }
+        return selected;
+    }
+
+    private Map<String, Long> byValue(FlowRecordStore.TextColumn column, long[] values) {
+        StringDictionary dictionary = store.dictionary(column);
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int code = 0; code < values.length; code++) {
+            if (values[code] != 0) {
+                result.put(dictionary.decode(code), values[code]);
+            }
+        }
+        return result;
+    }
+
+    private FlowQuery filter(int[] column, int from, int to) {
+        int[] selected = rows == null ? new int[size] : rows;
+        int count = 0;
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                int value = column[row];
+                selected[count] = row;
+                count += value >= from && value <= to ? 1 : 0;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                int row = rows[i];
+                int value = column[row];
+                selected[count] = row;
+                count += value >= from && value <= to ? 1 : 0;
+            }
+        }
+        return select(selected, count);
+    }
+
+    private FlowQuery filter(long[] column, long from, long to) {
+        int[] selected = rows == null ? new int[size] : rows;
+        int count = 0;
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                long value = column[row];
+                selected[count] = row;
+                count += value >= from && value <= to ? 1 : 0;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                int row = rows[i];
+                long value = column[row];
+                selected[count] = row;
+                count += value >= from && value <= to ? 1 : 0;
+            }
+        }
+        return select(selected, count);
+    }
+
+    private FlowQuery filter(int[] addresses, BitSet isText, Ipv4Prefix prefix) {
+        int network = prefix.getNetwork();
+        int mask = prefix.getMask();
+        int[] selected = rows == null ? new int[size] : rows;
+        int count = 0;
+        if (rows == null) {
+            for (int row = 0; row < size; row++) {
+                selected[count] = row;
+                count += ((addresses[row] ^ network) & mask) == 0 ? 1 : 0;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                int row = rows[i];
+                selected[count] = row;
+                count += ((addresses[row] ^ network) & mask) == 0 ? 1 : 0;
+            }
+        }
+        if (!isText.isEmpty()) {
+            // Those rows hold a dictionary code instead of an address
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                selected[kept] = selected[i];
+                kept += isText.get(selected[i]) ? 0 : 1;
+            }
+            count = kept;
+        }
+        return select(selected, count);
+    }
+
+    private FlowQuery select(int[] selected, int count) {
+        rows = selected;
+        size = count;
+        return this;
+    }
+}
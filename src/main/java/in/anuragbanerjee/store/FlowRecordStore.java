@@ -0,0 +1,175 @@
+package in.anuragbanerjee.store;
+
+import in.anuragbanerjee.model.FlowRecord;
+import in.anuragbanerjee.model.Ipv4Addresses;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Parsed flow records kept column by column: one primitive array per numeric field, IPv4 addresses
+// packed into ints and dictionary codes for the interface id, action and log status, so a row takes
+// about 70 bytes of heap however it was written. Queries scan only the columns they filter or add up.
+// Rows are appended by one thread while the flow logs are loaded; after that the store is only read and
+// can be queried from any number of threads.
+public final class FlowRecordStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    public enum TextColumn { INTERFACE_ID, ACTION, LOG_STATUS }
+
+    int size;
+    int[] versions;
+    long[] accountIds;
+    int[] interfaceIds;
+    // Rows whose IP field is not a dotted quad ("-" or anything else the parser accepted) have their
+    // bit set, and the address column holds the code of the text in ipTexts instead
+    int[] sourceAddresses;
+    int[] destinationAddresses;
+    final BitSet sourceIpIsText = new BitSet();
+    final BitSet destinationIpIsText = new BitSet();
+    int[] sourcePorts;
+    int[] destinationPorts;
+    int[] protocols;
+    int[] packets;
+    long[] bytes;
+    long[] startTimes;
+    long[] endTimes;
+    int[] actions;
+    int[] logStatuses;
+
+    final StringDictionary interfaceIdDictionary = new StringDictionary();
+    final StringDictionary actionDictionary = new StringDictionary();
+    final StringDictionary logStatusDictionary = new StringDictionary();
+    final StringDictionary ipTexts = new StringDictionary();
+
+    public FlowRecordStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // Copies the record; a reused record such as MutableLogEntry may be passed in
+    public void add(FlowRecord record) {
+        if (size == versions.length) {
+            allocate(Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        int row = size;
+        versions[row] = record.getVersion();
+        accountIds[row] = record.getAccountId();
+        interfaceIds[row] = interfaceIdDictionary.encode(record.getInterfaceId());
+        sourceAddresses[row] = packAddress(record.getSourceAddress(), record, true, row);
+        destinationAddresses[row] = packAddress(record.getDestinationAddress(), record, false, row);
+        sourcePorts[row] = record.getSourcePort();
+        destinationPorts[row] = record.getDestinationPort();
+        protocols[row] = record.getProtocol();
+        packets[row] = record.getPackets();
+        bytes[row] = record.getBytes();
+        startTimes[row] = record.getStartTime();
+        endTimes[row] = record.getEndTime();
+        actions[row] = actionDictionary.encode(record.getAction());
+        logStatuses[row] = logStatusDictionary.encode(record.getLogStatus());
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Releases the spare capacity left by loading
+    public void trimToSize() {
+        if (size != versions.length) {
+            allocate(size);
+        }
+    }
+
+    public FlowQuery query() {
+        return new FlowQuery(this);
+    }
+
+    // A reusable view of one row; use one per thread
+    public Cursor cursor() {
+        return new Cursor(this);
+    }
+
+    int[] codes(TextColumn column) {
+        return switch (column) {
+            case INTERFACE_ID -> interfaceIds;
+            case ACTION -> actions;
+            case LOG_STATUS -> logStatuses;
+        };
+    }
+
+    StringDictionary dictionary(TextColumn column) {
+        return switch (column) {
+            case INTERFACE_ID -> interfaceIdDictionary;
+            case ACTION -> actionDictionary;
+            case LOG_STATUS -> logStatusDictionary;
+        };
+    }
+
+    private int packAddress(long address, FlowRecord record, boolean source, int row) {
+        if (address != Ipv4Addresses.NONE) {
+            return (int) address;
+        }
+        (source ? sourceIpIsText : destinationIpIsText).set(row);
+        return ipTexts.encode(source ? record.getSourceIp() : record.getDestinationIp());
+    }
+
+    private void allocate(int capacity) {
+        versions = versions == null ? new int[capacity] : Arrays.copyOf(versions, capacity);
+        accountIds = accountIds == null ? new long[capacity] : Arrays.copyOf(accountIds, capacity);
+        interfaceIds = interfaceIds == null ? new int[capacity] : Arrays.copyOf(interfaceIds, capacity);
+        sourceAddresses = sourceAddresses == null ? new int[capacity] : Arrays.copyOf(sourceAddresses, capacity);
+        destinationAddresses = destinationAddresses == null ? new int[capacity] : Arrays.copyOf(destinationAddresses, capacity);
+        sourcePorts = sourcePorts == null ? new int[capacity] : Arrays.copyOf(sourcePorts, capacity);
+        destinationPorts = destinationPorts == null ? new int[capacity] : Arrays.copyOf(destinationPorts, capacity);
+        protocols = protocols == null ? new int[capacity] : Arrays.copyOf(protocols, capacity);
+        packets = packets == null ? new int[capacity] : Arrays.copyOf(packets, capacity);
+        bytes = bytes == null ? new long[capacity] : Arrays.copyOf(bytes, capacity);
+        startTimes = startTimes == null ? new long[capacity] : Arrays.copyOf(startTimes, capacity);
+        endTimes = endTimes == null ? new long[capacity] : Arrays.copyOf(endTimes, capacity);
+        actions = actions == null ? new int[capacity] : Arrays.copyOf(actions, capacity);
+        logStatuses = logStatuses == null ? new int[capacity] : Arrays.copyOf(logStatuses, capacity);
+    }
+
+    public static final class Cursor implements FlowRecord {
+        private final FlowRecordStore store;
+        private int row;
+
+        private Cursor(FlowRecordStore store) {
+            this.store = store;
+        }
+
+        public Cursor moveTo(int row) {
+            if (row < 0 || row >= store.size) {
+                throw new IndexOutOfBoundsException("Row " + row + " out of range for " + store.size + " rows");
+            }
+            this.row = row;
+            return this;
+        }
+
+        public int getRow() { return row; }
+
+        @Override public int getVersion() { return store.versions[row]; }
+        @Override public long getAccountId() { return store.accountIds[row]; }
+        @Override public String getInterfaceId() { return store.interfaceIdDictionary.decode(store.interfaceIds[row]); }
+        @Override public String getSourceIp() { return ipText(store.sourceAddresses, store.sourceIpIsText); }
+        @Override public String getDestinationIp() { return ipText(store.destinationAddresses, store.destinationIpIsText); }
+        @Override public long getSourceAddress() { return address(store.sourceAddresses, store.sourceIpIsText); }
+        @Override public long getDestinationAddress() { return address(store.destinationAddresses, store.destinationIpIsText); }
+        @Override public int getSourcePort() { return store.sourcePorts[row]; }
+        @Override public int getDestinationPort() { return store.destinationPorts[row]; }
+        @Override public int getProtocol() { return store.protocols[row]; }
+        @Override public int getPackets() { return store.packets[row]; }
+        @Override public long getBytes() { return store.bytes[row]; }
+        @Override public long getStartTime() { return store.startTimes[row]; }
+        @Override public long getEndTime() { return store.endTimes[row]; }
+        @Override public String getAction() { return store.actionDictionary.decode(store.actions[row]); }
+        @Override public String getLogStatus() { return store.logStatusDictionary.decode(store.logStatuses[row]); }
+
+        private long address(int[] addresses, BitSet isText) {
+            return isText.get(row) ? Ipv4Addresses.NONE : addresses[row] & 0xFFFFFFFFL;
+        }
+
+        private String ipText(int[] addresses, BitSet isText) {
+            return isText.get(row) ? store.ipTexts.decode(addresses[row]) : Ipv4Addresses.format(addresses[row]);
+        }
+    }
+}
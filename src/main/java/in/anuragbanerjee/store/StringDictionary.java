@@ -0,0 +1,37 @@
+package in.anuragbanerjee.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Assigns dense codes to the distinct values of a low-cardinality text column, in first-seen order
+final class StringDictionary {
+    static final int NOT_FOUND = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    // Returns the code of the value, or NOT_FOUND when no row has it
+    int find(String value) {
+        return codes.getOrDefault(value, NOT_FOUND);
+    }
+
+    String decode(int code) {
+        return values.get(code);
+    }
+
+    int size() {
+        return values.size();
+    }
+}